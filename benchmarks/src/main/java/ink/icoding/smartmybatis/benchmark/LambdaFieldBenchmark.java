@@ -0,0 +1,132 @@
+package ink.icoding.smartmybatis.benchmark;
+
+import ink.icoding.smartmybatis.entity.expression.SFunction;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.LambdaFieldMeta;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lambda 属性函数解析基准测试
+ * 对比按 Lambda 类缓存的解析与原先每次反射序列化的解析, 模拟 6 个条件的查询:
+ * 原路径每个条件分别调用 getField 与 getPoClass, 共 12 次反射序列化.
+ * 运行: mvn -pl benchmarks -am package && java -jar benchmarks/target/benchmarks.jar LambdaFieldBenchmark
+ * @author gsk
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LambdaFieldBenchmark {
+
+    private final SFunction<?, ?>[] conditions = new SFunction<?, ?>[]{
+            (SFunction<UserPO, Long>) UserPO::getId,
+            (SFunction<UserPO, String>) UserPO::getName,
+            (SFunction<UserPO, String>) UserPO::getEmail,
+            (SFunction<UserPO, Integer>) UserPO::getAge,
+            (SFunction<UserPO, Boolean>) UserPO::isEnabled,
+            (SFunction<UserPO, Long>) UserPO::getCreateTime
+    };
+
+    @Benchmark
+    public void cachedResolve(Blackhole blackhole) {
+        for (SFunction<?, ?> condition : conditions) {
+            LambdaFieldMeta meta = LambdaFieldUtil.resolve(cast(condition));
+            blackhole.consume(meta.getField());
+            blackhole.consume(meta.getPoClass());
+        }
+    }
+
+    @Benchmark
+    public void reflectiveResolve(Blackhole blackhole) throws Exception {
+        for (SFunction<?, ?> condition : conditions) {
+            blackhole.consume(reflectiveField(condition));
+            blackhole.consume(reflectivePoClass(condition));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static SFunction<? extends PO, ?> cast(SFunction<?, ?> func) {
+        return (SFunction<? extends PO, ?>) func;
+    }
+
+    /**
+     * 原 LambdaFieldUtil.getField 的实现
+     */
+    private static Field reflectiveField(SFunction<?, ?> func) throws Exception {
+        SerializedLambda lambda = serializedLambda(func);
+        Class<?> clazz = Class.forName(lambda.getImplClass().replace('/', '.'));
+        String methodName = lambda.getImplMethodName();
+        String fieldName;
+        if (methodName.startsWith("get")) {
+            fieldName = methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
+        } else if (methodName.startsWith("is")) {
+            fieldName = methodName.substring(2, 3).toLowerCase() + methodName.substring(3);
+        } else {
+            fieldName = methodName;
+        }
+        return clazz.getDeclaredField(fieldName);
+    }
+
+    /**
+     * 原 LambdaFieldUtil.getPoClass 的实现
+     */
+    private static Class<?> reflectivePoClass(SFunction<?, ?> func) throws Exception {
+        return Class.forName(serializedLambda(func).getImplClass().replace('/', '.'));
+    }
+
+    private static SerializedLambda serializedLambda(SFunction<?, ?> func) throws Exception {
+        Method writeReplace = func.getClass().getDeclaredMethod("writeReplace");
+        writeReplace.setAccessible(true);
+        return (SerializedLambda) writeReplace.invoke(func);
+    }
+
+    public static class UserPO extends PO {
+        private Long id;
+        private String name;
+        private String email;
+        private Integer age;
+        private Boolean enabled;
+        private Long createTime;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public Integer getAge() {
+            return age;
+        }
+
+        public Boolean isEnabled() {
+            return enabled;
+        }
+
+        public Long getCreateTime() {
+            return createTime;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package ink.icoding.smartmybatis.conf;
+
+/**
+ * 批量写入策略枚举
+ * @author gsk
+ */
+public enum BatchStrategy {
+
+    /**
+     * 单条语句写入多行, 按分批大小拆分为多条语句执行
+     * 批量插入生成多行 VALUES, 批量更新生成 CASE WHEN
+     */
+    MULTI_ROW,
+    /**
+     * 复用单行预编译语句, 通过 JDBC 批处理(addBatch/executeBatch)执行
+     */
+    JDBC_BATCH,
+
+}
@@ -0,0 +1,18 @@
+package ink.icoding.smartmybatis.conf;
+
+/**
+ * 数据库方言枚举
+ * @author gsk
+ */
+public enum Dialect {
+
+    /**
+     * MySQL, 流式查询使用 fetchSize = Integer.MIN_VALUE 逐行读取
+     */
+    MYSQL,
+    /**
+     * 标准 JDBC, 流式查询使用配置的 fetchSize
+     */
+    STANDARD,
+
+}
@@ -23,6 +23,103 @@ public class GlobalConfig {
 
     private String tablePrefix = "";
 
+    /**
+     * 已编译 SQL 缓存的最大条数, 小于等于 0 时关闭缓存
+     */
+    private int sqlCacheSize = 2048;
+
+    /**
+     * 批量写入策略
+     */
+    private BatchStrategy batchStrategy = BatchStrategy.MULTI_ROW;
+
+    /**
+     * 批量写入时每批最大记录数
+     */
+    private int batchChunkSize = 1000;
+
+    /**
+     * 单条 SQL 允许的最大绑定参数个数, 多行写入时据此自动缩小每批记录数
+     */
+    private int maxBindParameters = 65535;
+
+    /**
+     * 是否开启脏字段追踪, 开启后通过 SmartMapper 查询出的记录会保存快照, updateById 只更新发生变化的列
+     */
+    private boolean dirtyTracking = false;
+
+    /**
+     * 数据库方言
+     */
+    private Dialect dialect = Dialect.MYSQL;
+
+    /**
+     * 流式查询每次从数据库读取的行数, 仅 STANDARD 方言生效, MYSQL 方言固定逐行读取
+     */
+    private int cursorFetchSize = 1000;
+
+    /**
+     * 分页使用 CACHED 策略时总记录数的缓存时间, 单位秒
+     */
+    private int pageTotalCacheSeconds = 60;
+
+    /**
+     * IN 条件的值个数超过该阈值时拆分为多次执行再合并结果, 小于等于 0 时不拆分, 默认不拆分.
+     * 只拆分不带排序的查询; 拆分后的删除分多条语句执行, 自动提交时不是原子操作.
+     * 值总数超过 maxBindParameters 时无论是否开启都会尝试拆分, 无法拆分时在执行前抛出异常
+     */
+    private int inListChunkSize = 0;
+
+    /**
+     * 是否将 IN 列表补齐到 2 的幂并按 2 的幂拆分批量写入, 减少 SQL 形状数量以复用预编译语句
+     */
+    private boolean statementBucketing = false;
+
+    /**
+     * 分表查询无法定位到单张物理表时并行查询的线程数, 小于等于 1 时依次查询
+     */
+    private int shardQueryParallelism = 8;
+
+    /**
+     * AsyncSmartMapper 默认执行器的线程数, 小于等于 0 时 JDK 21 及以上使用虚拟线程, 否则使用 CPU 核数 * 4 (至少 16) 个线程
+     */
+    private int asyncPoolSize = 0;
+
+    /**
+     * 每个数据源同时执行的异步调用个数上限, 小于等于 0 时取连接池的最大连接数
+     */
+    private int asyncMaxConcurrency = 0;
+
+    /**
+     * SEGMENT 主键生成类型使用的号段表
+     */
+    private String segmentTable = "smart_id_segment";
+
+    /**
+     * 号段表中新增记录时的号段长度, 已有记录按表中的 step 分配
+     */
+    private int segmentStep = 1000;
+
+    /**
+     * 当前号段消耗该百分比后异步预取下一号段
+     */
+    private int segmentPrefetchPercent = 10;
+
+    /**
+     * 是否从数据库租用雪花算法的工作节点 ID, 多节点部署时避免按 MAC 与 IP 推导的工作节点 ID 重复
+     */
+    private boolean snowflakeWorkerLease = false;
+
+    /**
+     * 工作节点 ID 租约表
+     */
+    private String snowflakeWorkerTable = "smart_worker_lease";
+
+    /**
+     * 工作节点 ID 租约的有效期, 单位秒, 每隔三分之一有效期续约一次
+     */
+    private int snowflakeWorkerLeaseSeconds = 60;
+
     public boolean isEnabled() {
         return enabled;
     }
@@ -55,6 +152,158 @@ public class GlobalConfig {
         this.tablePrefix = tablePrefix;
     }
 
+    public int getSqlCacheSize() {
+        return sqlCacheSize;
+    }
+
+    public void setSqlCacheSize(int sqlCacheSize) {
+        this.sqlCacheSize = sqlCacheSize;
+    }
+
+    public BatchStrategy getBatchStrategy() {
+        return batchStrategy;
+    }
+
+    public void setBatchStrategy(BatchStrategy batchStrategy) {
+        this.batchStrategy = batchStrategy;
+    }
+
+    public int getBatchChunkSize() {
+        return batchChunkSize;
+    }
+
+    public void setBatchChunkSize(int batchChunkSize) {
+        this.batchChunkSize = batchChunkSize;
+    }
+
+    public int getMaxBindParameters() {
+        return maxBindParameters;
+    }
+
+    public void setMaxBindParameters(int maxBindParameters) {
+        this.maxBindParameters = maxBindParameters;
+    }
+
+    public boolean isDirtyTracking() {
+        return dirtyTracking;
+    }
+
+    public void setDirtyTracking(boolean dirtyTracking) {
+        this.dirtyTracking = dirtyTracking;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public int getCursorFetchSize() {
+        return cursorFetchSize;
+    }
+
+    public void setCursorFetchSize(int cursorFetchSize) {
+        this.cursorFetchSize = cursorFetchSize;
+    }
+
+    public int getPageTotalCacheSeconds() {
+        return pageTotalCacheSeconds;
+    }
+
+    public void setPageTotalCacheSeconds(int pageTotalCacheSeconds) {
+        this.pageTotalCacheSeconds = pageTotalCacheSeconds;
+    }
+
+    public int getInListChunkSize() {
+        return inListChunkSize;
+    }
+
+    public void setInListChunkSize(int inListChunkSize) {
+        this.inListChunkSize = inListChunkSize;
+    }
+
+    public boolean isStatementBucketing() {
+        return statementBucketing;
+    }
+
+    public void setStatementBucketing(boolean statementBucketing) {
+        this.statementBucketing = statementBucketing;
+    }
+
+    public int getShardQueryParallelism() {
+        return shardQueryParallelism;
+    }
+
+    public void setShardQueryParallelism(int shardQueryParallelism) {
+        this.shardQueryParallelism = shardQueryParallelism;
+    }
+
+    public int getAsyncPoolSize() {
+        return asyncPoolSize;
+    }
+
+    public void setAsyncPoolSize(int asyncPoolSize) {
+        this.asyncPoolSize = asyncPoolSize;
+    }
+
+    public int getAsyncMaxConcurrency() {
+        return asyncMaxConcurrency;
+    }
+
+    public void setAsyncMaxConcurrency(int asyncMaxConcurrency) {
+        this.asyncMaxConcurrency = asyncMaxConcurrency;
+    }
+
+    public String getSegmentTable() {
+        return segmentTable;
+    }
+
+    public void setSegmentTable(String segmentTable) {
+        this.segmentTable = segmentTable;
+    }
+
+    public int getSegmentStep() {
+        return segmentStep;
+    }
+
+    public void setSegmentStep(int segmentStep) {
+        this.segmentStep = segmentStep;
+    }
+
+    public int getSegmentPrefetchPercent() {
+        return segmentPrefetchPercent;
+    }
+
+    public void setSegmentPrefetchPercent(int segmentPrefetchPercent) {
+        this.segmentPrefetchPercent = segmentPrefetchPercent;
+    }
+
+    public boolean isSnowflakeWorkerLease() {
+        return snowflakeWorkerLease;
+    }
+
+    public void setSnowflakeWorkerLease(boolean snowflakeWorkerLease) {
+        this.snowflakeWorkerLease = snowflakeWorkerLease;
+    }
+
+    public String getSnowflakeWorkerTable() {
+        return snowflakeWorkerTable;
+    }
+
+    public void setSnowflakeWorkerTable(String snowflakeWorkerTable) {
+        this.snowflakeWorkerTable = snowflakeWorkerTable;
+    }
+
+    public int getSnowflakeWorkerLeaseSeconds() {
+        return snowflakeWorkerLeaseSeconds;
+    }
+
+    public void setSnowflakeWorkerLeaseSeconds(int snowflakeWorkerLeaseSeconds) {
+        this.snowflakeWorkerLeaseSeconds = snowflakeWorkerLeaseSeconds;
+    }
+
     @Override
     public String toString() {
         return "GlobalConfig{" +
@@ -62,6 +311,25 @@ public class GlobalConfig {
                 ", autoSyncDb=" + autoSyncDb +
                 ", namingConvention=" + namingConvention +
                 ", tablePrefix='" + tablePrefix + '\'' +
+                ", sqlCacheSize=" + sqlCacheSize +
+                ", batchStrategy=" + batchStrategy +
+                ", batchChunkSize=" + batchChunkSize +
+                ", maxBindParameters=" + maxBindParameters +
+                ", dirtyTracking=" + dirtyTracking +
+                ", dialect=" + dialect +
+                ", cursorFetchSize=" + cursorFetchSize +
+                ", pageTotalCacheSeconds=" + pageTotalCacheSeconds +
+                ", inListChunkSize=" + inListChunkSize +
+                ", statementBucketing=" + statementBucketing +
+                ", shardQueryParallelism=" + shardQueryParallelism +
+                ", asyncPoolSize=" + asyncPoolSize +
+                ", asyncMaxConcurrency=" + asyncMaxConcurrency +
+                ", segmentTable='" + segmentTable + '\'' +
+                ", segmentStep=" + segmentStep +
+                ", segmentPrefetchPercent=" + segmentPrefetchPercent +
+                ", snowflakeWorkerLease=" + snowflakeWorkerLease +
+                ", snowflakeWorkerTable='" + snowflakeWorkerTable + '\'' +
+                ", snowflakeWorkerLeaseSeconds=" + snowflakeWorkerLeaseSeconds +
                 '}';
     }
 }
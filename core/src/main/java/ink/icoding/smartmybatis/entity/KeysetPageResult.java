@@ -0,0 +1,72 @@
+package ink.icoding.smartmybatis.entity;
+
+import java.util.List;
+
+/**
+ * 游标分页结果
+ * 通过 nextToken 获取下一页, 不计算总记录数
+ * @author gsk
+ */
+public class KeysetPageResult<T> {
+
+    /**
+     * 数据列表
+     */
+    private List<T> data;
+
+    /**
+     * 下一页的游标, 没有下一页时为 null
+     */
+    private String nextToken;
+
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasMore;
+
+    /**
+     * 每页大小
+     */
+    private int pageSize;
+
+    public KeysetPageResult(List<T> data, String nextToken, int pageSize) {
+        this.data = data;
+        this.nextToken = nextToken;
+        this.hasMore = nextToken != null;
+        this.pageSize = pageSize;
+    }
+
+    public KeysetPageResult() {}
+
+    public List<T> getData() {
+        return data;
+    }
+
+    public void setData(List<T> data) {
+        this.data = data;
+    }
+
+    public String getNextToken() {
+        return nextToken;
+    }
+
+    public void setNextToken(String nextToken) {
+        this.nextToken = nextToken;
+    }
+
+    public boolean isHasMore() {
+        return hasMore;
+    }
+
+    public void setHasMore(boolean hasMore) {
+        this.hasMore = hasMore;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+}
@@ -16,6 +16,11 @@ public class Page {
      */
     private int pageSize;
 
+    /**
+     * 总记录数统计策略
+     */
+    private TotalStrategy totalStrategy = TotalStrategy.EXACT;
+
     /**
      * 构造函数
      * @param page 页码
@@ -26,6 +31,18 @@ public class Page {
         this.pageSize = pageSize;
     }
 
+    /**
+     * 构造函数
+     * @param page 页码
+     * @param pageSize 每页大小
+     * @param totalStrategy 总记录数统计策略
+     */
+    public Page(int page, int pageSize, TotalStrategy totalStrategy) {
+        this.page = page;
+        this.pageSize = pageSize;
+        this.totalStrategy = totalStrategy;
+    }
+
     /**
      * 默认构造函数，默认页码为1，每页大小为10
      */
@@ -66,4 +83,20 @@ public class Page {
         this.pageSize = pageSize;
     }
 
+    /**
+     * 获取总记录数统计策略
+     * @return 总记录数统计策略
+     */
+    public TotalStrategy getTotalStrategy() {
+        return totalStrategy;
+    }
+
+    /**
+     * 设置总记录数统计策略
+     * @param totalStrategy 总记录数统计策略
+     */
+    public void setTotalStrategy(TotalStrategy totalStrategy) {
+        this.totalStrategy = totalStrategy;
+    }
+
 }
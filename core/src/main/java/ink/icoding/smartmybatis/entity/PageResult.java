@@ -33,12 +33,33 @@ public class PageResult<T> {
      */
     private int totalPages;
 
+    /**
+     * 是否还有下一页
+     */
+    private boolean hasNext;
+
+    /**
+     * 产生总记录数的统计策略, NONE 时总记录数与总页数为 -1
+     */
+    private TotalStrategy totalStrategy = TotalStrategy.EXACT;
+
     public PageResult(List<T> data, long total, int page, int pageSize) {
         this.data = data;
         this.total = total;
         this.page = page;
         this.pageSize = pageSize;
         this.totalPages = (int) Math.ceil((double) total / pageSize);
+        this.hasNext = (long) page * pageSize < total;
+    }
+
+    public PageResult(List<T> data, long total, int page, int pageSize, boolean hasNext, TotalStrategy totalStrategy) {
+        this.data = data;
+        this.total = total;
+        this.page = page;
+        this.pageSize = pageSize;
+        this.totalPages = total < 0 ? -1 : (int) Math.ceil((double) total / pageSize);
+        this.hasNext = hasNext;
+        this.totalStrategy = totalStrategy;
     }
 
     public PageResult() {}
@@ -82,4 +103,20 @@ public class PageResult<T> {
     public void setTotalPages(int totalPages) {
         this.totalPages = totalPages;
     }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public TotalStrategy getTotalStrategy() {
+        return totalStrategy;
+    }
+
+    public void setTotalStrategy(TotalStrategy totalStrategy) {
+        this.totalStrategy = totalStrategy;
+    }
 }
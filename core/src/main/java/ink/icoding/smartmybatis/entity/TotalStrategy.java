@@ -0,0 +1,26 @@
+package ink.icoding.smartmybatis.entity;
+
+/**
+ * 分页总记录数统计策略
+ * @author gsk
+ */
+public enum TotalStrategy {
+
+    /**
+     * 每次查询精确统计总记录数
+     */
+    EXACT,
+    /**
+     * 精确统计后按条件缓存, 有效期内的后续分页复用缓存的总记录数
+     */
+    CACHED,
+    /**
+     * 使用优化器估算的记录数, 执行计划无行数时取 information_schema 中的表行数, 仅 MYSQL 方言支持, 其他方言退化为 EXACT
+     */
+    ESTIMATED,
+    /**
+     * 不统计总记录数, 只判断是否还有下一页
+     */
+    NONE,
+
+}
@@ -4,6 +4,8 @@ import ink.icoding.smartmybatis.entity.po.PO;
 
 import java.io.Serializable;
 import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -27,6 +29,10 @@ public class Where {
 
     private int limitStart;
 
+    private List<SFunction<? extends PO, ?>> selectFields;
+
+    private List<SFunction<? extends PO, ?>> excludeFields;
+
     /**
      * 创建一个空的 Where 条件对象
      * @return Where 条件对象
@@ -92,6 +98,24 @@ public class Where {
     }
 
 
+    /**
+     * 复制条件对象, 条件、排序与投影列表为新的列表, 列表中的表达式与原对象共享.
+     * 修改副本的列表、分页与别名不影响原对象
+     * @return 条件副本
+     */
+    public Where copy() {
+        Where copy = new Where();
+        copy.expressions = null == expressions ? null : new LinkedList<>(expressions);
+        copy.sortExpressions = null == sortExpressions ? null : new LinkedList<>(sortExpressions);
+        copy.aliasMappings = null == aliasMappings ? null : new HashMap<>(aliasMappings);
+        copy.globalCacleAlias = new HashMap<>(globalCacleAlias);
+        copy.limitSize = limitSize;
+        copy.limitStart = limitStart;
+        copy.selectFields = null == selectFields ? null : new ArrayList<>(selectFields);
+        copy.excludeFields = null == excludeFields ? null : new ArrayList<>(excludeFields);
+        return copy;
+    }
+
     /**
      * 获取比较表达式列表
      * @return 比较表达式列表
@@ -311,6 +335,42 @@ public class Where {
         return this;
     }
 
+    /**
+     * 指定查询的字段, 未指定的字段不查询, 结果中为 null; 主键总会被查询
+     * @param fields 查询的字段
+     * @return 当前 Where 对象
+     */
+    @SafeVarargs
+    public final <T extends PO> Where select(SFunction<T, ?>... fields) {
+        if (null == selectFields) {
+            selectFields = new ArrayList<>();
+        }
+        selectFields.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    /**
+     * 指定不查询的字段, 结果中为 null; 主键总会被查询
+     * @param fields 不查询的字段
+     * @return 当前 Where 对象
+     */
+    @SafeVarargs
+    public final <T extends PO> Where exclude(SFunction<T, ?>... fields) {
+        if (null == excludeFields) {
+            excludeFields = new ArrayList<>();
+        }
+        excludeFields.addAll(Arrays.asList(fields));
+        return this;
+    }
+
+    public List<SFunction<? extends PO, ?>> getSelectFields() {
+        return selectFields;
+    }
+
+    public List<SFunction<? extends PO, ?>> getExcludeFields() {
+        return excludeFields;
+    }
+
     public Map<String, AliasMapping<?>> getAliasMappings() {
         return aliasMappings;
     }
@@ -0,0 +1,101 @@
+package ink.icoding.smartmybatis.entity.po;
+
+import ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * 脏字段追踪工具
+ * 记录查询出的记录各列的值作为快照, 更新时与快照比较得出发生变化的字段. JSON 列按序列化后的字符串比较,
+ * 以便识别对象内部的修改.
+ * @author gsk
+ */
+public final class DirtyTracker {
+
+    private DirtyTracker() {
+    }
+
+    /**
+     * 记录当前各列的值作为快照
+     * @param record 记录
+     * @param declaration 映射声明
+     */
+    public static void snapshot(PO record, MapperDeclaration declaration) {
+        List<ColumnDeclaration> columnDeclarations = declaration.getColumnDeclarations();
+        Object[] snapshot = new Object[columnDeclarations.size()];
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = snapshotValue(record, columnDeclarations.get(i));
+        }
+        record.smartSnapshot = snapshot;
+    }
+
+    /**
+     * 将指定字段的快照刷新为当前值, 其余字段保持不变. 记录未被追踪时不做处理
+     * @param record 记录
+     * @param declaration 映射声明
+     * @param fieldNames 已写入数据库的字段名
+     */
+    public static void markClean(PO record, MapperDeclaration declaration, Collection<String> fieldNames) {
+        Object[] snapshot = record.smartSnapshot;
+        if (null == snapshot) {
+            return;
+        }
+        List<ColumnDeclaration> columnDeclarations = declaration.getColumnDeclarations();
+        for (int i = 0; i < snapshot.length; i++) {
+            ColumnDeclaration columnDeclaration = columnDeclarations.get(i);
+            if (fieldNames.contains(columnDeclaration.getFieldName())) {
+                snapshot[i] = snapshotValue(record, columnDeclaration);
+            }
+        }
+    }
+
+    /**
+     * 记录是否带有快照
+     * @param record 记录
+     * @return 是否被追踪
+     */
+    public static boolean isTracked(PO record) {
+        return null != record && null != record.smartSnapshot;
+    }
+
+    /**
+     * 清除快照, 之后 updateById 将更新全部列
+     * @param record 记录
+     */
+    public static void clear(PO record) {
+        record.smartSnapshot = null;
+    }
+
+    /**
+     * 获取与快照相比发生变化的字段名, 按列声明顺序排列
+     * @param record 记录
+     * @param declaration 映射声明
+     * @return 发生变化的字段名
+     */
+    public static List<String> dirtyFields(PO record, MapperDeclaration declaration) {
+        Object[] snapshot = record.smartSnapshot;
+        List<ColumnDeclaration> columnDeclarations = declaration.getColumnDeclarations();
+        List<String> fieldNames = new ArrayList<>();
+        for (int i = 0; i < columnDeclarations.size(); i++) {
+            ColumnDeclaration columnDeclaration = columnDeclarations.get(i);
+            if (null == snapshot || !Objects.equals(snapshot[i], snapshotValue(record, columnDeclaration))) {
+                fieldNames.add(columnDeclaration.getFieldName());
+            }
+        }
+        return fieldNames;
+    }
+
+    private static Object snapshotValue(PO record, ColumnDeclaration columnDeclaration) {
+        Object value = MapperUtil.getFieldValue(record, columnDeclaration.getFieldName());
+        if (columnDeclaration.isJson()) {
+            return SmartJsonTypeHandler.toJson(value);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,73 @@
+package ink.icoding.smartmybatis.entity.po;
+
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 懒加载字段追踪工具
+ * 记录查询时未加载的字段(未显式查询的懒加载列, 以及 select / exclude 投影之外的列),
+ * 按主键全量更新时跳过未加载且仍为 null 的字段, 已加载字段的 null 照常写入.
+ * @author gsk
+ */
+public final class LazyFieldTracker {
+
+    private LazyFieldTracker() {
+    }
+
+    /**
+     * 标记字段在查询时未加载
+     * @param record 记录
+     * @param fieldNames 未加载的字段名
+     */
+    public static void markUnloaded(PO record, Collection<String> fieldNames) {
+        if (fieldNames.isEmpty()) {
+            return;
+        }
+        Set<String> unloaded = record.smartUnloaded;
+        if (null == unloaded) {
+            record.smartUnloaded = new HashSet<>(fieldNames);
+        } else {
+            unloaded.addAll(fieldNames);
+        }
+    }
+
+    /**
+     * 标记字段已加载
+     * @param record 记录
+     * @param fieldNames 已加载的字段名
+     */
+    public static void markLoaded(PO record, Collection<String> fieldNames) {
+        Set<String> unloaded = record.smartUnloaded;
+        if (null != unloaded) {
+            unloaded.removeAll(fieldNames);
+            if (unloaded.isEmpty()) {
+                record.smartUnloaded = null;
+            }
+        }
+    }
+
+    /**
+     * 获取更新时需要跳过的字段: 查询时未加载且之后没有被赋值的字段
+     * @param record 记录
+     * @return 需要跳过的字段名, 没有时为空集合
+     */
+    public static List<String> skippedFields(PO record) {
+        Set<String> unloaded = record.smartUnloaded;
+        if (null == unloaded) {
+            return Collections.emptyList();
+        }
+        List<String> fieldNames = new ArrayList<>(unloaded.size());
+        for (String fieldName : unloaded) {
+            if (null == MapperUtil.getFieldValue(record, fieldName)) {
+                fieldNames.add(fieldName);
+            }
+        }
+        return fieldNames;
+    }
+}
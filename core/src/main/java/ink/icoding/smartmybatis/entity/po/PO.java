@@ -1,9 +1,20 @@
 package ink.icoding.smartmybatis.entity.po;
 
 import java.lang.reflect.Field;
+import java.util.Set;
 
 public class PO {
 
+    /**
+     * 脏字段追踪快照, 由 DirtyTracker 维护, 不参与序列化与列映射
+     */
+    transient Object[] smartSnapshot;
+
+    /**
+     * 查询时未加载的懒加载字段, 由 LazyFieldTracker 维护, 不参与序列化与列映射
+     */
+    transient Set<String> smartUnloaded;
+
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
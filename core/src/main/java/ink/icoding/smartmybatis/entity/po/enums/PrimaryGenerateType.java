@@ -21,6 +21,14 @@ public enum PrimaryGenerateType {
      * 16进制雪花算法
      */
     SNOWFLAKE_HEX,
+    /**
+     * 号段(从号段表批量租用连续的数值主键), 主键为 Long, Integer 或 String
+     */
+    SEGMENT,
+    /**
+     * 按时间递增的 UUIDv7, 主键为 String 时存储为 32 位十六进制 CHAR(32), 为 UUID 时存储为 BINARY(16)
+     */
+    UUID_V7,
     /**
      * 手动输入
      */
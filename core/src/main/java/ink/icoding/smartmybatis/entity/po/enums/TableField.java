@@ -37,6 +37,12 @@ public @interface TableField {
      */
     boolean json() default false;
 
+    /**
+     * 是否懒加载, 懒加载列不在默认查询中返回, 需通过 Where.select 显式指定或调用 SmartMapper.loadLazy 加载;
+     * 按主键全量更新时, 查询时未加载且仍为 null 的懒加载列保持数据库中的原值, 已加载或新建记录的 null 照常写入
+     */
+    boolean lazy() default false;
+
     /**
      * 列类型
      */
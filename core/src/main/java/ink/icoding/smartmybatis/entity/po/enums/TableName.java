@@ -1,5 +1,7 @@
 package ink.icoding.smartmybatis.entity.po.enums;
 
+import ink.icoding.smartmybatis.mapper.shard.ShardResolver;
+
 import java.lang.annotation.ElementType;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -28,4 +30,40 @@ public @interface TableName {
      * 初始化语句
      */
     String init() default "";
+
+    /**
+     * 是否开启实体缓存, 开启后 selectById 与 selectByIds 优先从缓存读取, 通过 SmartMapper 写入时失效
+     */
+    boolean cache() default false;
+
+    /**
+     * 实体缓存的最大条数
+     */
+    int cacheSize() default 1024;
+
+    /**
+     * 实体缓存的有效期, 单位秒, 小于等于 0 时不过期
+     */
+    long cacheTtlSeconds() default 300;
+
+    /**
+     * 是否开启查询缓存, 开启后 select、selectOne、selectWithRelations 与 count 的结果按条件缓存,
+     * 查询涉及的任意一张表通过 SmartMapper 写入后失效
+     */
+    boolean queryCache() default false;
+
+    /**
+     * 查询缓存的最大条数
+     */
+    int queryCacheSize() default 256;
+
+    /**
+     * 查询缓存的有效期, 单位秒, 小于等于 0 时不过期
+     */
+    long queryCacheTtlSeconds() default 60;
+
+    /**
+     * 分表解析器, 需要无参构造方法; 默认不分表
+     */
+    Class<? extends ShardResolver> shardResolver() default ShardResolver.class;
 }
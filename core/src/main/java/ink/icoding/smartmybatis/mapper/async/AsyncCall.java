@@ -0,0 +1,119 @@
+package ink.icoding.smartmybatis.mapper.async;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 异步调用的执行状态
+ * 执行期间绑定到执行线程, AsyncStatementInterceptor 在创建 Statement 后登记到当前调用,
+ * 调用被取消或超时时通过 Statement.cancel 中止数据库中正在执行的语句.
+ * @author gsk
+ */
+public final class AsyncCall {
+
+    private static final ThreadLocal<AsyncCall> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 截止时间(System.nanoTime), 为 0 时不限时
+     */
+    private final long deadline;
+
+    private volatile boolean cancelled;
+
+    private volatile Statement statement;
+
+    /**
+     * 正在等待连接许可的线程, 取消时中断等待; 读写均持有当前对象的锁
+     */
+    private Thread waiting;
+
+    AsyncCall(long timeoutNanos) {
+        this.deadline = timeoutNanos > 0 ? System.nanoTime() + timeoutNanos : 0;
+    }
+
+    /**
+     * 登记当前线程的异步调用新创建的 Statement, 按剩余时间设置查询超时; 调用已取消时立即中止
+     * @param statement 新创建的 Statement
+     * @throws SQLException 设置超时失败
+     */
+    public static void onStatementPrepared(Statement statement) throws SQLException {
+        AsyncCall call = CURRENT.get();
+        if (null == call) {
+            return;
+        }
+        call.statement = statement;
+        if (call.deadline != 0) {
+            long remaining = call.remainingNanos();
+            if (remaining <= 0) {
+                call.cancel();
+            } else {
+                int seconds = (int) Math.max(1, TimeUnit.NANOSECONDS.toSeconds(remaining + TimeUnit.SECONDS.toNanos(1) - 1));
+                int current = statement.getQueryTimeout();
+                if (current == 0 || current > seconds) {
+                    statement.setQueryTimeout(seconds);
+                }
+            }
+        }
+        if (call.cancelled) {
+            statement.cancel();
+        }
+    }
+
+    void bind() {
+        CURRENT.set(this);
+    }
+
+    void unbind() {
+        CURRENT.remove();
+        statement = null;
+    }
+
+    boolean hasDeadline() {
+        return deadline != 0;
+    }
+
+    long remainingNanos() {
+        return deadline - System.nanoTime();
+    }
+
+    boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * 登记等待连接许可的线程
+     * @param thread 执行线程
+     */
+    synchronized void startWaiting(Thread thread) {
+        this.waiting = thread;
+    }
+
+    /**
+     * 结束等待并清除取消时留下的中断标记. 与 cancel 持有同一把锁, 返回后不会再有中断落到执行线程的后续任务上
+     */
+    synchronized void stopWaiting() {
+        this.waiting = null;
+        Thread.interrupted();
+    }
+
+    /**
+     * 取消调用: 中断许可等待, 中止正在执行的语句
+     */
+    void cancel() {
+        cancelled = true;
+        synchronized (this) {
+            if (null != waiting) {
+                waiting.interrupt();
+            }
+        }
+        Statement current = statement;
+        if (null != current) {
+            try {
+                current.cancel();
+            } catch (SQLException ignore) {
+                // 语句已结束或驱动不支持取消
+            }
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package ink.icoding.smartmybatis.mapper.async;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.Page;
+import ink.icoding.smartmybatis.entity.PageResult;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+
+import javax.sql.DataSource;
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * SmartMapper 的异步门面
+ * 方法在配置的执行器上执行并返回 CompletableFuture, 默认执行器在 JDK 21 及以上使用虚拟线程, 否则使用有界线程池.
+ * 执行前需获取所用数据源的连接许可, 同时执行的调用数不超过连接池大小; 超时或取消时通过 Statement.cancel 中止正在执行的语句.
+ * 异步调用在执行器线程中执行, 不参与调用方线程的事务; 调用方线程的读写路由(如 ReadRouting.onPrimary)随调用传递到执行器线程.
+ * @author gsk
+ */
+public final class AsyncSmartMapper<T extends PO> {
+
+    /**
+     * 默认执行器, 首次使用时按配置创建
+     */
+    private static volatile Executor defaultExecutor;
+
+    /**
+     * 超时调度线程
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "smart-async-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final SmartMapper<T> mapper;
+
+    private final Executor executor;
+
+    private final long timeoutNanos;
+
+    private volatile Semaphore permits;
+
+    private AsyncSmartMapper(SmartMapper<T> mapper, Executor executor, long timeoutNanos, Semaphore permits) {
+        this.mapper = mapper;
+        this.executor = executor;
+        this.timeoutNanos = timeoutNanos;
+        this.permits = permits;
+    }
+
+    /**
+     * 使用默认执行器创建异步门面
+     * @param mapper SmartMapper
+     * @return 异步门面
+     */
+    public static <T extends PO> AsyncSmartMapper<T> of(SmartMapper<T> mapper) {
+        return of(mapper, defaultExecutor());
+    }
+
+    /**
+     * 使用指定执行器创建异步门面
+     * @param mapper SmartMapper
+     * @param executor 执行器
+     * @return 异步门面
+     */
+    public static <T extends PO> AsyncSmartMapper<T> of(SmartMapper<T> mapper, Executor executor) {
+        return new AsyncSmartMapper<>(mapper, executor, 0, null);
+    }
+
+    /**
+     * 返回带超时的异步门面, 超时后调用以 TimeoutException 结束并中止正在执行的语句; 超时包括等待连接许可的时间
+     * @param timeout 超时时间, 小于等于 0 时不限时
+     * @param unit 时间单位
+     * @return 异步门面
+     */
+    public AsyncSmartMapper<T> withTimeout(long timeout, TimeUnit unit) {
+        return new AsyncSmartMapper<>(mapper, executor, unit.toNanos(timeout), permits);
+    }
+
+    public CompletableFuture<List<T>> select(Where where) {
+        return supply(m -> m.select(where));
+    }
+
+    public CompletableFuture<List<T>> selectWithRelations(Where where) {
+        return supply(m -> m.selectWithRelations(where));
+    }
+
+    public CompletableFuture<T> selectOne(Where where) {
+        return supply(m -> m.selectOne(where));
+    }
+
+    public CompletableFuture<T> selectFirst(Where where) {
+        return supply(m -> m.selectFirst(where));
+    }
+
+    public CompletableFuture<T> selectById(Serializable id) {
+        return supply(m -> m.selectById(id));
+    }
+
+    public CompletableFuture<List<T>> selectByIds(Collection<? extends Serializable> ids) {
+        return supply(m -> m.selectByIds(ids));
+    }
+
+    public <K extends Serializable> CompletableFuture<Map<K, T>> selectMapByIds(Collection<K> ids) {
+        return supply(m -> m.selectMapByIds(ids));
+    }
+
+    public CompletableFuture<Long> count() {
+        return supply(SmartMapper::count);
+    }
+
+    public CompletableFuture<Long> count(Where where) {
+        return supply(m -> m.count(where));
+    }
+
+    public CompletableFuture<PageResult<T>> selectPage(Where where, Page page) {
+        return supply(m -> m.selectPage(where, page));
+    }
+
+    public CompletableFuture<List<Map<String, Object>>> queryBySql(String sql, Object... params) {
+        return supply(m -> m.queryBySql(sql, params));
+    }
+
+    /**
+     * 异步执行任意 SmartMapper 操作
+     * @param action 操作
+     * @return 操作结果
+     */
+    public <R> CompletableFuture<R> supply(Function<SmartMapper<T>, R> action) {
+        AsyncCall call = new AsyncCall(timeoutNanos);
+        ReadRouting.Route route = ReadRouting.current();
+        CompletableFuture<R> future = new CompletableFuture<R>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                boolean cancelled = super.cancel(mayInterruptIfRunning);
+                if (cancelled) {
+                    call.cancel();
+                }
+                return cancelled;
+            }
+        };
+        if (call.hasDeadline()) {
+            ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                if (future.completeExceptionally(new TimeoutException("SmartMapper call timed out after "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms."))) {
+                    call.cancel();
+                }
+            }, timeoutNanos, TimeUnit.NANOSECONDS);
+            future.whenComplete((result, error) -> timer.cancel(false));
+        }
+        try {
+            executor.execute(() -> run(action, call, route, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <R> void run(Function<SmartMapper<T>, R> action, AsyncCall call, ReadRouting.Route route,
+                         CompletableFuture<R> future) {
+        if (future.isDone()) {
+            return;
+        }
+        Semaphore semaphore = permits();
+        boolean acquired = false;
+        call.startWaiting(Thread.currentThread());
+        try {
+            if (call.hasDeadline()) {
+                acquired = semaphore.tryAcquire(Math.max(call.remainingNanos(), 0), TimeUnit.NANOSECONDS);
+            } else {
+                semaphore.acquire();
+                acquired = true;
+            }
+        } catch (InterruptedException e) {
+            future.completeExceptionally(new CancellationException("Cancelled while waiting for a connection permit."));
+        } finally {
+            // 清除取消时留下的中断标记, 避免影响执行器线程的后续任务
+            call.stopWaiting();
+        }
+        if (!acquired) {
+            future.completeExceptionally(new TimeoutException("Timed out waiting for a connection permit."));
+            return;
+        }
+        try {
+            if (call.isCancelled() || future.isDone()) {
+                return;
+            }
+            call.bind();
+            ReadRouting.Route previous = ReadRouting.switchTo(route);
+            try {
+                future.complete(action.apply(mapper));
+            } finally {
+                ReadRouting.restore(previous);
+                call.unbind();
+            }
+        } catch (Throwable e) {
+            future.completeExceptionally(e);
+        } finally {
+            semaphore.release();
+        }
+    }
+
+    /**
+     * Mapper 所用数据源的连接许可, 首次调用时获取
+     */
+    private Semaphore permits() {
+        Semaphore current = permits;
+        if (null == current) {
+            DataSource dataSource = SmartBatchExecutor.getSqlSessionFactory(SmartBatchExecutor.mapperInterfaceOf(mapper))
+                    .getConfiguration().getEnvironment().getDataSource();
+            current = ConnectionPermits.of(dataSource);
+            permits = current;
+        }
+        return current;
+    }
+
+    /**
+     * 默认执行器: 线程池大小小于等于 0 且 JDK 支持虚拟线程时每个调用一个虚拟线程, 否则使用固定大小的线程池
+     */
+    private static Executor defaultExecutor() {
+        Executor current = defaultExecutor;
+        if (null == current) {
+            synchronized (AsyncSmartMapper.class) {
+                current = defaultExecutor;
+                if (null == current) {
+                    GlobalConfig config = SmartConfigHolder.config();
+                    int poolSize = null == config ? 0 : config.getAsyncPoolSize();
+                    current = poolSize <= 0 ? virtualThreadExecutor() : null;
+                    if (null == current) {
+                        AtomicInteger counter = new AtomicInteger();
+                        current = Executors.newFixedThreadPool(
+                                poolSize > 0 ? poolSize : Math.max(16, Runtime.getRuntime().availableProcessors() * 4), runnable -> {
+                                    Thread thread = new Thread(runnable, "smart-async-" + counter.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                });
+                    }
+                    defaultExecutor = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
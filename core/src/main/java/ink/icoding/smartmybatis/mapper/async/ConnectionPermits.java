@@ -0,0 +1,69 @@
+package ink.icoding.smartmybatis.mapper.async;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.mapper.routing.ReadWriteRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+
+/**
+ * 数据源连接许可
+ * 每个数据源一个信号量, 许可数默认取连接池的最大连接数, 限制同时执行的异步调用个数,
+ * 避免大量虚拟线程同时等待连接池而耗尽连接、拖慢同步调用.
+ * @author gsk
+ */
+final class ConnectionPermits {
+
+    /**
+     * 无法识别连接池大小时的许可数
+     */
+    private static final int DEFAULT_PERMITS = 10;
+
+    /**
+     * 常见连接池获取最大连接数的方法: HikariCP、Druid / Tomcat JDBC、DBCP2、C3P0
+     */
+    private static final String[] POOL_SIZE_METHODS = {
+            "getMaximumPoolSize", "getMaxActive", "getMaxTotal", "getMaxPoolSize"
+    };
+
+    private static final Map<DataSource, Semaphore> PERMITS = new ConcurrentHashMap<>();
+
+    private ConnectionPermits() {
+    }
+
+    /**
+     * 获取数据源的信号量
+     * @param dataSource 数据源
+     * @return 信号量
+     */
+    static Semaphore of(DataSource dataSource) {
+        return PERMITS.computeIfAbsent(dataSource, key -> new Semaphore(permitsOf(key), true));
+    }
+
+    private static int permitsOf(DataSource dataSource) {
+        GlobalConfig config = SmartConfigHolder.config();
+        if (null != config && config.getAsyncMaxConcurrency() > 0) {
+            return config.getAsyncMaxConcurrency();
+        }
+        // 读写分离时写入与事务都在主库, 按主库连接池计算
+        DataSource pool = dataSource instanceof ReadWriteRoutingDataSource
+                ? ((ReadWriteRoutingDataSource) dataSource).getPrimary()
+                : dataSource;
+        for (String methodName : POOL_SIZE_METHODS) {
+            try {
+                Method method = pool.getClass().getMethod(methodName);
+                Object size = method.invoke(pool);
+                if (size instanceof Number && ((Number) size).intValue() > 0) {
+                    return ((Number) size).intValue();
+                }
+            } catch (ReflectiveOperationException | RuntimeException ignore) {
+                // 不是该连接池的实现
+            }
+        }
+        return DEFAULT_PERMITS;
+    }
+}
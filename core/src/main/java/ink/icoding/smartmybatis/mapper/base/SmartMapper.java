@@ -1,20 +1,36 @@
 package ink.icoding.smartmybatis.mapper.base;
 
+import ink.icoding.smartmybatis.conf.BatchStrategy;
+import ink.icoding.smartmybatis.entity.KeysetPageResult;
 import ink.icoding.smartmybatis.entity.Page;
 import ink.icoding.smartmybatis.entity.PageResult;
 import ink.icoding.smartmybatis.entity.SmartTreeNode;
 import ink.icoding.smartmybatis.entity.expression.SFunction;
 import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
 import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchSelector;
+import ink.icoding.smartmybatis.mapper.lazy.LazyColumnLoader;
+import ink.icoding.smartmybatis.mapper.page.KeysetPagination;
+import ink.icoding.smartmybatis.mapper.page.OffsetPagination;
 import ink.icoding.smartmybatis.mapper.provider.BaseSqlProvider;
 import ink.icoding.smartmybatis.utils.TreeUtils;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
 import org.apache.ibatis.annotations.InsertProvider;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
 import org.apache.ibatis.annotations.SelectProvider;
 import org.apache.ibatis.annotations.UpdateProvider;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.ResultSetType;
 
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -35,14 +51,95 @@ public interface SmartMapper<T extends PO> {
     @InsertProvider(type = BaseSqlProvider.class, method = "insert")
     int insert(@Param("record") T record);
 
+    /**
+     * 批量插入记录, 使用全局配置的批量写入策略, 记录按批拆分后写入
+     * @param records
+     *      记录集合
+     * @return 受影响的行数
+     */
+    default int insertBatch(Collection<T> records){
+        return insertBatch(records, SmartBatchExecutor.defaultStrategy());
+    }
+
     /**
      * 批量插入记录
      * @param records
      *      记录集合
+     * @param strategy
+     *      批量写入策略
+     * @return 受影响的行数
+     */
+    default int insertBatch(Collection<T> records, BatchStrategy strategy){
+        return SmartBatchExecutor.insertBatch(this, records, strategy);
+    }
+
+    /**
+     * 使用一条多行 VALUES 语句插入记录, 不做分批, 一般通过 insertBatch 调用
+     * @param records
+     *      记录集合
      * @return 受影响的行数
      */
     @InsertProvider(type = BaseSqlProvider.class, method = "insertBatch")
-    int insertBatch(@Param("list") Collection<T> records);
+    int insertRows(@Param("list") List<T> records);
+
+    /**
+     * 插入或更新记录, 主键或唯一键冲突时更新全部列
+     * 记录没有主键时按 insert 的规则生成主键, 已有主键时保留
+     * @param record
+     *      记录
+     * @return 受影响的行数, 插入为 1, 更新为 2, 未变化为 0
+     */
+    default int upsert(T record){
+        return upsert(record, null);
+    }
+
+    /**
+     * 插入或更新记录, 主键或唯一键冲突时只更新指定的列
+     * @param record
+     *      记录
+     * @param updateFields
+     *      冲突时需要更新的字段, 为空时更新全部列
+     * @return 受影响的行数, 插入为 1, 更新为 2, 未变化为 0
+     */
+    default int upsert(T record, Collection<SFunction<T, ?>> updateFields){
+        if (record == null) {
+            throw new IllegalArgumentException("The record for upsert cannot be null.");
+        }
+        return SmartBatchExecutor.upsertBatch(this, Collections.singletonList(record), updateFields);
+    }
+
+    /**
+     * 批量插入或更新记录, 主键或唯一键冲突时更新全部列, 记录按批拆分后写入
+     * @param records
+     *      记录集合
+     * @return 受影响的行数
+     */
+    default int upsertBatch(Collection<T> records){
+        return upsertBatch(records, null);
+    }
+
+    /**
+     * 批量插入或更新记录, 主键或唯一键冲突时只更新指定的列, 记录按批拆分后写入
+     * @param records
+     *      记录集合
+     * @param updateFields
+     *      冲突时需要更新的字段, 为空时更新全部列
+     * @return 受影响的行数
+     */
+    default int upsertBatch(Collection<T> records, Collection<SFunction<T, ?>> updateFields){
+        return SmartBatchExecutor.upsertBatch(this, records, updateFields);
+    }
+
+    /**
+     * 使用一条 INSERT ... ON DUPLICATE KEY UPDATE 语句写入记录, 不做分批, 一般通过 upsertBatch 调用
+     * @param records
+     *      记录集合
+     * @param updateFieldNames
+     *      冲突时需要更新的字段名, 为空时更新全部列
+     * @return 受影响的行数
+     */
+    @InsertProvider(type = BaseSqlProvider.class, method = "upsertBatch")
+    int upsertRows(@Param("list") List<T> records, @Param("updateColumns") Collection<String> updateFieldNames);
 
     /**
      * 查询所有记录
@@ -61,6 +158,18 @@ public interface SmartMapper<T extends PO> {
     @SelectProvider(type = BaseSqlProvider.class, method = "selectByWhere")
     List<T> select(Where where);
 
+    /**
+     * 根据条件流式查询记录, 结果逐行读取, 内存占用与记录总数无关
+     * 游标依赖打开的数据库连接, 需在事务中使用并在读取完成后关闭.
+     * fetchSize 由 SmartMapperInitializer 按方言设置. 分表实体的条件必须定位到单张物理表, 否则抛出 UnsupportedOperationException
+     * @param where
+     *      查询条件
+     * @return 记录游标
+     */
+    @SelectProvider(type = BaseSqlProvider.class, method = "selectByWhere")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, useCache = false)
+    Cursor<T> selectCursor(Where where);
+
     /**
      * 根据条件查询记录, 同时查询关联字段的数据
      * @param where
@@ -105,6 +214,15 @@ public interface SmartMapper<T extends PO> {
     @SelectProvider(type = BaseSqlProvider.class, method = "countByWhere")
     long count(Where where);
 
+    /**
+     * 获取统计记录数语句的执行计划, 用于读取优化器估算的记录数
+     * @param where
+     *      查询条件
+     * @return 执行计划
+     */
+    @SelectProvider(type = BaseSqlProvider.class, method = "explainCountByWhere")
+    List<Map<String, Object>> explainCount(Where where);
+
     /**
      * 根据主键查询记录
      * @param id
@@ -114,6 +232,90 @@ public interface SmartMapper<T extends PO> {
     @SelectProvider(type = BaseSqlProvider.class, method = "selectByPrimaryKey")
     T selectById(Serializable id);
 
+    /**
+     * 根据主键集合查询记录, 主键去重后分批查询, 结果按主键集合的顺序返回, 不存在的主键不返回
+     * @param ids
+     *      主键集合
+     * @return 记录
+     */
+    default List<T> selectByIds(Collection<? extends Serializable> ids){
+        return SmartBatchSelector.selectByIds(this, ids, true);
+    }
+
+    /**
+     * 根据主键集合查询记录, 主键去重后分批查询
+     * @param ids
+     *      主键集合
+     * @param preserveOrder
+     *      是否按主键集合的顺序返回, 为 false 时按数据库返回的顺序, 省去排序
+     * @return 记录
+     */
+    default List<T> selectByIds(Collection<? extends Serializable> ids, boolean preserveOrder){
+        return SmartBatchSelector.selectByIds(this, ids, preserveOrder);
+    }
+
+    /**
+     * 根据主键集合查询记录, 以主键为键, 按主键集合的顺序排列, 不存在的主键不包含在内
+     * @param ids
+     *      主键集合
+     * @return 主键与记录
+     */
+    default <K extends Serializable> Map<K, T> selectMapByIds(Collection<K> ids){
+        return SmartBatchSelector.selectMapByIds(this, ids);
+    }
+
+    /**
+     * 根据主键集合查询一批记录
+     * @param ids
+     *      主键集合
+     * @return 记录
+     */
+    @SelectProvider(type = BaseSqlProvider.class, method = "selectByIds")
+    List<T> selectRowsByIds(@Param("ids") Collection<? extends Serializable> ids);
+
+    /**
+     * 加载记录的全部懒加载列
+     * @param record
+     *      记录
+     */
+    default void loadLazy(T record){
+        if (null != record) {
+            LazyColumnLoader.load(this, Collections.singletonList(record), null);
+        }
+    }
+
+    /**
+     * 批量加载记录的全部懒加载列, 按主键分批查询后回填
+     * @param records
+     *      记录集合
+     */
+    default void loadLazy(Collection<T> records){
+        LazyColumnLoader.load(this, records, null);
+    }
+
+    /**
+     * 批量加载记录的指定字段, 按主键分批查询后回填
+     * @param records
+     *      记录集合
+     * @param fields
+     *      需要加载的字段, 为空时加载全部懒加载列
+     */
+    default void loadLazy(Collection<T> records, Collection<SFunction<T, ?>> fields){
+        LazyColumnLoader.load(this, records, fields);
+    }
+
+    /**
+     * 根据主键查询指定字段, 结果只包含主键与指定字段
+     * @param ids
+     *      主键集合
+     * @param fieldNames
+     *      需要查询的字段名
+     * @return 记录
+     */
+    @SelectProvider(type = BaseSqlProvider.class, method = "selectColumnsByIds")
+    List<T> selectColumnsByIds(@Param("ids") Collection<? extends Serializable> ids,
+                               @Param("columns") Collection<String> fieldNames);
+
     /**
      * 根据条件查询单条记录, 如果有多条记录则抛出异常
      * @param where
@@ -139,7 +341,7 @@ public interface SmartMapper<T extends PO> {
     }
 
     /**
-     * 根据条件分页查询记录
+     * 根据条件分页查询记录, 总记录数按 Page 中的统计策略获取
      * @param where
      *      查询条件
      * @param page
@@ -147,9 +349,24 @@ public interface SmartMapper<T extends PO> {
      * @return 分页结果
      */
     default PageResult<T> selectPage(Where where, Page page){
-        long total = count(where);
-        List<T> list = select(where.limit((page.getPage() - 1) * page.getPageSize(), page.getPageSize()));
-        return new PageResult<>(list, total, page.getPage(), page.getPageSize());
+        return OffsetPagination.selectPage(this, where, page);
+    }
+
+    /**
+     * 游标分页查询, 按上一页最后一条记录的排序值定位下一页, 深度分页与第一页的开销相同
+     * 排序使用 where 中的 orderBy, 并以唯一键作为最后的排序列, 排序列的值不能为 null
+     * @param where
+     *      查询条件, 将被追加游标条件、排序和分页, 每次调用需使用新的对象
+     * @param uniqueKey
+     *      唯一键, 一般为主键
+     * @param token
+     *      上一页返回的 nextToken, 为空时查询第一页
+     * @param size
+     *      每页大小
+     * @return 分页结果
+     */
+    default KeysetPageResult<T> selectPageAfter(Where where, SFunction<T, ?> uniqueKey, String token, int size){
+        return KeysetPagination.selectPageAfter(this, where, uniqueKey, token, size);
     }
 
 
@@ -210,12 +427,98 @@ public interface SmartMapper<T extends PO> {
 
     /**
      * 根据主键更新记录
+     * 开启脏字段追踪且记录由 SmartMapper 查询得到时, 只更新发生变化的列, 没有变化时不执行 SQL 并返回 0;
+     * 否则更新全部列
+     * @param record
+     *      记录
+     * @return 受影响的行数
+     */
+    default int updateById(T record){
+        if (!DirtyTracker.isTracked(record)) {
+            return updateAllById(record);
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclarationByPoClass(record.getClass());
+        List<String> dirtyFields = DirtyTracker.dirtyFields(record, declaration);
+        if (dirtyFields.isEmpty()) {
+            return 0;
+        }
+        int rows = updateColumnsById(record, dirtyFields);
+        DirtyTracker.markClean(record, declaration, dirtyFields);
+        return rows;
+    }
+
+    /**
+     * 根据主键更新记录, 只更新值不为 null 的列, 没有需要更新的列时不执行 SQL 并返回 0
+     * @param record
+     *      记录
+     * @return 受影响的行数
+     */
+    default int updateByIdSelective(T record){
+        MapperDeclaration declaration = MapperUtil.getMapperDeclarationByPoClass(record.getClass());
+        List<String> fieldNames = new ArrayList<>();
+        for (ColumnDeclaration columnDeclaration : declaration.getColumnDeclarations()) {
+            if (null != MapperUtil.getFieldValue(record, columnDeclaration.getFieldName())) {
+                fieldNames.add(columnDeclaration.getFieldName());
+            }
+        }
+        if (fieldNames.isEmpty()) {
+            return 0;
+        }
+        int rows = updateColumnsById(record, fieldNames);
+        DirtyTracker.markClean(record, declaration, fieldNames);
+        return rows;
+    }
+
+    /**
+     * 根据主键更新记录的全部列
      * @param record
      *      记录
      * @return 受影响的行数
      */
     @UpdateProvider(type = BaseSqlProvider.class, method = "updateById")
-    int updateById(@Param("record") T record);
+    int updateAllById(@Param("record") T record);
+
+    /**
+     * 根据主键更新记录的指定字段
+     * @param record
+     *      记录
+     * @param fieldNames
+     *      需要更新的字段名
+     * @return 受影响的行数
+     */
+    @UpdateProvider(type = BaseSqlProvider.class, method = "updateColumnsById")
+    int updateColumnsById(@Param("record") T record, @Param("columns") Collection<String> fieldNames);
+
+    /**
+     * 根据主键批量更新记录, 使用全局配置的批量写入策略, 记录按批拆分后更新
+     * @param records
+     *      记录集合
+     * @return 每批受影响的行数
+     */
+    default List<Integer> updateBatchById(Collection<T> records){
+        return updateBatchById(records, SmartBatchExecutor.defaultStrategy());
+    }
+
+    /**
+     * 根据主键批量更新记录
+     * @param records
+     *      记录集合
+     * @param strategy
+     *      批量写入策略, MULTI_ROW 时每批生成一条 CASE WHEN 更新语句, JDBC_BATCH 时复用 updateAllById 语句批量执行
+     * @return 每批受影响的行数
+     */
+    default List<Integer> updateBatchById(Collection<T> records, BatchStrategy strategy){
+        return SmartBatchExecutor.updateBatchById(this, records, strategy);
+    }
+
+    /**
+     * 使用一条 CASE WHEN 语句根据主键更新记录, 不做分批, 一般通过 updateBatchById 调用
+     * @param records
+     *      记录集合
+     * @return 受影响的行数
+     */
+    @UpdateProvider(type = BaseSqlProvider.class, method = "updateBatchById")
+    int updateRowsById(@Param("list") List<T> records);
 
     /**
      * 执行自定义 SQL 语句
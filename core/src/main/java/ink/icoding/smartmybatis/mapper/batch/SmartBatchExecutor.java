@@ -0,0 +1,300 @@
+package ink.icoding.smartmybatis.mapper.batch;
+
+import ink.icoding.smartmybatis.SpringApplicationUtil;
+import ink.icoding.smartmybatis.conf.BatchStrategy;
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.expression.SFunction;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.provider.StatementBuckets;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+/**
+ * 批量写入执行器
+ * 负责批量写入的分批, 以及基于 ExecutorType.BATCH 的 JDBC 批处理执行
+ * @author gsk
+ */
+public final class SmartBatchExecutor {
+
+    /**
+     * Mapper 接口对应的 SqlSessionFactory, 由 SmartMapperInitializer 在初始化 Mapper 时登记
+     */
+    private static final Map<Class<?>, SqlSessionFactory> SESSION_FACTORIES = new ConcurrentHashMap<>();
+
+    private SmartBatchExecutor() {
+    }
+
+    /**
+     * 登记 Mapper 接口使用的 SqlSessionFactory
+     * @param mapperInterface Mapper 接口
+     * @param sqlSessionFactory SqlSessionFactory
+     */
+    public static void registerSqlSessionFactory(Class<?> mapperInterface, SqlSessionFactory sqlSessionFactory) {
+        SESSION_FACTORIES.put(mapperInterface, sqlSessionFactory);
+    }
+
+    /**
+     * 获取配置的默认批量写入策略
+     * @return 批量写入策略
+     */
+    public static BatchStrategy defaultStrategy() {
+        GlobalConfig config = SmartConfigHolder.config();
+        if (null == config || null == config.getBatchStrategy()) {
+            return BatchStrategy.MULTI_ROW;
+        }
+        return config.getBatchStrategy();
+    }
+
+    /**
+     * 计算多行写入时每批的记录数, 保证单条语句的绑定参数个数不超过上限
+     * @param parametersPerRow 每行记录的绑定参数个数
+     * @return 每批记录数
+     */
+    public static int multiRowChunkSize(int parametersPerRow) {
+        GlobalConfig config = SmartConfigHolder.config();
+        int chunkSize = null == config ? 1000 : config.getBatchChunkSize();
+        int maxParameters = null == config ? 65535 : config.getMaxBindParameters();
+        if (parametersPerRow > 0 && maxParameters > 0) {
+            chunkSize = Math.min(chunkSize, maxParameters / parametersPerRow);
+        }
+        return Math.max(chunkSize, 1);
+    }
+
+    /**
+     * 获取 JDBC 批处理时每次提交的记录数
+     * @return 每批记录数
+     */
+    public static int jdbcBatchChunkSize() {
+        GlobalConfig config = SmartConfigHolder.config();
+        return Math.max(null == config ? 1000 : config.getBatchChunkSize(), 1);
+    }
+
+    /**
+     * 将记录拆分为多批
+     * @param records 记录集合
+     * @param chunkSize 每批记录数
+     * @return 分批后的记录
+     */
+    public static <T> List<List<T>> chunk(Collection<T> records, int chunkSize) {
+        List<List<T>> chunks = new ArrayList<>((records.size() + chunkSize - 1) / chunkSize);
+        List<T> current = new ArrayList<>(Math.min(chunkSize, records.size()));
+        for (T record : records) {
+            current.add(record);
+            if (current.size() == chunkSize) {
+                chunks.add(current);
+                current = new ArrayList<>(Math.min(chunkSize, records.size()));
+            }
+        }
+        if (!current.isEmpty()) {
+            chunks.add(current);
+        }
+        return chunks;
+    }
+
+    /**
+     * 拆分多行写入语句的记录, 开启语句分桶时每批的行数均为 2 的幂
+     * @param records 记录集合
+     * @param chunkSize 每批最大记录数
+     * @return 分批后的记录
+     */
+    public static <T> List<List<T>> statementChunks(Collection<T> records, int chunkSize) {
+        if (!StatementBuckets.enabled()) {
+            return chunk(records, chunkSize);
+        }
+        List<List<T>> chunks = new ArrayList<>();
+        for (List<T> chunk : chunk(records, Integer.highestOneBit(chunkSize))) {
+            chunks.addAll(StatementBuckets.split(chunk));
+        }
+        return chunks;
+    }
+
+    /**
+     * 批量插入记录
+     * @param mapper Mapper 实例
+     * @param records 记录集合
+     * @param strategy 批量写入策略
+     * @return 受影响的行数
+     */
+    public static <T extends PO> int insertBatch(SmartMapper<T> mapper, Collection<T> records, BatchStrategy strategy) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalArgumentException("The records collection for batch insert cannot be null or empty.");
+        }
+        if (strategy == BatchStrategy.JDBC_BATCH) {
+            int total = 0;
+            for (int count : executeBatch(mapper, records, SmartMapper::insert)) {
+                total += count;
+            }
+            return total;
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperInterfaceOf(mapper));
+        // 每行绑定全部列以及主键列
+        int chunkSize = multiRowChunkSize(declaration.getColumnDeclarations().size() + 1);
+        int total = 0;
+        for (List<T> chunk : statementChunks(records, chunkSize)) {
+            total += mapper.insertRows(chunk);
+        }
+        return total;
+    }
+
+    /**
+     * 批量插入或更新记录, 按批生成 INSERT ... ON DUPLICATE KEY UPDATE 语句
+     * @param mapper Mapper 实例
+     * @param records 记录集合
+     * @param updateFields 冲突时需要更新的字段, 为空时更新全部列
+     * @return 受影响的行数, 按 MySQL 约定插入计 1, 更新计 2, 未变化计 0
+     */
+    public static <T extends PO> int upsertBatch(SmartMapper<T> mapper, Collection<T> records,
+                                                 Collection<SFunction<T, ?>> updateFields) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalArgumentException("The records collection for upsert cannot be null or empty.");
+        }
+        List<String> updateFieldNames = new ArrayList<>();
+        if (null != updateFields) {
+            for (SFunction<T, ?> updateField : updateFields) {
+                updateFieldNames.add(LambdaFieldUtil.getFieldName(updateField));
+            }
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperInterfaceOf(mapper));
+        int chunkSize = multiRowChunkSize(declaration.getColumnDeclarations().size() + 1);
+        int total = 0;
+        for (List<T> chunk : statementChunks(records, chunkSize)) {
+            total += mapper.upsertRows(chunk, updateFieldNames);
+        }
+        return total;
+    }
+
+    /**
+     * 根据主键批量更新记录
+     * @param mapper Mapper 实例
+     * @param records 记录集合
+     * @param strategy 批量写入策略
+     * @return 每批受影响的行数
+     */
+    public static <T extends PO> List<Integer> updateBatchById(SmartMapper<T> mapper, Collection<T> records, BatchStrategy strategy) {
+        if (records == null || records.isEmpty()) {
+            throw new IllegalArgumentException("The records collection for batch update cannot be null or empty.");
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperInterfaceOf(mapper));
+        for (T record : records) {
+            if (null == MapperUtil.getFieldValue(record, declaration.getPkName())) {
+                throw new IllegalArgumentException("Primary key value must be provided for batch update, but it is null. at "
+                        + declaration.getPoClass().getName());
+            }
+        }
+        List<Integer> counts;
+        if (strategy == BatchStrategy.JDBC_BATCH) {
+            counts = executeBatch(mapper, records, SmartMapper::updateAllById);
+        } else {
+            // 每行在每个 CASE 分支中绑定主键与列值, 在 IN 中再绑定一次主键
+            int chunkSize = multiRowChunkSize(declaration.getColumnDeclarations().size() * 2 + 1);
+            counts = new ArrayList<>();
+            for (List<T> chunk : statementChunks(records, chunkSize)) {
+                counts.add(mapper.updateRowsById(chunk));
+            }
+        }
+        // 全部列均已写入, 刷新被追踪记录的快照
+        for (T record : records) {
+            if (DirtyTracker.isTracked(record)) {
+                DirtyTracker.snapshot(record, declaration);
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 使用 ExecutorType.BATCH 逐条执行单行语句, 相同语句复用同一个 PreparedStatement,
+     * 每满一批调用一次 executeBatch. 批处理在单独打开的会话中执行, 结束时调用 session.commit:
+     * SqlSessionFactory 使用 mybatis-spring 的 SpringManagedTransactionFactory 时, 会话取得 Spring 事务绑定的连接,
+     * commit 不提交该连接, 由事务管理器统一提交或回滚; 使用其他 TransactionFactory 时会话使用独立的连接并立即提交,
+     * 不随调用方的事务回滚.
+     * @param mapper Mapper 实例
+     * @param records 记录集合
+     * @param statement 单行语句的调用方式
+     * @return 每批受影响的行数
+     */
+    public static <T extends PO> List<Integer> executeBatch(SmartMapper<T> mapper, Collection<T> records,
+                                                            BiConsumer<SmartMapper<T>, T> statement) {
+        Class<?> mapperInterface = mapperInterfaceOf(mapper);
+        int chunkSize = jdbcBatchChunkSize();
+        List<Integer> counts = new ArrayList<>();
+        try (SqlSession session = getSqlSessionFactory(mapperInterface).openSession(ExecutorType.BATCH)) {
+            @SuppressWarnings("unchecked")
+            SmartMapper<T> batchMapper = (SmartMapper<T>) session.getMapper(mapperInterface);
+            int pending = 0;
+            for (T record : records) {
+                statement.accept(batchMapper, record);
+                if (++pending == chunkSize) {
+                    counts.add(sumUpdateCounts(session.flushStatements()));
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                counts.add(sumUpdateCounts(session.flushStatements()));
+            }
+            session.commit();
+        }
+        return counts;
+    }
+
+    private static int sumUpdateCounts(List<BatchResult> results) {
+        int total = 0;
+        for (BatchResult result : results) {
+            for (int count : result.getUpdateCounts()) {
+                if (count == Statement.SUCCESS_NO_INFO) {
+                    // 驱动改写批处理时不返回具体行数, 按成功一行计
+                    total += 1;
+                } else if (count > 0) {
+                    total += count;
+                }
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 获取 Mapper 接口使用的 SqlSessionFactory
+     * @param mapperInterface Mapper 接口
+     * @return SqlSessionFactory
+     */
+    public static SqlSessionFactory getSqlSessionFactory(Class<?> mapperInterface) {
+        SqlSessionFactory sqlSessionFactory = SESSION_FACTORIES.get(mapperInterface);
+        if (null != sqlSessionFactory) {
+            return sqlSessionFactory;
+        }
+        if (null != SpringApplicationUtil.getApplicationContext()) {
+            return SpringApplicationUtil.getBean(SqlSessionFactory.class);
+        }
+        throw new IllegalStateException("No SqlSessionFactory registered for mapper " + mapperInterface.getName()
+                + ", JDBC batch execution is unavailable.");
+    }
+
+    /**
+     * 获取 Mapper 代理对象实现的 Mapper 接口
+     * @param mapper Mapper 实例
+     * @return Mapper 接口
+     */
+    public static Class<?> mapperInterfaceOf(SmartMapper<?> mapper) {
+        for (Class<?> anInterface : mapper.getClass().getInterfaces()) {
+            if (SmartMapper.class.isAssignableFrom(anInterface)) {
+                return anInterface;
+            }
+        }
+        throw new IllegalArgumentException("Not a SmartMapper proxy: " + mapper.getClass().getName());
+    }
+}
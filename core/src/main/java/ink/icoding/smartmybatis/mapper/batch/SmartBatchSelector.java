@@ -0,0 +1,149 @@
+package ink.icoding.smartmybatis.mapper.batch;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.cache.EntityCache;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import ink.icoding.smartmybatis.mapper.provider.StatementBuckets;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 按主键批量查询
+ * 主键去重后按批生成 IN 查询, 查询结果按主键回填到调用方给出的顺序; 开启实体缓存时只查询缓存未命中的主键
+ * @author gsk
+ */
+public final class SmartBatchSelector {
+
+    private SmartBatchSelector() {
+    }
+
+    /**
+     * 根据主键集合查询记录
+     * @param mapper Mapper 实例
+     * @param ids 主键集合
+     * @param preserveOrder 是否按主键集合的顺序返回, 否则按数据库返回的顺序
+     * @return 记录, 不存在的主键不返回
+     */
+    public static <T extends PO> List<T> selectByIds(SmartMapper<T> mapper, Collection<? extends Serializable> ids,
+                                                     boolean preserveOrder) {
+        if (null == ids || ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        if (!preserveOrder) {
+            MapperDeclaration declaration = MapperUtil.getMapperDeclaration(SmartBatchExecutor.mapperInterfaceOf(mapper));
+            return new ArrayList<>(load(mapper, declaration, normalizedIds(ids, declaration).keySet()).values());
+        }
+        return new ArrayList<>(selectMapByIds(mapper, ids).values());
+    }
+
+    /**
+     * 根据主键集合查询记录, 以主键为键
+     * @param mapper Mapper 实例
+     * @param ids 主键集合
+     * @return 主键与记录, 按主键集合的顺序排列, 不存在的主键不包含在内
+     */
+    public static <K extends Serializable, T extends PO> Map<K, T> selectMapByIds(SmartMapper<T> mapper, Collection<K> ids) {
+        Map<K, T> result = new LinkedHashMap<>();
+        if (null == ids || ids.isEmpty()) {
+            return result;
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(SmartBatchExecutor.mapperInterfaceOf(mapper));
+        Map<Serializable, K> normalizedIds = normalizedIds(ids, declaration);
+        Map<Serializable, T> recordsById = load(mapper, declaration, normalizedIds.keySet());
+        for (Map.Entry<Serializable, K> entry : normalizedIds.entrySet()) {
+            T record = recordsById.get(entry.getKey());
+            if (null != record) {
+                result.put(entry.getValue(), record);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查询记录, 开启实体缓存时先读取缓存, 只查询未命中的主键并写入缓存
+     * @return 主键与记录, 缓存命中的记录在前
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends PO> Map<Serializable, T> load(SmartMapper<T> mapper, MapperDeclaration declaration,
+                                                          Collection<Serializable> ids) {
+        Map<Serializable, T> recordsById = new LinkedHashMap<>(ids.size() * 4 / 3 + 1);
+        EntityCache cache = EntityCache.of(declaration.getPoClass());
+        Collection<Serializable> missingIds = ids;
+        if (null != cache) {
+            GlobalConfig config = SmartConfigHolder.config();
+            boolean dirtyTracking = null != config && config.isDirtyTracking();
+            missingIds = new ArrayList<>();
+            for (Serializable id : ids) {
+                T cached = (T) cache.get(id);
+                if (null == cached) {
+                    missingIds.add(id);
+                    continue;
+                }
+                if (dirtyTracking) {
+                    DirtyTracker.snapshot(cached, declaration);
+                }
+                recordsById.put(id, cached);
+            }
+        }
+        if (missingIds.isEmpty()) {
+            return recordsById;
+        }
+        long version = null == cache ? 0 : cache.version();
+        long start = System.nanoTime();
+        // 写入缓存的记录从主库加载, 避免缓存从库复制延迟造成的旧值
+        ReadRouting.Route route = null == cache ? null : ReadRouting.switchTo(ReadRouting.Route.PRIMARY);
+        try {
+            for (List<Serializable> chunk : chunks(missingIds)) {
+                for (T record : mapper.selectRowsByIds(chunk)) {
+                    recordsById.put((Serializable) MapperUtil.getFieldValue(record, declaration.getPkName()), record);
+                    if (null != cache) {
+                        cache.put(record, version);
+                    }
+                }
+            }
+        } finally {
+            if (null != route) {
+                ReadRouting.restore(route);
+            }
+        }
+        if (null != cache) {
+            cache.recordLoad(System.nanoTime() - start);
+        }
+        return recordsById;
+    }
+
+    /**
+     * 去重并将主键转换为实体主键字段的类型, 保证与查询结果中的主键可以直接比较
+     * @return 转换后的主键与原主键, 按首次出现的顺序排列
+     */
+    private static <K extends Serializable> Map<Serializable, K> normalizedIds(Collection<K> ids, MapperDeclaration declaration) {
+        Class<?> pkClass = declaration.getPkClass();
+        Map<Serializable, K> normalized = new LinkedHashMap<>();
+        for (K id : ids) {
+            if (null == id) {
+                continue;
+            }
+            Serializable key = MapperUtil.normalizeId(id, pkClass);
+            normalized.putIfAbsent(key, id);
+        }
+        return normalized;
+    }
+
+    private static List<List<Serializable>> chunks(Collection<Serializable> ids) {
+        GlobalConfig config = SmartConfigHolder.config();
+        int chunkSize = null == config || config.getInListChunkSize() <= 0
+                ? SmartBatchExecutor.multiRowChunkSize(1) : config.getInListChunkSize();
+        List<List<Serializable>> chunks = SmartBatchExecutor.chunk(ids, chunkSize);
+        if (StatementBuckets.enabled()) {
+            chunks.replaceAll(StatementBuckets::pad);
+        }
+        return chunks;
+    }
+}
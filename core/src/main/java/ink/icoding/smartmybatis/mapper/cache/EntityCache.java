@@ -0,0 +1,286 @@
+package ink.icoding.smartmybatis.mapper.cache;
+
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.TableName;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 实体缓存
+ * 以主键为键缓存 @TableName(cache = true) 实体的查询结果, 容量与有效期有上限.
+ * 缓存中保存记录的副本, 读取时同样返回副本, 调用方修改记录不会影响缓存.
+ * @author gsk
+ */
+public final class EntityCache {
+
+    /**
+     * 各实体类的缓存, 未开启缓存的实体为 null
+     */
+    private static final ClassValue<EntityCache[]> CACHES = new ClassValue<EntityCache[]>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected EntityCache[] computeValue(Class<?> type) {
+            TableName tableName = type.getAnnotation(TableName.class);
+            if (null == tableName || !tableName.cache() || !PO.class.isAssignableFrom(type)) {
+                return new EntityCache[1];
+            }
+            EntityCache cache = new EntityCache((Class<? extends PO>) type, tableName.cacheSize(), tableName.cacheTtlSeconds());
+            REGISTRY.put(type.getName(), cache);
+            return new EntityCache[]{cache};
+        }
+    };
+
+    /**
+     * 已创建的缓存, 用于查看统计数据
+     */
+    private static final Map<String, EntityCache> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<? extends PO> poClass;
+
+    private final Map<Serializable, CachedEntity> cache = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadNanos = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 失效版本, 每次失效时递增, 加载期间发生失效的记录不写入缓存
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile MapperDeclaration declaration;
+
+    private EntityCache(Class<? extends PO> poClass, int maxSize, long ttlSeconds) {
+        this.poClass = poClass;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlSeconds <= 0 ? 0 : TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * 获取实体类的缓存
+     * @param poClass 实体类
+     * @return 缓存, 未开启缓存时返回 null
+     */
+    public static EntityCache of(Class<? extends PO> poClass) {
+        return CACHES.get(poClass)[0];
+    }
+
+    /**
+     * 获取已创建的全部缓存
+     * @return 实体类名与缓存
+     */
+    public static Map<String, EntityCache> getCaches() {
+        return Collections.unmodifiableMap(REGISTRY);
+    }
+
+    /**
+     * 读取缓存的记录
+     * @param id 主键, 需已转换为主键字段的类型
+     * @return 记录副本, 不存在或已过期时返回 null
+     */
+    public PO get(Serializable id) {
+        CachedEntity entry = null == id ? null : cache.get(id);
+        if (null != entry && ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+            if (cache.remove(id, entry)) {
+                evictions.increment();
+            }
+            entry = null;
+        }
+        if (null == entry) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = System.nanoTime();
+        return RecordCopier.copy(entry.record);
+    }
+
+    /**
+     * 获取当前失效版本, 从数据库加载前调用, 写入缓存时传入
+     * @return 失效版本
+     */
+    public long version() {
+        return version.get();
+    }
+
+    /**
+     * 写入记录, 保存记录的副本. 加载期间发生过失效时不写入, 避免缓存写入前已被修改的旧值
+     * @param record 从数据库查询出的记录
+     * @param loadVersion 加载前获取的失效版本
+     */
+    public void put(PO record, long loadVersion) {
+        if (null == record || maxSize <= 0 || loadVersion != version.get()) {
+            return;
+        }
+        MapperDeclaration declaration = declaration();
+        Serializable id = MapperUtil.normalizeId(
+                (Serializable) MapperUtil.getFieldValue(record, declaration.getPkName()), declaration.getPkClass());
+        if (null == id) {
+            return;
+        }
+        cache.put(id, new CachedEntity(RecordCopier.copy(record)));
+        if (cache.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * 记录一次从数据库加载的耗时
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+    }
+
+    /**
+     * 使指定主键的缓存失效
+     * @param id 主键
+     */
+    public void invalidate(Serializable id) {
+        if (null != id) {
+            version.incrementAndGet();
+            cache.remove(MapperUtil.normalizeId(id, declaration().getPkClass()));
+        }
+    }
+
+    /**
+     * 清空缓存, 统计数据保留
+     */
+    public void invalidateAll() {
+        version.incrementAndGet();
+        cache.clear();
+    }
+
+    /**
+     * 超出容量时淘汰最久未访问的条目, 每次多淘汰容量的十分之一, 避免频繁排序
+     */
+    private synchronized void evict() {
+        if (cache.size() <= maxSize) {
+            // 并发写入时其他线程已完成淘汰
+            return;
+        }
+        List<Map.Entry<Serializable, CachedEntity>> entries = new ArrayList<>(cache.entrySet());
+        int toEvict = entries.size() - maxSize + Math.max(maxSize / 10, 1);
+        if (toEvict <= 0) {
+            return;
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (int i = 0; i < toEvict && i < entries.size(); i++) {
+            Map.Entry<Serializable, CachedEntity> entry = entries.get(i);
+            if (cache.remove(entry.getKey(), entry.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    private MapperDeclaration declaration() {
+        MapperDeclaration current = declaration;
+        if (null == current) {
+            current = MapperUtil.getMapperDeclarationByPoClass(poClass);
+            declaration = current;
+        }
+        return current;
+    }
+
+    /**
+     * 当前缓存条数
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 命中率, 没有读取时为 0
+     */
+    public double getHitRatio() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * 从数据库加载的次数
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * 从数据库加载的总耗时, 单位纳秒
+     */
+    public long getTotalLoadTimeNanos() {
+        return loadNanos.sum();
+    }
+
+    /**
+     * 淘汰次数, 包括过期与超出容量
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "EntityCache{" +
+                "poClass=" + poClass.getName() +
+                ", size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", loads=" + getLoadCount() +
+                ", totalLoadTimeNanos=" + getTotalLoadTimeNanos() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+
+    private static final class CachedEntity {
+
+        private final PO record;
+
+        private final long loadedAt;
+
+        private volatile long lastAccess;
+
+        private CachedEntity(PO record) {
+            this.record = record;
+            this.loadedAt = System.nanoTime();
+            this.lastAccess = loadedAt;
+        }
+    }
+}
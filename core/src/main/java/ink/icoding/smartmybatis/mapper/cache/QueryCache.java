@@ -0,0 +1,279 @@
+package ink.icoding.smartmybatis.mapper.cache;
+
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.TableName;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询缓存
+ * 以语句与包含比较值的条件指纹为键缓存 @TableName(queryCache = true) 实体的 select、count 查询结果.
+ * 条目记录查询前涉及的各表版本, 读取时任意一张表的版本发生变化即视为过期, 因此通过 SmartMapper 的写入不会读到旧值.
+ * 缓存中保存结果的副本, 读取时同样返回副本.
+ * @author gsk
+ */
+public final class QueryCache {
+
+    /**
+     * 各实体类的缓存, 未开启缓存的实体为 null
+     */
+    private static final ClassValue<QueryCache[]> CACHES = new ClassValue<QueryCache[]>() {
+        @Override
+        protected QueryCache[] computeValue(Class<?> type) {
+            TableName tableName = type.getAnnotation(TableName.class);
+            if (null == tableName || !tableName.queryCache() || !PO.class.isAssignableFrom(type)) {
+                return new QueryCache[1];
+            }
+            QueryCache cache = new QueryCache(type, tableName.queryCacheSize(), tableName.queryCacheTtlSeconds());
+            REGISTRY.put(type.getName(), cache);
+            return new QueryCache[]{cache};
+        }
+    };
+
+    /**
+     * 已创建的缓存, 用于查看统计数据
+     */
+    private static final Map<String, QueryCache> REGISTRY = new ConcurrentHashMap<>();
+
+    private final Class<?> poClass;
+
+    private final Map<String, CachedResult> cache = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    private final long ttlNanos;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder stales = new LongAdder();
+
+    private final LongAdder loads = new LongAdder();
+
+    private final LongAdder loadNanos = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private QueryCache(Class<?> poClass, int maxSize, long ttlSeconds) {
+        this.poClass = poClass;
+        this.maxSize = maxSize;
+        this.ttlNanos = ttlSeconds <= 0 ? 0 : TimeUnit.SECONDS.toNanos(ttlSeconds);
+    }
+
+    /**
+     * 获取实体类的查询缓存
+     * @param poClass 实体类
+     * @return 缓存, 未开启缓存时返回 null
+     */
+    public static QueryCache of(Class<? extends PO> poClass) {
+        return CACHES.get(poClass)[0];
+    }
+
+    /**
+     * 获取已创建的全部查询缓存
+     * @return 实体类名与缓存
+     */
+    public static Map<String, QueryCache> getCaches() {
+        return Collections.unmodifiableMap(REGISTRY);
+    }
+
+    /**
+     * 读取缓存的查询结果
+     * @param key 缓存键
+     * @return 结果副本, 不存在、已过期或涉及的表已被写入时返回 null
+     */
+    public List<Object> get(String key) {
+        CachedResult entry = cache.get(key);
+        if (null != entry && ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+            if (cache.remove(key, entry)) {
+                evictions.increment();
+            }
+            entry = null;
+        }
+        if (null != entry && !Arrays.equals(entry.versions, TableVersions.versions(entry.tables))) {
+            if (cache.remove(key, entry)) {
+                stales.increment();
+            }
+            entry = null;
+        }
+        if (null == entry) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entry.lastAccess = System.nanoTime();
+        return copy(entry.rows);
+    }
+
+    /**
+     * 写入查询结果, 结果中只能包含实体与不可变的值(数字、字符串等)
+     * @param key 缓存键
+     * @param tables 查询涉及的表
+     * @param versions 查询前获取的各表版本, 查询期间发生写入时条目在下次读取时即过期
+     * @param rows 查询结果
+     */
+    public void put(String key, String[] tables, long[] versions, List<?> rows) {
+        if (maxSize <= 0 || !cacheable(rows)) {
+            return;
+        }
+        cache.put(key, new CachedResult(tables, versions, copy(rows)));
+        if (cache.size() > maxSize) {
+            evict();
+        }
+    }
+
+    /**
+     * 记录一次从数据库加载的耗时
+     * @param nanos 耗时, 单位纳秒
+     */
+    public void recordLoad(long nanos) {
+        loads.increment();
+        loadNanos.add(nanos);
+    }
+
+    /**
+     * 清空缓存, 统计数据保留
+     */
+    public void invalidateAll() {
+        cache.clear();
+    }
+
+    private static boolean cacheable(List<?> rows) {
+        for (Object row : rows) {
+            if (null != row && !(row instanceof PO) && !(row instanceof Number)
+                    && !(row instanceof CharSequence) && !(row instanceof Boolean)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Object> copy(List<?> rows) {
+        List<Object> copy = new ArrayList<>(rows.size());
+        for (Object row : rows) {
+            copy.add(row instanceof PO ? RecordCopier.copy((PO) row) : row);
+        }
+        return copy;
+    }
+
+    /**
+     * 超出容量时淘汰最久未访问的条目, 每次多淘汰容量的十分之一, 避免频繁排序
+     */
+    private synchronized void evict() {
+        if (cache.size() <= maxSize) {
+            // 并发写入时其他线程已完成淘汰
+            return;
+        }
+        List<Map.Entry<String, CachedResult>> entries = new ArrayList<>(cache.entrySet());
+        int toEvict = entries.size() - maxSize + Math.max(maxSize / 10, 1);
+        entries.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+        for (int i = 0; i < toEvict && i < entries.size(); i++) {
+            Map.Entry<String, CachedResult> entry = entries.get(i);
+            if (cache.remove(entry.getKey(), entry.getValue())) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * 当前缓存条数
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中次数, 包括因表被写入而过期的次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 因涉及的表被写入而丢弃的次数
+     */
+    public long getStaleCount() {
+        return stales.sum();
+    }
+
+    /**
+     * 命中率, 没有读取时为 0
+     */
+    public double getHitRatio() {
+        long hitCount = getHitCount();
+        long total = hitCount + getMissCount();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * 从数据库加载的次数
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    /**
+     * 从数据库加载的总耗时, 单位纳秒
+     */
+    public long getTotalLoadTimeNanos() {
+        return loadNanos.sum();
+    }
+
+    /**
+     * 淘汰次数, 包括过期与超出容量
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "QueryCache{" +
+                "poClass=" + poClass.getName() +
+                ", size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", stales=" + getStaleCount() +
+                ", loads=" + getLoadCount() +
+                ", totalLoadTimeNanos=" + getTotalLoadTimeNanos() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+
+    private static final class CachedResult {
+
+        private final String[] tables;
+
+        private final long[] versions;
+
+        private final List<Object> rows;
+
+        private final long loadedAt;
+
+        private volatile long lastAccess;
+
+        private CachedResult(String[] tables, long[] versions, List<Object> rows) {
+            this.tables = tables;
+            this.versions = versions;
+            this.rows = rows;
+            this.loadedAt = System.nanoTime();
+            this.lastAccess = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ink.icoding.smartmybatis.mapper.cache;
+
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.*;
+
+/**
+ * 缓存记录复制工具
+ * 复制实体声明的全部实例字段(包括关联表、JOIN 查询回填的字段): JSON 列经序列化后深拷贝, 日期克隆,
+ * 关联的实体与实体集合逐条复制, 其余值直接引用.
+ * @author gsk
+ */
+final class RecordCopier {
+
+    /**
+     * 各实体类需要复制的字段
+     */
+    private static final ClassValue<CopiedField[]> FIELDS = new ClassValue<CopiedField[]>() {
+        @Override
+        protected CopiedField[] computeValue(Class<?> type) {
+            Set<String> jsonFields = new HashSet<>();
+            @SuppressWarnings("unchecked")
+            MapperDeclaration declaration = MapperUtil.getMapperDeclarationByPoClass((Class<? extends PO>) type);
+            if (null != declaration) {
+                for (ColumnDeclaration columnDeclaration : declaration.getColumnDeclarations(true)) {
+                    if (columnDeclaration.isJson()) {
+                        jsonFields.add(columnDeclaration.getFieldName());
+                    }
+                }
+            }
+            List<CopiedField> fields = new ArrayList<>();
+            for (Class<?> current = type; null != current && current != PO.class && current != Object.class;
+                 current = current.getSuperclass()) {
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    fields.add(new CopiedField(field, jsonFields.contains(field.getName())));
+                }
+            }
+            return fields.toArray(new CopiedField[0]);
+        }
+    };
+
+    private RecordCopier() {
+    }
+
+    /**
+     * 复制记录
+     * @param record 记录
+     * @return 副本
+     */
+    @SuppressWarnings("unchecked")
+    static <T extends PO> T copy(T record) {
+        if (null == record) {
+            return null;
+        }
+        Class<? extends PO> poClass = record.getClass();
+        try {
+            T copy = (T) poClass.getDeclaredConstructor().newInstance();
+            for (CopiedField copiedField : FIELDS.get(poClass)) {
+                Field field = copiedField.field;
+                Object value = field.get(record);
+                if (null != value) {
+                    if (copiedField.json) {
+                        value = SmartJsonTypeHandler.fromJson(SmartJsonTypeHandler.toJson(value), field.getGenericType());
+                    } else {
+                        value = copyValue(value);
+                    }
+                }
+                field.set(copy, value);
+            }
+            return copy;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to copy cached record " + poClass.getName()
+                    + ", a no-arg constructor is required.", e);
+        }
+    }
+
+    private static Object copyValue(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).clone();
+        }
+        if (value instanceof PO) {
+            return copy((PO) value);
+        }
+        if (value instanceof List) {
+            List<Object> list = new ArrayList<>(((List<?>) value).size());
+            for (Object item : (List<?>) value) {
+                list.add(item instanceof PO ? copy((PO) item) : item);
+            }
+            return list;
+        }
+        return value;
+    }
+
+    private static final class CopiedField {
+
+        private final Field field;
+
+        private final boolean json;
+
+        private CopiedField(Field field, boolean json) {
+            this.field = field;
+            this.json = json;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package ink.icoding.smartmybatis.mapper.cache;
+
+import ink.icoding.smartmybatis.entity.expression.AliasMapping;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 表版本
+ * 每张表维护一个递增的版本号, 通过 SmartMapper 写入表时递增. 查询缓存记录查询时涉及的各表版本,
+ * 读取时任意一张表的版本发生变化即视为过期. 只有存在开启查询缓存的实体或使用了 CACHED 总记录数时才开始追踪版本,
+ * 此前的写入不递增版本.
+ * @author gsk
+ */
+public final class TableVersions {
+
+    /**
+     * 自定义 SQL 中跟随表名的关键字
+     */
+    private static final Pattern TABLE_PATTERN = Pattern.compile(
+            "\\b(?:FROM|JOIN|INTO|UPDATE|TRUNCATE(?:\\s+TABLE)?|TABLE)\\s+[`\"]?(?:\\w+[`\"]?\\.[`\"]?)?(\\w+)",
+            Pattern.CASE_INSENSITIVE);
+
+    private static final Map<String, AtomicLong> VERSIONS = new ConcurrentHashMap<>();
+
+    /**
+     * 是否追踪版本, 开启后不再关闭
+     */
+    private static volatile boolean tracking;
+
+    private TableVersions() {
+    }
+
+    /**
+     * 开始追踪表版本, 由依赖表版本的缓存在使用前调用
+     */
+    public static void enableTracking() {
+        tracking = true;
+    }
+
+    /**
+     * 是否追踪表版本, 未追踪时写入无需递增版本
+     * @return 已有缓存依赖表版本时返回 true
+     */
+    public static boolean isTracking() {
+        return tracking;
+    }
+
+    /**
+     * 获取表的当前版本
+     * @param tableName 表名
+     * @return 版本
+     */
+    public static long version(String tableName) {
+        return counter(tableName).get();
+    }
+
+    /**
+     * 获取多张表的当前版本
+     * @param tableNames 表名
+     * @return 与表名一一对应的版本
+     */
+    public static long[] versions(String[] tableNames) {
+        long[] versions = new long[tableNames.length];
+        for (int i = 0; i < tableNames.length; i++) {
+            versions[i] = version(tableNames[i]);
+        }
+        return versions;
+    }
+
+    /**
+     * 递增表的版本, 使依赖该表的查询缓存过期
+     * @param tableName 表名
+     */
+    public static void bump(String tableName) {
+        counter(tableName).incrementAndGet();
+    }
+
+    /**
+     * 递增多张表的版本
+     * @param tableNames 表名
+     */
+    public static void bump(Collection<String> tableNames) {
+        for (String tableName : tableNames) {
+            bump(tableName);
+        }
+    }
+
+    /**
+     * 递增全部已知表的版本, 用于无法识别写入了哪些表的情况
+     */
+    public static void bumpAll() {
+        for (AtomicLong version : VERSIONS.values()) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * 实体查询涉及的表: 实体表以及关联字段的表
+     * @param declaration 映射声明
+     * @return 表名, 统一为小写
+     */
+    public static String[] tablesOf(MapperDeclaration declaration) {
+        Set<String> tables = new LinkedHashSet<>();
+        tables.add(declaration.getTableName().toLowerCase(Locale.ROOT));
+        for (ColumnDeclaration columnDeclaration : declaration.getColumnDeclarations(true)) {
+            if (columnDeclaration.isLink()) {
+                tables.add(tableNameOf(columnDeclaration.getAnnotation().link()));
+            }
+        }
+        return tables.toArray(new String[0]);
+    }
+
+    /**
+     * 在实体查询涉及的表之外加上条件中 JOIN 的表
+     * @param tables 实体查询涉及的表
+     * @param where 查询条件
+     * @return 表名, 没有 JOIN 时返回传入的数组
+     */
+    public static String[] tablesOf(String[] tables, Where where) {
+        Map<String, AliasMapping<?>> aliasMappings = null == where ? null : where.getAliasMappings();
+        if (null == aliasMappings || aliasMappings.isEmpty()) {
+            return tables;
+        }
+        Set<String> joined = new LinkedHashSet<>(Arrays.asList(tables));
+        for (AliasMapping<?> aliasMapping : aliasMappings.values()) {
+            joined.add(tableNameOf(aliasMapping.getEntityClass()));
+        }
+        return joined.toArray(new String[0]);
+    }
+
+    /**
+     * 识别自定义 SQL 中出现的表名, 包括 FROM、JOIN、INSERT INTO、UPDATE、TRUNCATE TABLE 之后的表
+     * @param sql SQL 语句
+     * @return 表名, 统一为小写, 无法识别时为空集合
+     */
+    public static Set<String> detectTables(String sql) {
+        if (null == sql || sql.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> tableNames = new LinkedHashSet<>();
+        Matcher matcher = TABLE_PATTERN.matcher(sql);
+        while (matcher.find()) {
+            tableNames.add(matcher.group(1).toLowerCase(Locale.ROOT));
+        }
+        return tableNames;
+    }
+
+    private static String tableNameOf(Class<? extends PO> poClass) {
+        return MapperUtil.getMapperDeclarationByPoClass(poClass).getTableName().toLowerCase(Locale.ROOT);
+    }
+
+    private static AtomicLong counter(String tableName) {
+        AtomicLong version = VERSIONS.get(tableName);
+        if (null != version) {
+            return version;
+        }
+        return VERSIONS.computeIfAbsent(tableName.toLowerCase(Locale.ROOT), key -> new AtomicLong());
+    }
+}
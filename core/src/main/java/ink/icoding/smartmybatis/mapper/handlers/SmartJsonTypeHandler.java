@@ -86,6 +86,39 @@ public class SmartJsonTypeHandler<T> extends BaseTypeHandler<T> {
         return parseJson(json);
     }
 
+    /**
+     * 将对象序列化为 JSON 字符串, 与写入数据库时的序列化方式一致
+     * @param value 对象
+     * @return JSON 字符串, 对象为 null 时返回 null
+     */
+    public static String toJson(Object value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Error converting object to JSON: " + value, e);
+        }
+    }
+
+    /**
+     * 将 JSON 字符串反序列化为指定类型的对象
+     * @param json JSON 字符串
+     * @param type 目标类型
+     * @return 对象, JSON 为空时返回 null
+     */
+    public static <V> V fromJson(String json, Type type) {
+        if (json == null || json.isEmpty()) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, objectMapper.getTypeFactory().constructType(type));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Error converting JSON to " + type.getTypeName() + ": " + json, e);
+        }
+    }
+
     private T parseJson(String json) throws SQLException {
         if (json == null || json.isEmpty()) {
             return null;
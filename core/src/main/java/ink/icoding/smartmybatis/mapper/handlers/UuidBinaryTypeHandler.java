@@ -0,0 +1,44 @@
+package ink.icoding.smartmybatis.mapper.handlers;
+
+import ink.icoding.smartmybatis.utils.UuidV7GeneratorUtil;
+import org.apache.ibatis.type.BaseTypeHandler;
+import org.apache.ibatis.type.JdbcType;
+
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+
+/**
+ * UUID 类型处理器
+ * 以 16 字节大端格式读写 BINARY(16) 列
+ *
+ * @author gsk
+ */
+public class UuidBinaryTypeHandler extends BaseTypeHandler<UUID> {
+
+    @Override
+    public void setNonNullParameter(PreparedStatement ps, int i, UUID parameter, JdbcType jdbcType) throws SQLException {
+        ps.setBytes(i, UuidV7GeneratorUtil.toBytes(parameter));
+    }
+
+    @Override
+    public UUID getNullableResult(ResultSet rs, String columnName) throws SQLException {
+        return toUuid(rs.getBytes(columnName));
+    }
+
+    @Override
+    public UUID getNullableResult(ResultSet rs, int columnIndex) throws SQLException {
+        return toUuid(rs.getBytes(columnIndex));
+    }
+
+    @Override
+    public UUID getNullableResult(CallableStatement cs, int columnIndex) throws SQLException {
+        return toUuid(cs.getBytes(columnIndex));
+    }
+
+    private static UUID toUuid(byte[] bytes) {
+        return null == bytes ? null : UuidV7GeneratorUtil.fromBytes(bytes);
+    }
+}
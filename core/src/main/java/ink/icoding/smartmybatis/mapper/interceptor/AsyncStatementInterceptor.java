@@ -0,0 +1,32 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.mapper.async.AsyncCall;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+/**
+ * 异步调用语句拦截器
+ * 在 AsyncSmartMapper 的调用中创建 Statement 后登记到当前调用, 按剩余时间设置查询超时, 使取消和超时能够中止数据库中正在执行的语句.
+ * 不在异步调用中时直接放行.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class})
+})
+public class AsyncStatementInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object statement = invocation.proceed();
+        if (statement instanceof Statement) {
+            AsyncCall.onStatementPrepared((Statement) statement);
+        }
+        return statement;
+    }
+}
@@ -0,0 +1,79 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 脏字段追踪拦截器
+ * 拦截 SmartMapper 查询的结果集处理, 为查询出的记录保存快照, 供 updateById 计算发生变化的列
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class})
+})
+public class DirtyTrackingInterceptor implements Interceptor {
+
+    /**
+     * 已登记的 Mapper 命名空间与映射声明
+     */
+    private final Map<String, MapperDeclaration> declarations = new ConcurrentHashMap<>();
+
+    /**
+     * 登记需要追踪的 Mapper
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        declarations.put(mapperInterface.getName(), declaration);
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (!(result instanceof List) || ((List<?>) result).isEmpty()) {
+            return result;
+        }
+        MappedStatement ms = mappedStatementOf(invocation.getTarget());
+        if (null == ms) {
+            return result;
+        }
+        String id = ms.getId();
+        MapperDeclaration declaration = declarations.get(id.substring(0, id.lastIndexOf('.')));
+        if (null == declaration) {
+            return result;
+        }
+        for (Object record : (List<?>) result) {
+            // 只追踪与表对应的实体, 自定义结果类型不做处理
+            if (null != record && record.getClass() == declaration.getPoClass()) {
+                DirtyTracker.snapshot((PO) record, declaration);
+            }
+        }
+        return result;
+    }
+
+    private static MappedStatement mappedStatementOf(Object target) {
+        MetaObject metaObject = SystemMetaObject.forObject(target);
+        // 被多个插件代理时, 逐层取出原始对象
+        while (metaObject.hasGetter("h")) {
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        if (!metaObject.hasGetter("mappedStatement")) {
+            return null;
+        }
+        return (MappedStatement) metaObject.getValue("mappedStatement");
+    }
+}
@@ -0,0 +1,305 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.cache.EntityCache;
+import ink.icoding.smartmybatis.mapper.cache.TableVersions;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.io.Serializable;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 实体缓存拦截器
+ * selectById 优先读取实体缓存, 未命中时查询数据库并写入缓存;
+ * 按主键写入的语句(包括 upsertRows)使对应主键的缓存失效, 其他内置写入语句(按条件删除等)清空该实体的缓存.
+ * executeSql 与自定义的写入语句可能写入任意表, 通过任意 Mapper 执行时都按 SQL 中的表名清空对应实体的缓存, 无法识别时清空全部实体缓存.
+ * 写入语句执行前后各失效一次, 会话提交、回滚与关闭时以及 Spring 事务完成后再次失效会话写入过的主键,
+ * 覆盖事务提交前、批量执行器延迟执行期间被其他会话写回的旧值. 写入过的会话不读写缓存, 事务中的查询不写入缓存.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})
+})
+public class EntityCacheInterceptor implements Interceptor {
+
+    /**
+     * 已登记的 Mapper 命名空间与映射声明
+     */
+    private final Map<String, MapperDeclaration> declarations = new ConcurrentHashMap<>();
+
+    /**
+     * 开启缓存的实体表(小写)与缓存
+     */
+    private final Map<String, EntityCache> tableCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 各会话已写入但尚未关闭时需要失效的主键, 会话结束后随执行器回收
+     */
+    private final Map<Object, Evictions> pendingEvictions = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 登记 Mapper, 所有 SmartMapper 都需要登记, 以便其 executeSql 与自定义写入语句使其他实体的缓存失效
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        declarations.put(mapperInterface.getName(), declaration);
+        EntityCache cache = EntityCache.of(declaration.getPoClass());
+        if (null != cache) {
+            tableCaches.put(declaration.getTableName().toLowerCase(Locale.ROOT), cache);
+        }
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (tableCaches.isEmpty()) {
+            // 没有开启缓存的实体
+            return invocation.proceed();
+        }
+        Object executor = invocation.getTarget();
+        Object[] args = invocation.getArgs();
+        if (args.length == 1) {
+            return endSession(invocation, executor);
+        }
+        MappedStatement ms = (MappedStatement) args[0];
+        String id = ms.getId();
+        int index = id.lastIndexOf('.');
+        MapperDeclaration declaration = declarations.get(id.substring(0, index));
+        if (null == declaration) {
+            return invocation.proceed();
+        }
+        // 分表语句的 ID 为 逻辑语句 ID$物理表
+        String method = id.substring(index + 1).split("\\$", 2)[0];
+        EntityCache cache = EntityCache.of(declaration.getPoClass());
+        if (args.length == 2 && !QueryCacheInterceptor.isBuiltIn(method)) {
+            Evictions evictions = evictionsOf(ms, args[1]);
+            return evictions.isEmpty() ? invocation.proceed() : write(invocation, executor, evictions);
+        }
+        if (null == cache) {
+            return invocation.proceed();
+        }
+        if (args.length == 2) {
+            if (ms.getSqlCommandType() == SqlCommandType.INSERT && !"upsertRows".equals(method)) {
+                // 新增记录不会使已缓存的记录过期, upsertRows 可能覆盖已有记录
+                return invocation.proceed();
+            }
+            return write(invocation, executor, evictionsOf(cache, method, args[1], declaration));
+        }
+        if (!"selectById".equals(method) || !(args[1] instanceof Serializable)
+                || null != args[3] || (null != args[2] && args[2] != RowBounds.DEFAULT)
+                || pendingEvictions.containsKey(executor)) {
+            return invocation.proceed();
+        }
+
+        Serializable key = MapperUtil.normalizeId((Serializable) args[1], declaration.getPkClass());
+        PO cached = cache.get(key);
+        if (null != cached) {
+            GlobalConfig config = SmartConfigHolder.config();
+            if (null != config && config.isDirtyTracking()) {
+                DirtyTracker.snapshot(cached, declaration);
+            }
+            List<Object> result = new ArrayList<>(1);
+            result.add(cached);
+            return result;
+        }
+        long version = cache.version();
+        long start = System.nanoTime();
+        Object result = loadFromPrimary(invocation);
+        cache.recordLoad(System.nanoTime() - start);
+        if (result instanceof List && ((List<?>) result).size() == 1 && ((List<?>) result).get(0) instanceof PO
+                && autoCommit((Executor) executor)) {
+            cache.put((PO) ((List<?>) result).get(0), version);
+        }
+        return result;
+    }
+
+    /**
+     * 写入缓存的记录从主库加载, 避免缓存从库复制延迟造成的旧值
+     */
+    static Object loadFromPrimary(Invocation invocation) throws Throwable {
+        ReadRouting.Route route = ReadRouting.switchTo(ReadRouting.Route.PRIMARY);
+        try {
+            return invocation.proceed();
+        } finally {
+            ReadRouting.restore(route);
+        }
+    }
+
+    /**
+     * 非自动提交时处于事务中, 查询结果可能包含未提交的数据或早于其他会话已提交的写入, 不写入缓存
+     */
+    static boolean autoCommit(Executor executor) {
+        try {
+            return null != executor.getTransaction() && executor.getTransaction().getConnection().getAutoCommit();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private Object write(Invocation invocation, Object executor, Evictions evictions) throws Throwable {
+        Evictions pending;
+        boolean created = false;
+        synchronized (pendingEvictions) {
+            pending = pendingEvictions.get(executor);
+            if (null == pending) {
+                pending = new Evictions();
+                pendingEvictions.put(executor, pending);
+                created = true;
+            }
+        }
+        pending.addAll(evictions);
+        if (created) {
+            SpringTransactions.afterCompletion(pending::evict);
+        }
+        evictions.evict();
+        try {
+            return invocation.proceed();
+        } finally {
+            evictions.evict();
+        }
+    }
+
+    /**
+     * 提交与回滚时失效会话写入过的主键, 关闭时失效后清除记录
+     */
+    private Object endSession(Invocation invocation, Object executor) throws Throwable {
+        boolean close = "close".equals(invocation.getMethod().getName());
+        Evictions pending = close ? pendingEvictions.remove(executor) : pendingEvictions.get(executor);
+        try {
+            return invocation.proceed();
+        } finally {
+            if (null != pending) {
+                pending.evict();
+            }
+        }
+    }
+
+    private static Evictions evictionsOf(EntityCache cache, String method, Object parameter, MapperDeclaration declaration) {
+        Evictions evictions = new Evictions();
+        switch (method) {
+            case "deleteById":
+                evictions.add(cache, (Serializable) parameter);
+                break;
+            case "deleteByIds":
+                for (Object id : (Collection<?>) ((Map<?, ?>) parameter).get("ids")) {
+                    evictions.add(cache, (Serializable) id);
+                }
+                break;
+            case "updateAllById":
+            case "updateColumnsById":
+                evictions.add(cache, primaryKeyOf(((Map<?, ?>) parameter).get("record"), declaration));
+                break;
+            case "updateRowsById":
+            case "upsertRows":
+                for (Object record : (Collection<?>) ((Map<?, ?>) parameter).get("list")) {
+                    evictions.add(cache, primaryKeyOf(record, declaration));
+                }
+                break;
+            default:
+                evictions.addAll(cache);
+                break;
+        }
+        return evictions;
+    }
+
+    /**
+     * executeSql 与自定义写入语句按 SQL 中的表名失效对应实体的缓存, 无法识别表名时失效全部实体缓存
+     */
+    private Evictions evictionsOf(MappedStatement ms, Object parameter) {
+        Evictions evictions = new Evictions();
+        Set<String> tables = TableVersions.detectTables(ms.getBoundSql(parameter).getSql());
+        if (tables.isEmpty()) {
+            for (EntityCache cache : tableCaches.values()) {
+                evictions.addAll(cache);
+            }
+            return evictions;
+        }
+        for (String table : tables) {
+            EntityCache cache = tableCaches.get(table);
+            if (null != cache) {
+                evictions.addAll(cache);
+            }
+        }
+        return evictions;
+    }
+
+    private static Serializable primaryKeyOf(Object record, MapperDeclaration declaration) {
+        return (Serializable) MapperUtil.getFieldValue((PO) record, declaration.getPkName());
+    }
+
+    /**
+     * 需要失效的主键, 无法确定主键时失效整个实体缓存
+     */
+    private static final class Evictions {
+
+        private final Map<EntityCache, Set<Serializable>> keys = new HashMap<>();
+
+        private final Set<EntityCache> all = new HashSet<>();
+
+        private synchronized void add(EntityCache cache, Serializable id) {
+            if (null != id && !all.contains(cache)) {
+                keys.computeIfAbsent(cache, key -> new HashSet<>()).add(id);
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            return keys.isEmpty() && all.isEmpty();
+        }
+
+        private synchronized void addAll(EntityCache cache) {
+            all.add(cache);
+            keys.remove(cache);
+        }
+
+        private void addAll(Evictions other) {
+            Map<EntityCache, Set<Serializable>> otherKeys;
+            Set<EntityCache> otherAll;
+            synchronized (other) {
+                otherKeys = new HashMap<>(other.keys);
+                otherAll = new HashSet<>(other.all);
+            }
+            for (EntityCache cache : otherAll) {
+                addAll(cache);
+            }
+            for (Map.Entry<EntityCache, Set<Serializable>> entry : otherKeys.entrySet()) {
+                for (Serializable id : entry.getValue()) {
+                    add(entry.getKey(), id);
+                }
+            }
+        }
+
+        private void evict() {
+            Map<EntityCache, Set<Serializable>> evictKeys = new HashMap<>();
+            Set<EntityCache> evictAll;
+            synchronized (this) {
+                keys.forEach((cache, ids) -> evictKeys.put(cache, new HashSet<>(ids)));
+                evictAll = new HashSet<>(all);
+            }
+            for (EntityCache cache : evictAll) {
+                cache.invalidateAll();
+            }
+            evictKeys.forEach((cache, ids) -> ids.forEach(cache::invalidate));
+        }
+    }
+}
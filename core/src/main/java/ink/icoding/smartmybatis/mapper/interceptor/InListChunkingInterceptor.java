@@ -0,0 +1,304 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.expression.*;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.provider.StatementBuckets;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.binding.MapperMethod;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * IN 条件拆分拦截器
+ * SmartMapper 的查询、统计与删除中, 顶层 AND 连接的 IN 条件值个数超过阈值时, 将值去重后按阈值拆分为多次执行,
+ * 再合并结果: 查询结果合并后重新截取分页, 统计与删除的结果相加.
+ * 值去重后各批命中的行互不重复, 因此合并的行集合与一次执行一致. 无法保证一致的情况(包含 OR 的顶层条件、
+ * 带排序的查询、使用 ResultHandler 或 RowBounds)不做拆分: 在内存中归并无法复现数据库的排序规则与 NULL 的顺序.
+ * 拆分后的删除分多条语句执行, 自动提交时不是原子操作, 需要原子性时在事务中调用.
+ * 未开启拆分时, IN 条件的值总数超过单条语句允许的绑定参数个数仍会按剩余的参数个数拆分; 无法拆分时在执行前直接抛出异常,
+ * 而不是交给数据库报错. 拆分在条件对象的副本上进行, 不修改调用方的条件对象.
+ * 开启语句分桶时 deleteByIds 的主键列表同样补齐到分桶大小.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+})
+public class InListChunkingInterceptor implements Interceptor {
+
+    /**
+     * 已登记的 Mapper 命名空间与映射声明
+     */
+    private final Map<String, MapperDeclaration> declarations = new ConcurrentHashMap<>();
+
+    /**
+     * 登记需要拆分 IN 条件的 Mapper
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        declarations.put(mapperInterface.getName(), declaration);
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        GlobalConfig config = SmartConfigHolder.config();
+        int chunkSize = null == config ? 0 : config.getInListChunkSize();
+        Object[] args = invocation.getArgs();
+        MappedStatement ms = (MappedStatement) args[0];
+        String id = ms.getId();
+        MapperDeclaration declaration = declarations.get(id.substring(0, id.lastIndexOf('.')));
+        if (null == declaration) {
+            return invocation.proceed();
+        }
+        Executor executor = (Executor) invocation.getTarget();
+        Object parameter = args[1];
+        boolean update = args.length == 2;
+
+        if (parameter instanceof Where) {
+            Where where = (Where) parameter;
+            int maxBindParameters = null == config ? 0 : config.getMaxBindParameters();
+            int inValues = inValueCount(where);
+            boolean oversized = maxBindParameters > 0 && inValues > maxBindParameters;
+            if (chunkSize <= 0 && !oversized) {
+                return invocation.proceed();
+            }
+            ComparisonExpression<?> expression = chunkableExpression(where, Math.max(chunkSize, 0));
+            if (null != expression) {
+                // 未开启拆分时, 按其他条件占用之外剩余的参数个数拆分
+                int size = chunkSize > 0 ? chunkSize
+                        : maxBindParameters - (inValues - valueSize(expression.getValue()));
+                if (size > 0) {
+                    Object result = update
+                            ? (Object) updateByChunks(executor, ms, where, expression, size)
+                            : queryByChunks(executor, ms, where, expression, size,
+                                    (RowBounds) args[2], (ResultHandler<?>) args[3], declaration);
+                    if (null != result) {
+                        return result;
+                    }
+                }
+            }
+            if (oversized) {
+                throw new IllegalArgumentException("IN conditions of " + id + " bind " + inValues
+                        + " values, more than max-bind-parameters " + maxBindParameters
+                        + ", and the statement cannot be split: ordered queries, OR between top-level conditions, "
+                        + "RowBounds and ResultHandler are executed as a single statement. "
+                        + "Split the values before querying or join against a temporary table instead.");
+            }
+            return invocation.proceed();
+        }
+        if (update && id.endsWith(".deleteByIds") && parameter instanceof Map) {
+            Object ids = ((Map<?, ?>) parameter).get("ids");
+            // 未开启拆分时, 主键个数超过绑定参数上限仍需拆分
+            int idChunkSize = chunkSize > 0 ? chunkSize : null == config ? 0 : config.getMaxBindParameters();
+            if (ids instanceof Collection && idChunkSize > 0 && ((Collection<?>) ids).size() > idChunkSize) {
+                return deleteByIdChunks(executor, ms, (Map<?, ?>) parameter, (Collection<?>) ids, idChunkSize);
+            }
+            if (ids instanceof Collection && !((Collection<?>) ids).isEmpty() && StatementBuckets.enabled()) {
+                return executor.update(ms, withIds((Map<?, ?>) parameter, ids, StatementBuckets.pad(ids)));
+            }
+        }
+        return invocation.proceed();
+    }
+
+    /**
+     * 查找可拆分的 IN 条件, 顶层条件全部以 AND 连接时取值个数最多且超过阈值的一个
+     */
+    private static ComparisonExpression<?> chunkableExpression(Where where, int chunkSize) {
+        List<Expression<?>> expressions = where.getExpressions();
+        if (null == expressions) {
+            return null;
+        }
+        ComparisonExpression<?> chunkable = null;
+        int chunkableSize = chunkSize;
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression<?> expression = expressions.get(i);
+            Link link = expression instanceof WhereExpression
+                    ? ((WhereExpression) expression).getLink()
+                    : ((ComparisonExpression<?>) expression).getLink();
+            if (i > 0 && link == Link.OR) {
+                // 与其他条件以 OR 连接时, 各批会重复命中同一行
+                return null;
+            }
+            if (!(expression instanceof ComparisonExpression)) {
+                continue;
+            }
+            ComparisonExpression<?> comparison = (ComparisonExpression<?>) expression;
+            if (comparison.getComparison() != C.IN && comparison.getComparison() != C.in) {
+                continue;
+            }
+            int size = valueSize(comparison.getValue());
+            if (size > chunkableSize) {
+                chunkable = comparison;
+                chunkableSize = size;
+            }
+        }
+        return chunkable;
+    }
+
+    /**
+     * IN 与 NOT IN 条件绑定的值总数, 包括嵌套条件
+     */
+    private static int inValueCount(Where where) {
+        List<Expression<?>> expressions = where.getExpressions();
+        if (null == expressions) {
+            return 0;
+        }
+        int count = 0;
+        for (Expression<?> expression : expressions) {
+            if (expression instanceof WhereExpression) {
+                Where nested = ((WhereExpression) expression).getWhere();
+                count += null == nested ? 0 : inValueCount(nested);
+            } else if (expression instanceof ComparisonExpression) {
+                C comparison = ((ComparisonExpression<?>) expression).getComparison();
+                if (comparison == C.IN || comparison == C.in || comparison == C.NOT_IN || comparison == C.notIn) {
+                    count += valueSize(((ComparisonExpression<?>) expression).getValue());
+                }
+            }
+        }
+        return count;
+    }
+
+    private static int valueSize(Object value) {
+        if (value instanceof Collection) {
+            return ((Collection<?>) value).size();
+        }
+        if (value instanceof Object[]) {
+            return ((Object[]) value).length;
+        }
+        return 0;
+    }
+
+    /**
+     * 去重后按阈值拆分 IN 条件的值
+     */
+    private static List<List<Object>> chunkValues(Object value, int chunkSize) {
+        Collection<Object> distinct = new LinkedHashSet<>();
+        if (value instanceof Collection) {
+            distinct.addAll((Collection<?>) value);
+        } else {
+            distinct.addAll(Arrays.asList((Object[]) value));
+        }
+        return SmartBatchExecutor.chunk(distinct, chunkSize);
+    }
+
+    private static Object queryByChunks(Executor executor, MappedStatement ms, Where where,
+                                        ComparisonExpression<?> expression, int chunkSize,
+                                        RowBounds rowBounds, ResultHandler<?> resultHandler,
+                                        MapperDeclaration declaration) throws Exception {
+        if (null != resultHandler || (null != rowBounds && rowBounds != RowBounds.DEFAULT)) {
+            return null;
+        }
+        List<ResultMap> resultMaps = ms.getResultMaps();
+        Class<?> resultType = null == resultMaps || resultMaps.isEmpty() ? null : resultMaps.get(0).getType();
+        if (null == resultType) {
+            return null;
+        }
+        boolean counting = resultType == long.class || resultType == Long.class
+                || resultType == int.class || resultType == Integer.class;
+        if (!counting) {
+            if (!declaration.getPoClass().isAssignableFrom(resultType)) {
+                return null;
+            }
+            List<SortExpression<?>> sortExpressions = where.getSortExpressions();
+            if (null != sortExpressions && !sortExpressions.isEmpty()) {
+                // 排序结果由数据库决定, 在内存中归并会改变行的顺序
+                return null;
+            }
+        }
+
+        int limitStart = where.getLimitStart();
+        int limitSize = where.getLimitSize();
+        List<Object> rows = new ArrayList<>();
+        long total = 0;
+        for (List<Object> chunk : chunkValues(expression.getValue(), chunkSize)) {
+            Where chunkWhere = withValues(where, expression, chunk);
+            if (limitSize > 0) {
+                // 每批取到当前页末尾为止, 合并后再截取当前页
+                chunkWhere.limit(0, limitStart + limitSize);
+            }
+            List<Object> result = executor.query(ms, chunkWhere, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+            if (counting) {
+                for (Object count : result) {
+                    total += null == count ? 0 : ((Number) count).longValue();
+                }
+            } else {
+                rows.addAll(result);
+            }
+        }
+
+        if (counting) {
+            Object count = resultType == int.class || resultType == Integer.class ? (Object) (int) total : (Object) total;
+            return new ArrayList<>(Collections.singletonList(count));
+        }
+        if (limitSize > 0) {
+            int from = Math.min(limitStart, rows.size());
+            int to = Math.min(limitStart + limitSize, rows.size());
+            rows = new ArrayList<>(rows.subList(from, to));
+        }
+        return rows;
+    }
+
+    private static int updateByChunks(Executor executor, MappedStatement ms, Where where,
+                                      ComparisonExpression<?> expression, int chunkSize) throws Exception {
+        int total = 0;
+        for (List<Object> chunk : chunkValues(expression.getValue(), chunkSize)) {
+            total += executor.update(ms, withValues(where, expression, chunk));
+        }
+        return total;
+    }
+
+    /**
+     * 复制条件, 将副本中的 IN 条件替换为只包含一批值的新条件, 不修改调用方的条件对象
+     */
+    private static Where withValues(Where where, ComparisonExpression<?> expression, List<Object> values) {
+        Where copy = where.copy();
+        List<Expression<?>> expressions = copy.getExpressions();
+        for (int i = 0; i < expressions.size(); i++) {
+            if (expressions.get(i) == expression) {
+                expressions.set(i, withValue(expression, values));
+                break;
+            }
+        }
+        return copy;
+    }
+
+    private static <T extends PO> ComparisonExpression<T> withValue(ComparisonExpression<T> expression, Object value) {
+        return new ComparisonExpression<>(expression.getFunc(), expression.getComparison(), value, expression.getLink());
+    }
+
+    private static int deleteByIdChunks(Executor executor, MappedStatement ms, Map<?, ?> parameter,
+                                        Collection<?> ids, int chunkSize) throws Exception {
+        int total = 0;
+        boolean bucketing = StatementBuckets.enabled();
+        for (List<Object> chunk : chunkValues(ids, chunkSize)) {
+            total += executor.update(ms, withIds(parameter, ids, bucketing ? StatementBuckets.pad(chunk) : chunk));
+        }
+        return total;
+    }
+
+    /**
+     * 复制参数, 将主键集合替换为新的集合
+     */
+    static Map<String, Object> withIds(Map<?, ?> parameter, Object ids, List<Object> replacement) {
+        MapperMethod.ParamMap<Object> result = new MapperMethod.ParamMap<>();
+        for (Map.Entry<?, ?> entry : parameter.entrySet()) {
+            result.put(String.valueOf(entry.getKey()), entry.getValue() == ids ? replacement : entry.getValue());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,120 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.LazyFieldTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.provider.BaseSqlProvider;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.mapping.BoundSql;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.reflection.SystemMetaObject;
+
+import java.sql.Statement;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 懒加载列拦截器
+ * 拦截 SmartMapper 查询的结果集处理, 为查询出的记录标记未加载的字段(未显式查询的懒加载列, 以及 select / exclude 投影之外的列),
+ * 按主键全量更新时据此保持这些列的原值, 而不是把未加载的 null 写回数据库
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class})
+})
+public class LazyColumnInterceptor implements Interceptor {
+
+    /**
+     * 按实体查询的语句, 查询的列与 BaseSqlProvider 的 SELECT 字段一致
+     */
+    private static final Set<String> ENTITY_METHODS = new HashSet<>(Arrays.asList(
+            "select", "selectOne", "selectWithRelations", "selectById", "selectRowsByIds"));
+
+    /**
+     * 按主键查询指定字段的语句, 未指定的字段均未加载
+     */
+    private static final String COLUMNS_METHOD = "selectColumnsByIds";
+
+    /**
+     * 已登记的 Mapper 命名空间与映射声明
+     */
+    private final Map<String, MapperDeclaration> declarations = new ConcurrentHashMap<>();
+
+    /**
+     * 登记 Mapper, 所有 Mapper 都需要登记, 以便标记投影查询未加载的列
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        declarations.put(mapperInterface.getName(), declaration);
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        if (!(result instanceof List) || ((List<?>) result).isEmpty()) {
+            return result;
+        }
+        MetaObject handler = unwrap(invocation.getTarget());
+        if (!handler.hasGetter("mappedStatement") || !handler.hasGetter("boundSql")) {
+            return result;
+        }
+        String id = ((MappedStatement) handler.getValue("mappedStatement")).getId();
+        int index = id.lastIndexOf('.');
+        MapperDeclaration declaration = declarations.get(id.substring(0, index));
+        // 分表语句的 ID 为 逻辑语句 ID$物理表
+        String method = id.substring(index + 1).split("\\$", 2)[0];
+        if (null == declaration) {
+            return result;
+        }
+        Object parameter = ((BoundSql) handler.getValue("boundSql")).getParameterObject();
+        List<String> unloaded;
+        if (ENTITY_METHODS.contains(method)) {
+            unloaded = BaseSqlProvider.unloadedFields(declaration, parameter instanceof Where ? (Where) parameter : null);
+        } else if (COLUMNS_METHOD.equals(method) && parameter instanceof Map) {
+            unloaded = unselectedFields(declaration, (Map<?, ?>) parameter);
+        } else {
+            return result;
+        }
+        if (unloaded.isEmpty()) {
+            return result;
+        }
+        for (Object record : (List<?>) result) {
+            // 只标记与表对应的实体, 自定义结果类型不做处理
+            if (null != record && record.getClass() == declaration.getPoClass()) {
+                LazyFieldTracker.markUnloaded((PO) record, unloaded);
+            }
+        }
+        return result;
+    }
+
+    private static List<String> unselectedFields(MapperDeclaration declaration, Map<?, ?> parameter) {
+        Object columns = parameter.containsKey("columns") ? parameter.get("columns") : null;
+        if (!(columns instanceof Collection)) {
+            return Collections.emptyList();
+        }
+        List<String> fieldNames = new ArrayList<>();
+        for (ColumnDeclaration columnDeclaration : declaration.getColumnDeclarations()) {
+            if (!((Collection<?>) columns).contains(columnDeclaration.getFieldName())) {
+                fieldNames.add(columnDeclaration.getFieldName());
+            }
+        }
+        return fieldNames;
+    }
+
+    private static MetaObject unwrap(Object target) {
+        MetaObject metaObject = SystemMetaObject.forObject(target);
+        // 被多个插件代理时, 逐层取出原始对象
+        while (metaObject.hasGetter("h")) {
+            metaObject = SystemMetaObject.forObject(metaObject.getValue("h.target"));
+        }
+        return metaObject;
+    }
+}
@@ -0,0 +1,259 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.cache.QueryCache;
+import ink.icoding.smartmybatis.mapper.cache.TableVersions;
+import ink.icoding.smartmybatis.mapper.provider.BaseSqlProvider;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 查询缓存拦截器
+ * 追踪表版本后(存在开启查询缓存的实体或使用了 CACHED 总记录数), 所有 SmartMapper 的写入语句(包括批量写入与 executeSql)
+ * 在执行前后递增所写表的版本, 未追踪时写入直接放行. executeSql 与自定义的写入语句按 SQL 中的表名识别,
+ * 无法识别时递增全部表的版本. 开启查询缓存的实体, select、selectOne、selectWithRelations 与 count 优先读取查询缓存.
+ * 写入过的会话在提交、回滚与关闭时再次递增版本; Spring 管理的会话在 beforeCommit 阶段提交, 早于数据库提交,
+ * 因此在 Spring 事务完成后再递增一次. 会话关闭前的查询不读写缓存, 事务中的查询不写入缓存,
+ * 避免缓存未提交或即将被覆盖的结果.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})
+})
+public class QueryCacheInterceptor implements Interceptor {
+
+    /**
+     * 可以缓存结果的语句
+     */
+    private static final Set<String> CACHEABLE_METHODS = new HashSet<>(
+            Arrays.asList("select", "selectOne", "selectWithRelations", "count"));
+
+    /**
+     * SmartMapper 内置的方法, 内置写入语句只写入 Mapper 对应的表
+     */
+    private static final Set<String> BUILT_IN_METHODS = new HashSet<>();
+
+    static {
+        for (Method method : SmartMapper.class.getMethods()) {
+            BUILT_IN_METHODS.add(method.getName());
+        }
+        BUILT_IN_METHODS.remove("executeSql");
+    }
+
+    /**
+     * 写入的表无法识别时的标记
+     */
+    private static final String ALL_TABLES = "*";
+
+    /**
+     * 已登记的 Mapper 命名空间与登记信息
+     */
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * 各会话已写入但尚未关闭时涉及的表, 会话结束后随执行器回收
+     */
+    private final Map<Object, Set<String>> pendingWrites = Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * 登记 Mapper, 所有 SmartMapper 都需要登记以便写入时递增表版本
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        registrations.put(mapperInterface.getName(), new Registration(mapperInterface, declaration));
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object executor = invocation.getTarget();
+        Object[] args = invocation.getArgs();
+        if (!TableVersions.isTracking()) {
+            // 没有缓存依赖表版本, 查询和写入都无需处理
+            return invocation.proceed();
+        }
+        if (args.length == 1) {
+            return endSession(invocation, executor);
+        }
+        MappedStatement ms = (MappedStatement) args[0];
+        String id = ms.getId();
+        int index = id.lastIndexOf('.');
+        Registration registration = registrations.get(id.substring(0, index));
+        if (null == registration) {
+            return invocation.proceed();
+        }
+        // 分表语句的 ID 为 逻辑语句 ID$物理表
+        String method = id.substring(index + 1).split("\\$", 2)[0];
+        if (args.length == 2) {
+            return write(invocation, executor, method, registration);
+        }
+
+        QueryCache cache = QueryCache.of(registration.declaration.getPoClass());
+        if (null == cache || !CACHEABLE_METHODS.contains(method) || !(args[1] instanceof Where)
+                || null != args[3] || (null != args[2] && args[2] != RowBounds.DEFAULT)
+                || pendingWrites.containsKey(executor)) {
+            return invocation.proceed();
+        }
+        Where where = (Where) args[1];
+        // 指纹不包含顶层分页的具体数值, 单独拼接
+        String key = BaseSqlProvider.fingerprintWithValues(method, registration.mapperType, where)
+                + "|L" + where.getLimitStart() + ',' + where.getLimitSize();
+        List<Object> cached = cache.get(key);
+        if (null != cached) {
+            snapshot(cached, registration.declaration);
+            return cached;
+        }
+        String[] tables = registration.tablesOf(where);
+        long[] versions = TableVersions.versions(tables);
+        long start = System.nanoTime();
+        Object result = EntityCacheInterceptor.loadFromPrimary(invocation);
+        cache.recordLoad(System.nanoTime() - start);
+        if (result instanceof List && EntityCacheInterceptor.autoCommit((Executor) executor)) {
+            cache.put(key, tables, versions, (List<?>) result);
+        }
+        return result;
+    }
+
+    private Object write(Invocation invocation, Object executor, String method, Registration registration) throws Throwable {
+        Set<String> tables = writtenTables((MappedStatement) invocation.getArgs()[0], method,
+                invocation.getArgs()[1], registration);
+        Set<String> pending;
+        boolean created;
+        synchronized (pendingWrites) {
+            pending = pendingWrites.get(executor);
+            created = null == pending;
+            if (created) {
+                pending = new HashSet<>();
+                pendingWrites.put(executor, pending);
+            }
+            pending.addAll(tables);
+        }
+        if (created) {
+            Set<String> written = pending;
+            SpringTransactions.afterCompletion(() -> {
+                Set<String> completed;
+                synchronized (pendingWrites) {
+                    completed = new HashSet<>(written);
+                }
+                bump(completed);
+            });
+        }
+        bump(tables);
+        try {
+            return invocation.proceed();
+        } finally {
+            bump(tables);
+        }
+    }
+
+    /**
+     * 提交与回滚时递增会话写入过的表的版本, 关闭时递增后清除记录
+     */
+    private Object endSession(Invocation invocation, Object executor) throws Throwable {
+        boolean close = "close".equals(invocation.getMethod().getName());
+        Set<String> tables;
+        synchronized (pendingWrites) {
+            tables = close ? pendingWrites.remove(executor) : pendingWrites.get(executor);
+            tables = null == tables ? null : new HashSet<>(tables);
+        }
+        try {
+            return invocation.proceed();
+        } finally {
+            if (null != tables) {
+                bump(tables);
+            }
+        }
+    }
+
+    private static Set<String> writtenTables(MappedStatement ms, String method, Object parameter, Registration registration) {
+        Set<String> tables = new HashSet<>();
+        tables.add(registration.tableName);
+        if (!isBuiltIn(method)) {
+            // executeSql 与自定义的 @Update、@Delete 等语句可能写入任意表
+            Set<String> detected = TableVersions.detectTables(ms.getBoundSql(parameter).getSql());
+            if (detected.isEmpty()) {
+                tables.add(ALL_TABLES);
+            }
+            tables.addAll(detected);
+        }
+        return tables;
+    }
+
+    /**
+     * 是否为 SmartMapper 内置的语句, executeSql 与自定义语句写入的表需按 SQL 识别
+     * @param method 语句方法名
+     * @return 内置语句返回 true
+     */
+    static boolean isBuiltIn(String method) {
+        return BUILT_IN_METHODS.contains(method);
+    }
+
+    private static void bump(Set<String> tables) {
+        if (tables.contains(ALL_TABLES)) {
+            TableVersions.bumpAll();
+            return;
+        }
+        TableVersions.bump(tables);
+    }
+
+    private static void snapshot(List<Object> rows, MapperDeclaration declaration) {
+        GlobalConfig config = SmartConfigHolder.config();
+        if (null == config || !config.isDirtyTracking()) {
+            return;
+        }
+        for (Object row : rows) {
+            if (row instanceof PO && row.getClass() == declaration.getPoClass()) {
+                DirtyTracker.snapshot((PO) row, declaration);
+            }
+        }
+    }
+
+    private static final class Registration {
+
+        private final Class<?> mapperType;
+
+        private final MapperDeclaration declaration;
+
+        private final String tableName;
+
+        /**
+         * 实体表与关联表
+         */
+        private final String[] tables;
+
+        private Registration(Class<?> mapperType, MapperDeclaration declaration) {
+            this.mapperType = mapperType;
+            this.declaration = declaration;
+            this.tableName = declaration.getTableName().toLowerCase(Locale.ROOT);
+            this.tables = TableVersions.tablesOf(declaration);
+        }
+
+        /**
+         * 查询涉及的表, 包括 JOIN 的表
+         */
+        private String[] tablesOf(Where where) {
+            return TableVersions.tablesOf(tables, where);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * 读写分离拦截器
+ * 不在事务中时, SmartMapper 的查询语句(select、count、selectById、queryBySql 等)标记为读从库,
+ * 由 ReadWriteRoutingDataSource 从从库获取连接. 写入语句、事务中的语句、加锁读以及在 ReadRouting.onPrimary 中的查询使用主库.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class})
+})
+public class ReadRoutingInterceptor implements Interceptor {
+
+    /**
+     * 可以路由到从库的语句
+     */
+    private static final Set<String> READ_METHODS = new HashSet<>(Arrays.asList(
+            "select", "selectOne", "selectCursor", "selectWithRelations", "count", "explainCount",
+            "selectById", "selectRowsByIds", "selectColumnsByIds", "queryBySql"));
+
+    /**
+     * 加锁读需要在主库执行
+     */
+    private static final Pattern LOCKING_READ = Pattern.compile(
+            "\\bFOR\\s+UPDATE\\b|\\bFOR\\s+SHARE\\b|\\bLOCK\\s+IN\\s+SHARE\\s+MODE\\b", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 已登记的 Mapper 命名空间
+     */
+    private final Set<String> namespaces = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 登记需要读写分离的 Mapper
+     * @param mapperInterface Mapper 接口
+     */
+    public void register(Class<?> mapperInterface) {
+        namespaces.add(mapperInterface.getName());
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object[] args = invocation.getArgs();
+        String id = ((MappedStatement) args[0]).getId();
+        int index = id.lastIndexOf('.');
+        String method = id.substring(index + 1);
+        if (ReadRouting.isPrimaryForced() || !namespaces.contains(id.substring(0, index))
+                || !READ_METHODS.contains(method) || lockingRead(method, args[1])
+                || SpringTransactions.transactionActive()) {
+            return invocation.proceed();
+        }
+        ReadRouting.Route previous = ReadRouting.switchTo(ReadRouting.Route.REPLICA);
+        try {
+            return invocation.proceed();
+        } finally {
+            ReadRouting.restore(previous);
+        }
+    }
+
+    private static boolean lockingRead(String method, Object parameter) {
+        if (!"queryBySql".equals(method) || !(parameter instanceof Map)) {
+            return false;
+        }
+        Object sql = ((Map<?, ?>) parameter).get("sql");
+        return null != sql && LOCKING_READ.matcher(sql.toString()).find();
+    }
+}
@@ -0,0 +1,61 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.entity.expression.SortDirection;
+import ink.icoding.smartmybatis.entity.expression.SortExpression;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.LambdaFieldMeta;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 合并多次查询的结果时, 按排序条件在内存中排序使用的比较器
+ * 按 Java 的 compareTo 比较, 字符串的大小写与排序规则可能与数据库的 collation 不一致
+ * @author gsk
+ */
+final class RowComparators {
+
+    private RowComparators() {
+    }
+
+    /**
+     * 按排序条件构建比较器, 与 MySQL 一致升序时 null 在前; 排序字段不属于当前实体时返回 null
+     */
+    static Comparator<Object> of(List<SortExpression<?>> sortExpressions, MapperDeclaration declaration) {
+        Comparator<Object> comparator = null;
+        for (SortExpression<?> sortExpression : sortExpressions) {
+            LambdaFieldMeta meta = LambdaFieldUtil.resolve(sortExpression.getFunc());
+            if (meta.getPoClass() != declaration.getPoClass()) {
+                return null;
+            }
+            String fieldName = meta.getFieldName();
+            Comparator<Object> next = (a, b) -> compareValues(
+                    MapperUtil.getFieldValue((PO) a, fieldName), MapperUtil.getFieldValue((PO) b, fieldName));
+            if (sortExpression.getDirection() == SortDirection.DESC) {
+                next = next.reversed();
+            }
+            comparator = null == comparator ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compareValues(Object a, Object b) {
+        if (a == b) {
+            return 0;
+        }
+        if (null == a) {
+            return -1;
+        }
+        if (null == b) {
+            return 1;
+        }
+        if (a instanceof Comparable) {
+            return ((Comparable) a).compareTo(b);
+        }
+        return 0;
+    }
+}
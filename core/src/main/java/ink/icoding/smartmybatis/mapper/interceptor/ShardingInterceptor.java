@@ -0,0 +1,527 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.expression.SortExpression;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.provider.BaseSqlProvider;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import ink.icoding.smartmybatis.mapper.shard.ShardResolver;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.*;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.MetaObject;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+import org.apache.ibatis.transaction.Transaction;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分表拦截器
+ * 分表实体的语句按 ShardResolver 解析出的物理表执行: SQL 按逻辑表生成, 执行前将逻辑表名替换为物理表名.
+ * 新增与按主键更新按记录路由, 批量写入按物理表分组后分别执行; 条件语句按条件路由, 无法定位时在全部物理表上执行.
+ * 多张物理表的查询在事务外并行执行: SQL 与参数值在调用线程中生成, 查询线程只执行生成好的语句;
+ * 查询结果按排序条件归并并重新截取分页, 统计与写入的结果相加. 新增在路由前分配主键.
+ * @author gsk
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query",
+                args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "queryCursor",
+                args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class})
+})
+public class ShardingInterceptor implements Interceptor {
+
+    /**
+     * 按记录路由的写入语句
+     */
+    private static final Set<String> RECORD_WRITES = new HashSet<>(
+            Arrays.asList("insert", "updateAllById", "updateColumnsById"));
+
+    /**
+     * 按记录列表分组路由的写入语句
+     */
+    private static final Set<String> LIST_WRITES = new HashSet<>(
+            Arrays.asList("insertRows", "upsertRows", "updateRowsById"));
+
+    /**
+     * 并行查询使用的线程池, 首次使用时按配置创建
+     */
+    private static volatile ExecutorService shardPool;
+
+    /**
+     * 已登记的 Mapper 命名空间与登记信息
+     */
+    private final Map<String, Registration> registrations = new ConcurrentHashMap<>();
+
+    /**
+     * 各物理表的语句, 按语句 ID 与物理表缓存
+     */
+    private final Map<String, MappedStatement> shardStatements = new ConcurrentHashMap<>();
+
+    /**
+     * 登记分表的 Mapper
+     * @param mapperInterface Mapper 接口
+     * @param declaration 映射声明
+     */
+    public void register(Class<?> mapperInterface, MapperDeclaration declaration) {
+        registrations.put(mapperInterface.getName(), new Registration(mapperInterface, declaration));
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object[] args = invocation.getArgs();
+        MappedStatement ms = (MappedStatement) args[0];
+        if (ms.getSqlSource() instanceof ShardSqlSource || ms.getSqlSource() instanceof BoundSqlSource) {
+            return invocation.proceed();
+        }
+        String id = ms.getId();
+        int index = id.lastIndexOf('.');
+        Registration registration = registrations.get(id.substring(0, index));
+        ShardResolver resolver = null == registration ? null : registration.declaration.getShardResolver();
+        String method = id.substring(index + 1);
+        if (null == resolver || "executeSql".equals(method) || "queryBySql".equals(method)) {
+            return invocation.proceed();
+        }
+        Executor executor = (Executor) invocation.getTarget();
+        Object parameter = args[1];
+        if (args.length == 2) {
+            return update(executor, ms, method, parameter, registration);
+        }
+        List<String> tables = queryTables(parameter, registration);
+        if (args.length == 3) {
+            if (tables.size() != 1) {
+                throw new UnsupportedOperationException("selectCursor on sharded table "
+                        + registration.declaration.getTableName() + " must be pinned to a single shard.");
+            }
+            return executor.queryCursor(shardStatement(ms, registration, tables.get(0)), parameter, (RowBounds) args[2]);
+        }
+        return query(executor, ms, parameter, (RowBounds) args[2], (ResultHandler<?>) args[3], registration, tables);
+    }
+
+    /**
+     * 查询涉及的物理表
+     */
+    private static List<String> queryTables(Object parameter, Registration registration) {
+        Collection<String> tables = parameter instanceof Where
+                ? registration.declaration.getShardResolver().tablesOf(registration.declaration, (Where) parameter)
+                : null;
+        return null == tables ? registration.allTables() : new ArrayList<>(new LinkedHashSet<>(tables));
+    }
+
+    private Object query(Executor executor, MappedStatement ms, Object parameter, RowBounds rowBounds,
+                         ResultHandler<?> resultHandler, Registration registration, List<String> tables) throws Exception {
+        if (tables.size() == 1) {
+            return executor.query(shardStatement(ms, registration, tables.get(0)), parameter, rowBounds, resultHandler);
+        }
+        if (null != rowBounds && rowBounds != RowBounds.DEFAULT) {
+            throw new UnsupportedOperationException("RowBounds is not supported across shards of "
+                    + registration.declaration.getTableName() + ", use Where.limit instead.");
+        }
+        List<ResultMap> resultMaps = ms.getResultMaps();
+        Class<?> resultType = null == resultMaps || resultMaps.isEmpty() ? null : resultMaps.get(0).getType();
+        boolean counting = resultType == long.class || resultType == Long.class
+                || resultType == int.class || resultType == Integer.class;
+        if (tables.isEmpty()) {
+            // 条件未命中任何物理表
+            return counting ? new ArrayList<>(Collections.singletonList(resultType == int.class || resultType == Integer.class
+                    ? (Object) 0 : (Object) 0L)) : new ArrayList<>();
+        }
+        if (null != resultHandler) {
+            for (String table : tables) {
+                executor.query(shardStatement(ms, registration, table), parameter, RowBounds.DEFAULT, resultHandler);
+            }
+            return new ArrayList<>();
+        }
+
+        Where where = parameter instanceof Where ? (Where) parameter : null;
+        Comparator<Object> comparator = null;
+        int limitStart = 0;
+        int limitSize = 0;
+        if (null != where) {
+            List<SortExpression<?>> sortExpressions = where.getSortExpressions();
+            if (!counting && null != sortExpressions && !sortExpressions.isEmpty()) {
+                comparator = RowComparators.of(sortExpressions, registration.declaration);
+                if (null == comparator) {
+                    throw new UnsupportedOperationException("Sorting by joined columns is not supported across shards of "
+                            + registration.declaration.getTableName() + ".");
+                }
+            }
+            limitStart = where.getLimitStart();
+            limitSize = where.getLimitSize();
+        }
+
+        boolean parallel = parallelism() > 1 && !SpringTransactions.transactionActive();
+        List<MappedStatement> statements = new ArrayList<>(tables.size());
+        List<List<Object>> results;
+        try {
+            if (limitSize > 0) {
+                // 每张表取到当前页末尾为止, 合并后再截取当前页
+                where.limit(0, limitStart + limitSize);
+            }
+            for (String table : tables) {
+                MappedStatement statement = shardStatement(ms, registration, table);
+                // 并行查询时在当前线程生成 SQL 并取出参数值, 查询线程不访问条件对象
+                statements.add(parallel ? boundStatement(statement, parameter) : statement);
+            }
+            results = parallel ? null : queryInSequence(executor, statements, parameter);
+        } finally {
+            if (limitSize > 0) {
+                where.limit(limitStart, limitSize);
+            }
+        }
+        if (parallel) {
+            results = queryInParallel(statements, parameter, registration);
+        }
+
+        if (counting) {
+            long total = 0;
+            for (List<Object> result : results) {
+                for (Object count : result) {
+                    total += null == count ? 0 : ((Number) count).longValue();
+                }
+            }
+            Object count = resultType == int.class || resultType == Integer.class ? (Object) (int) total : (Object) total;
+            return new ArrayList<>(Collections.singletonList(count));
+        }
+        List<Object> rows = new ArrayList<>();
+        for (List<Object> result : results) {
+            rows.addAll(result);
+        }
+        if (null != comparator) {
+            rows.sort(comparator);
+        }
+        if (limitSize > 0) {
+            int from = Math.min(limitStart, rows.size());
+            int to = Math.min(limitStart + limitSize, rows.size());
+            rows = new ArrayList<>(rows.subList(from, to));
+        }
+        return rows;
+    }
+
+    private static List<List<Object>> queryInSequence(Executor executor, List<MappedStatement> statements,
+                                                      Object parameter) throws Exception {
+        List<List<Object>> results = new ArrayList<>(statements.size());
+        for (MappedStatement statement : statements) {
+            results.add(executor.query(statement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER));
+        }
+        return results;
+    }
+
+    /**
+     * 每张物理表使用独立的执行器并行查询, 查询线程沿用当前线程的读写路由.
+     * 语句已绑定 SQL 与参数值, 不登记到 Configuration
+     */
+    private List<List<Object>> queryInParallel(List<MappedStatement> statements, Object parameter,
+                                               Registration registration) throws Exception {
+        Configuration configuration = SmartBatchExecutor.getSqlSessionFactory(registration.mapperType).getConfiguration();
+        ReadRouting.Route route = ReadRouting.current();
+        List<Future<List<Object>>> futures = new ArrayList<>(statements.size());
+        ExecutorService pool = shardPool();
+        for (MappedStatement statement : statements) {
+            futures.add(pool.submit(() -> {
+                ReadRouting.Route previous = ReadRouting.switchTo(route);
+                Environment environment = configuration.getEnvironment();
+                Transaction transaction = environment.getTransactionFactory()
+                        .newTransaction(environment.getDataSource(), null, false);
+                Executor executor = configuration.newExecutor(transaction);
+                try {
+                    return executor.<Object>query(statement, parameter, RowBounds.DEFAULT, Executor.NO_RESULT_HANDLER);
+                } finally {
+                    executor.close(false);
+                    ReadRouting.restore(previous);
+                }
+            }));
+        }
+        List<List<Object>> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<List<Object>> future : futures) {
+                results.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        } finally {
+            for (Future<List<Object>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    private int update(Executor executor, MappedStatement ms, String method, Object parameter,
+                       Registration registration) throws Exception {
+        ShardResolver resolver = registration.declaration.getShardResolver();
+        boolean insert = ms.getSqlCommandType() == SqlCommandType.INSERT;
+        if (insert && parameter instanceof Map) {
+            assignPrimaryKeys(method, (Map<?, ?>) parameter, registration);
+        }
+        if (RECORD_WRITES.contains(method) && parameter instanceof Map) {
+            String table = resolver.tableOf(registration.declaration, (PO) ((Map<?, ?>) parameter).get("record"));
+            if (null == table && insert) {
+                throw new IllegalStateException("Cannot resolve shard of " + registration.declaration.getTableName()
+                        + " for the inserted record.");
+            }
+            return updateTables(executor, ms, parameter, registration,
+                    null == table ? registration.allTables() : Collections.singletonList(table));
+        }
+        if (LIST_WRITES.contains(method) && parameter instanceof Map) {
+            Object list = ((Map<?, ?>) parameter).get("list");
+            Map<String, List<Object>> groups = new LinkedHashMap<>();
+            for (Object record : (Collection<?>) list) {
+                String table = resolver.tableOf(registration.declaration, (PO) record);
+                if (null == table && insert) {
+                    throw new IllegalStateException("Cannot resolve shard of " + registration.declaration.getTableName()
+                            + " for the inserted record.");
+                }
+                groups.computeIfAbsent(table, key -> new ArrayList<>()).add(record);
+            }
+            int total = 0;
+            for (Map.Entry<String, List<Object>> group : groups.entrySet()) {
+                // 无法确定物理表的记录按主键在全部物理表上更新
+                List<String> tables = null == group.getKey() ? registration.allTables()
+                        : Collections.singletonList(group.getKey());
+                total = sum(total, updateTables(executor, ms,
+                        InListChunkingInterceptor.withIds((Map<?, ?>) parameter, list, group.getValue()), registration, tables));
+            }
+            return total;
+        }
+        List<String> tables = parameter instanceof Where ? queryTables(parameter, registration) : registration.allTables();
+        return updateTables(executor, ms, parameter, registration, tables);
+    }
+
+    /**
+     * 新增先分配主键再路由, 按主键分表时才能定位物理表; 分表实体生成 SQL 时保留已分配的主键
+     */
+    @SuppressWarnings("unchecked")
+    private static void assignPrimaryKeys(String method, Map<?, ?> parameter, Registration registration) {
+        Object records = RECORD_WRITES.contains(method)
+                ? Collections.singletonList(parameter.get("record")) : parameter.get("list");
+        if (records instanceof Collection) {
+            BaseSqlProvider.assignPrimaryKeys((Collection<? extends PO>) records, registration.declaration,
+                    "upsertRows".equals(method));
+        }
+    }
+
+    private int updateTables(Executor executor, MappedStatement ms, Object parameter, Registration registration,
+                             List<String> tables) throws Exception {
+        int total = 0;
+        for (String table : tables) {
+            total = sum(total, executor.update(shardStatement(ms, registration, table), parameter));
+        }
+        return total;
+    }
+
+    /**
+     * 累加影响行数, BATCH 执行器返回的占位值(负数)原样返回
+     */
+    private static int sum(int total, int count) {
+        return count < 0 || total < 0 ? count : total + count;
+    }
+
+    /**
+     * 获取语句在指定物理表上执行的版本
+     */
+    private MappedStatement shardStatement(MappedStatement ms, Registration registration, String table) {
+        String id = ms.getId() + '$' + table.replace('.', '$');
+        return shardStatements.computeIfAbsent(id, key -> copyOf(ms, key, new ShardSqlSource(ms.getConfiguration(),
+                ms.getSqlSource(), '`' + registration.declaration.getTableName() + '`', '`' + table + '`')));
+    }
+
+    /**
+     * 在当前线程生成语句的 SQL, 并将参数值取出为附加参数, 得到只在本次查询中使用的语句.
+     * 其他线程执行该语句时只读取生成好的 SQL 与参数值, 不调用 SQL 构建, 也不访问参数对象
+     */
+    private static MappedStatement boundStatement(MappedStatement statement, Object parameter) {
+        Configuration configuration = statement.getConfiguration();
+        BoundSql boundSql = statement.getBoundSql(parameter);
+        TypeHandlerRegistry typeHandlerRegistry = configuration.getTypeHandlerRegistry();
+        MetaObject metaObject = null;
+        List<ParameterMapping> mappings = new ArrayList<>(boundSql.getParameterMappings().size());
+        Map<String, Object> values = new HashMap<>();
+        for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+            String property = mapping.getProperty();
+            Object value;
+            if (boundSql.hasAdditionalParameter(property)) {
+                value = boundSql.getAdditionalParameter(property);
+            } else if (null == parameter) {
+                value = null;
+            } else if (typeHandlerRegistry.hasTypeHandler(parameter.getClass())) {
+                value = parameter;
+            } else {
+                if (null == metaObject) {
+                    metaObject = configuration.newMetaObject(parameter);
+                }
+                value = metaObject.getValue(property);
+            }
+            String name = "_shard_param" + mappings.size();
+            values.put(name, value);
+            mappings.add(new ParameterMapping.Builder(configuration, name, mapping.getTypeHandler())
+                    .mode(mapping.getMode())
+                    .javaType(mapping.getJavaType())
+                    .jdbcType(mapping.getJdbcType())
+                    .numericScale(mapping.getNumericScale())
+                    .build());
+        }
+        return copyOf(statement, statement.getId(), new BoundSqlSource(configuration, boundSql.getSql(), mappings, values));
+    }
+
+    private static MappedStatement copyOf(MappedStatement ms, String id, SqlSource sqlSource) {
+        MappedStatement.Builder builder = new MappedStatement.Builder(
+                ms.getConfiguration(), id, sqlSource, ms.getSqlCommandType());
+        builder.resource(ms.getResource())
+                .fetchSize(ms.getFetchSize())
+                .statementType(ms.getStatementType())
+                .keyGenerator(ms.getKeyGenerator())
+                .databaseId(ms.getDatabaseId())
+                .timeout(ms.getTimeout())
+                .parameterMap(ms.getParameterMap())
+                .resultMaps(ms.getResultMaps())
+                .resultSetType(ms.getResultSetType())
+                .flushCacheRequired(ms.isFlushCacheRequired())
+                .useCache(ms.isUseCache())
+                .cache(ms.getCache())
+                .lang(ms.getLang())
+                .resultOrdered(ms.isResultOrdered());
+        if (null != ms.getKeyProperties()) {
+            builder.keyProperty(String.join(",", ms.getKeyProperties()));
+        }
+        if (null != ms.getKeyColumns()) {
+            builder.keyColumn(String.join(",", ms.getKeyColumns()));
+        }
+        return builder.build();
+    }
+
+    private static int parallelism() {
+        GlobalConfig config = SmartConfigHolder.config();
+        return null == config ? 1 : config.getShardQueryParallelism();
+    }
+
+    private static ExecutorService shardPool() {
+        ExecutorService pool = shardPool;
+        if (null == pool) {
+            synchronized (ShardingInterceptor.class) {
+                pool = shardPool;
+                if (null == pool) {
+                    AtomicInteger counter = new AtomicInteger();
+                    pool = Executors.newFixedThreadPool(parallelism(), runnable -> {
+                        Thread thread = new Thread(runnable, "smart-shard-query-" + counter.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+                    shardPool = pool;
+                }
+            }
+        }
+        return pool;
+    }
+
+    private static final class Registration {
+
+        private final Class<?> mapperType;
+
+        private final MapperDeclaration declaration;
+
+        private Registration(Class<?> mapperType, MapperDeclaration declaration) {
+            this.mapperType = mapperType;
+            this.declaration = declaration;
+        }
+
+        private List<String> allTables() {
+            List<String> tables = declaration.getShardResolver().allTables(declaration);
+            if (null == tables || tables.isEmpty()) {
+                throw new IllegalStateException("Shard resolver of " + declaration.getTableName()
+                        + " returned no physical tables.");
+            }
+            return tables;
+        }
+    }
+
+    /**
+     * 将逻辑表名替换为物理表名的 SqlSource
+     */
+    private static final class ShardSqlSource implements SqlSource {
+
+        private final Configuration configuration;
+
+        private final SqlSource delegate;
+
+        private final String logicalTable;
+
+        private final String physicalTable;
+
+        private ShardSqlSource(Configuration configuration, SqlSource delegate, String logicalTable, String physicalTable) {
+            this.configuration = configuration;
+            this.delegate = delegate;
+            this.logicalTable = logicalTable;
+            this.physicalTable = physicalTable;
+        }
+
+        @Override
+        public BoundSql getBoundSql(Object parameterObject) {
+            BoundSql boundSql = delegate.getBoundSql(parameterObject);
+            BoundSql shardSql = new BoundSql(configuration, boundSql.getSql().replace(logicalTable, physicalTable),
+                    boundSql.getParameterMappings(), boundSql.getParameterObject());
+            for (ParameterMapping mapping : boundSql.getParameterMappings()) {
+                String property = mapping.getProperty();
+                int end = property.length();
+                for (int i = 0; i < property.length(); i++) {
+                    char c = property.charAt(i);
+                    if (c == '.' || c == '[') {
+                        end = i;
+                        break;
+                    }
+                }
+                String name = property.substring(0, end);
+                if (boundSql.hasAdditionalParameter(name)) {
+                    shardSql.setAdditionalParameter(name, boundSql.getAdditionalParameter(name));
+                }
+            }
+            return shardSql;
+        }
+    }
+
+    /**
+     * 已生成好的 SQL 与参数值, 每次返回新的 BoundSql, 参数值只读
+     */
+    private static final class BoundSqlSource implements SqlSource {
+
+        private final Configuration configuration;
+
+        private final String sql;
+
+        private final List<ParameterMapping> parameterMappings;
+
+        private final Map<String, Object> values;
+
+        private BoundSqlSource(Configuration configuration, String sql, List<ParameterMapping> parameterMappings,
+                               Map<String, Object> values) {
+            this.configuration = configuration;
+            this.sql = sql;
+            this.parameterMappings = parameterMappings;
+            this.values = values;
+        }
+
+        @Override
+        public BoundSql getBoundSql(Object parameterObject) {
+            BoundSql boundSql = new BoundSql(configuration, sql, parameterMappings, parameterObject);
+            values.forEach(boundSql::setAdditionalParameter);
+            return boundSql;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package ink.icoding.smartmybatis.mapper.interceptor;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+/**
+ * Spring 事务同步的反射访问, 未引入 spring-tx 时所有方法按不在事务中处理
+ * @author gsk
+ */
+final class SpringTransactions {
+
+    private static final String MANAGER = "org.springframework.transaction.support.TransactionSynchronizationManager";
+
+    private static final String SYNCHRONIZATION = "org.springframework.transaction.support.TransactionSynchronization";
+
+    /**
+     * TransactionSynchronizationManager.isActualTransactionActive
+     */
+    private static final Method TRANSACTION_ACTIVE = method(MANAGER, "isActualTransactionActive");
+
+    /**
+     * TransactionSynchronizationManager.isSynchronizationActive
+     */
+    private static final Method SYNCHRONIZATION_ACTIVE = method(MANAGER, "isSynchronizationActive");
+
+    /**
+     * TransactionSynchronizationManager.registerSynchronization
+     */
+    private static final Method REGISTER_SYNCHRONIZATION = method(MANAGER, "registerSynchronization", SYNCHRONIZATION);
+
+    private SpringTransactions() {
+    }
+
+    /**
+     * 当前线程是否处于 Spring 事务中
+     */
+    static boolean transactionActive() {
+        if (null == TRANSACTION_ACTIVE) {
+            return false;
+        }
+        try {
+            return Boolean.TRUE.equals(TRANSACTION_ACTIVE.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            // 无法判断时按处于事务中处理
+            return true;
+        }
+    }
+
+    /**
+     * 当前线程开启了 Spring 事务同步时, 登记在事务提交或回滚完成后执行的回调.
+     * Spring 管理的 SqlSession 在 beforeCommit 阶段调用 Executor.commit, 早于数据库提交, 需要在事务完成后再处理一次.
+     * @param callback 回调
+     * @return 是否已登记
+     */
+    static boolean afterCompletion(Runnable callback) {
+        if (null == SYNCHRONIZATION_ACTIVE || null == REGISTER_SYNCHRONIZATION) {
+            return false;
+        }
+        try {
+            if (!Boolean.TRUE.equals(SYNCHRONIZATION_ACTIVE.invoke(null))) {
+                return false;
+            }
+            Class<?> type = REGISTER_SYNCHRONIZATION.getParameterTypes()[0];
+            Object synchronization = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "afterCompletion":
+                                callback.run();
+                                return null;
+                            case "getOrder":
+                                // Ordered.LOWEST_PRECEDENCE, 在其他同步之后执行
+                                return Integer.MAX_VALUE;
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            case "toString":
+                                return "SmartMybatisAfterCompletion@" + Integer.toHexString(System.identityHashCode(proxy));
+                            default:
+                                return null;
+                        }
+                    });
+            REGISTER_SYNCHRONIZATION.invoke(null, synchronization);
+            return true;
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    private static Method method(String className, String name, String... parameterTypes) {
+        try {
+            Class<?>[] types = new Class<?>[parameterTypes.length];
+            for (int i = 0; i < parameterTypes.length; i++) {
+                types[i] = Class.forName(parameterTypes[i]);
+            }
+            return Class.forName(className).getMethod(name, types);
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -1,11 +1,30 @@
 package ink.icoding.smartmybatis.mapper.interfaces;
 
 import ink.icoding.smartmybatis.SpringApplicationUtil;
+import ink.icoding.smartmybatis.conf.Dialect;
 import ink.icoding.smartmybatis.conf.GlobalConfig;
 import ink.icoding.smartmybatis.conf.SmartConfigHolder;
 import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.PrimaryGenerateType;
 import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
 import ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler;
+import ink.icoding.smartmybatis.mapper.handlers.UuidBinaryTypeHandler;
+import ink.icoding.smartmybatis.mapper.cache.QueryCache;
+import ink.icoding.smartmybatis.mapper.cache.TableVersions;
+import ink.icoding.smartmybatis.mapper.interceptor.AsyncStatementInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.DirtyTrackingInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.EntityCacheInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.InListChunkingInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.LazyColumnInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.QueryCacheInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.ReadRoutingInterceptor;
+import ink.icoding.smartmybatis.mapper.interceptor.ShardingInterceptor;
+import ink.icoding.smartmybatis.mapper.routing.ReadWriteRoutingDataSource;
+import ink.icoding.smartmybatis.mapper.segment.SegmentIdAllocator;
+import ink.icoding.smartmybatis.mapper.snowflake.SnowflakeWorkerLease;
+import ink.icoding.smartmybatis.utils.SnowflakeIdGeneratorUtil;
+import ink.icoding.smartmybatis.utils.SnowflakeWorkerIdProvider;
 import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
 import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
 import ink.icoding.smartmybatis.utils.entity.MapperUtil;
@@ -14,10 +33,14 @@ import org.apache.ibatis.executor.keygen.Jdbc3KeyGenerator;
 import org.apache.ibatis.executor.keygen.KeyGenerator;
 import org.apache.ibatis.executor.keygen.NoKeyGenerator;
 import org.apache.ibatis.mapping.*;
+import org.apache.ibatis.plugin.Interceptor;
 import org.apache.ibatis.session.Configuration;
 import org.apache.ibatis.session.SqlSessionFactory;
 import org.slf4j.Logger;
 import org.springframework.context.ApplicationContext;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
 import org.springframework.util.StringUtils;
 
 import javax.sql.DataSource;
@@ -30,6 +53,7 @@ import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -58,7 +82,7 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
             syncDatabaseStructure(smartMapper, mapperInterface, mapperDeclaration);
         }
 
-        // 2) 反射 PATCH：为该 mapper 的 insert 方法以及 insertBatch 注入主键回填
+        // 2) 反射 PATCH：为该 mapper 的 insert 方法以及 insertRows 注入主键回填
         try {
             patchGeneratedKeysForMapperReflective(mapperInterface, mapperDeclaration);
         } catch (Throwable ex) {
@@ -66,7 +90,7 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
                     + mapperInterface.getName() + " failed: " + ex.getMessage(), ex);
         }
 
-        // 3) 【新增】反射 PATCH：自动注入 JSON ResultMap
+        // 3) 【新增】反射 PATCH：自动注入 JSON 及 BINARY(16) 主键的 ResultMap
         try {
             patchResultMapForJsonFieldsReflective(mapperInterface, mapperDeclaration);
         } catch (Throwable ex) {
@@ -74,13 +98,196 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
                     + mapperInterface.getName() + " failed: " + ex.getMessage(), ex);
         }
 
-        // 4) 初始化脚本(如果有, 且表为空)
+        // 4) 按方言设置流式查询的 fetchSize
+        try {
+            patchCursorFetchSizeReflective(mapperInterface, config);
+        } catch (Throwable ex) {
+            throw new RuntimeException("Patch cursor fetch size for mapper "
+                    + mapperInterface.getName() + " failed: " + ex.getMessage(), ex);
+        }
+
+        // 5) 开启脏字段追踪时, 登记结果集拦截器; 登记懒加载列拦截器, 标记懒加载列及投影查询未加载的列
+        if (config.isDirtyTracking()) {
+            registerDirtyTracking(mapperInterface, mapperDeclaration);
+        }
+        registerLazyColumns(mapperInterface, mapperDeclaration);
+
+        // 6) 登记分表拦截器, 先于其他 Executor 拦截器登记, 使其他拦截器看到的是逻辑表上的语句
+        registerSharding(mapperInterface, mapperDeclaration);
+
+        // 7) 登记 IN 条件拆分拦截器, 阈值小于等于 0 且值总数未超过绑定参数上限时拦截器直接放行
+        registerInListChunking(mapperInterface, mapperDeclaration);
+
+        // 8) 登记实体缓存拦截器, 未开启缓存的 Mapper 执行的自定义写入同样需要使缓存失效
+        registerEntityCache(mapperInterface, mapperDeclaration);
+
+        // 9) 登记查询缓存拦截器, 实体开启查询缓存时开始追踪表版本, 追踪后所有 Mapper 的写入都需要递增表版本
+        registerQueryCache(mapperInterface, mapperDeclaration);
+
+        // 10) 数据源开启读写分离时, 登记读写分离拦截器
+        if (!applicationContext.getBeansOfType(ReadWriteRoutingDataSource.class).isEmpty()) {
+            registerReadRouting(mapperInterface);
+        }
+
+        // 11) 登记异步调用语句拦截器, 使 AsyncSmartMapper 的超时和取消能够中止正在执行的语句
+        interceptorOf(AsyncStatementInterceptor.class, AsyncStatementInterceptor::new);
+
+        // 12) 使用号段主键时, 登记号段分配器
+        if (mapperDeclaration.getPkGenerateType() == PrimaryGenerateType.SEGMENT) {
+            registerSegmentAllocator(smartMapper, mapperDeclaration);
+        }
+
+        // 13) 登记雪花算法工作节点 ID 提供者, 开启租约时从数据库租用工作节点 ID, 先于初始化脚本生成主键
+        registerSnowflakeWorker(smartMapper, config);
+
+        // 14) 初始化脚本(如果有, 且表为空)
         String initScriptResourcePath = mapperDeclaration.getInitScriptResourcePath();
         if (initScriptResourcePath != null && !initScriptResourcePath.isEmpty()) {
             executeInitScriptIfTableEmpty(smartMapper, mapperDeclaration, initScriptResourcePath);
         }
     }
 
+    /**
+     * 为 selectCursor 设置 fetchSize, MySQL 驱动只有 fetchSize 为 Integer.MIN_VALUE 时才逐行读取,
+     * 其他驱动使用配置的 fetchSize
+     */
+    private void patchCursorFetchSizeReflective(Class<?> mapperInterface, GlobalConfig config) throws Exception {
+        if (forNameOrNull() == null) {
+            return;
+        }
+        SqlSessionFactory sqlSessionFactory = (SqlSessionFactory) getSpringBean(applicationContext, SqlSessionFactory.class);
+        if (sqlSessionFactory == null) {
+            return;
+        }
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        String statementId = mapperInterface.getName() + ".selectCursor";
+        if (!configuration.hasStatement(statementId)) {
+            return;
+        }
+        MappedStatement ms = configuration.getMappedStatement(statementId);
+        int fetchSize = config.getDialect() == Dialect.MYSQL ? Integer.MIN_VALUE : config.getCursorFetchSize();
+        Field fetchSizeField = MappedStatement.class.getDeclaredField("fetchSize");
+        fetchSizeField.setAccessible(true);
+        fetchSizeField.set(ms, fetchSize);
+        logger.debug("Set fetchSize {} for Statement: {}", fetchSize, statementId);
+    }
+
+    /**
+     * 为 Mapper 登记脏字段追踪, 同一个 Configuration 只注册一个拦截器
+     */
+    private void registerDirtyTracking(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        DirtyTrackingInterceptor interceptor = interceptorOf(DirtyTrackingInterceptor.class, DirtyTrackingInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerLazyColumns(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        LazyColumnInterceptor interceptor = interceptorOf(LazyColumnInterceptor.class, LazyColumnInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerSharding(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        ShardingInterceptor interceptor = interceptorOf(ShardingInterceptor.class, ShardingInterceptor::new);
+        if (interceptor != null && mapperDeclaration.isSharded()) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerInListChunking(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        InListChunkingInterceptor interceptor = interceptorOf(InListChunkingInterceptor.class, InListChunkingInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerEntityCache(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        EntityCacheInterceptor interceptor = interceptorOf(EntityCacheInterceptor.class, EntityCacheInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerQueryCache(Class<?> mapperInterface, MapperDeclaration mapperDeclaration) {
+        if (QueryCache.of(mapperDeclaration.getPoClass()) != null) {
+            TableVersions.enableTracking();
+        }
+        QueryCacheInterceptor interceptor = interceptorOf(QueryCacheInterceptor.class, QueryCacheInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface, mapperDeclaration);
+        }
+    }
+
+    private void registerReadRouting(Class<?> mapperInterface) {
+        ReadRoutingInterceptor interceptor = interceptorOf(ReadRoutingInterceptor.class, ReadRoutingInterceptor::new);
+        if (interceptor != null) {
+            interceptor.register(mapperInterface);
+        }
+    }
+
+    private void registerSegmentAllocator(SmartMapper<?> smartMapper, MapperDeclaration mapperDeclaration) {
+        SqlSessionFactory sqlSessionFactory = (SqlSessionFactory) getSpringBean(applicationContext, SqlSessionFactory.class);
+        if (sqlSessionFactory == null) {
+            logger.debug("No SqlSessionFactory bean found, skip SegmentIdAllocator.");
+            return;
+        }
+        SegmentIdAllocator.register(smartMapper, mapperDeclaration, sqlSessionFactory);
+    }
+
+    /**
+     * 使用 Spring 容器中的 SnowflakeWorkerIdProvider, 开启租约时启动租约并在容器关闭时释放, 每个进程只启动一次
+     */
+    private void registerSnowflakeWorker(SmartMapper<?> smartMapper, GlobalConfig config) {
+        Map<String, SnowflakeWorkerIdProvider> providers = applicationContext.getBeansOfType(SnowflakeWorkerIdProvider.class);
+        if (!providers.isEmpty()) {
+            SnowflakeWorkerIdProvider provider = providers.values().iterator().next();
+            if (SnowflakeIdGeneratorUtil.getWorkerIdProvider() != provider) {
+                SnowflakeIdGeneratorUtil.setWorkerIdProvider(provider);
+            }
+        }
+        if (!config.isSnowflakeWorkerLease() || SnowflakeWorkerLease.current() != null) {
+            return;
+        }
+        SqlSessionFactory sqlSessionFactory = (SqlSessionFactory) getSpringBean(applicationContext, SqlSessionFactory.class);
+        if (sqlSessionFactory == null) {
+            logger.debug("No SqlSessionFactory bean found, skip SnowflakeWorkerLease.");
+            return;
+        }
+        SnowflakeWorkerLease lease = SnowflakeWorkerLease.start(smartMapper, sqlSessionFactory);
+        if (applicationContext instanceof ConfigurableApplicationContext) {
+            // 容器关闭事件先于数据源销毁, 此时仍可写入租约表
+            ((ConfigurableApplicationContext) applicationContext).addApplicationListener(
+                    (ApplicationListener<ContextClosedEvent>) event -> lease.release());
+        } else {
+            Runtime.getRuntime().addShutdownHook(new Thread(lease::release, "smart-worker-lease-release"));
+        }
+    }
+
+    /**
+     * 获取 SqlSessionFactory 中已登记的拦截器, 不存在时创建并登记, 每个 Configuration 只登记一个实例
+     * @return 拦截器, 没有 SqlSessionFactory 时返回 null
+     */
+    private <I extends Interceptor> I interceptorOf(Class<I> interceptorType, Supplier<I> factory) {
+        SqlSessionFactory sqlSessionFactory = (SqlSessionFactory) getSpringBean(applicationContext, SqlSessionFactory.class);
+        if (sqlSessionFactory == null) {
+            logger.debug("No SqlSessionFactory bean found, skip {}.", interceptorType.getSimpleName());
+            return null;
+        }
+        Configuration configuration = sqlSessionFactory.getConfiguration();
+        synchronized (configuration) {
+            for (Interceptor existing : configuration.getInterceptors()) {
+                if (interceptorType.isInstance(existing)) {
+                    return interceptorType.cast(existing);
+                }
+            }
+            I interceptor = factory.get();
+            configuration.addInterceptor(interceptor);
+            return interceptor;
+        }
+    }
+
     /**
      * 如果表为空，则执行初始化脚本
      */
@@ -180,6 +387,8 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
             logger.debug("No SqlSessionFactory bean found, skip generatedKeys patch.");
             return;
         }
+        // 登记批处理执行时使用的 SqlSessionFactory
+        SmartBatchExecutor.registerSqlSessionFactory(mapperInterface, sqlSessionFactory);
 
         // Configuration
         Configuration configuration = sqlSessionFactory.getConfiguration();
@@ -208,9 +417,9 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
                 continue;
             }
 
-            // 通过方法名判断, 只拦截insert 和 insertBatch
+            // 通过方法名判断, 只拦截insert 和 insertRows
             String methodName = id.substring(id.lastIndexOf(".") + 1);
-            if (!"insert".equals(methodName) && !"insertBatch".equals(methodName)) {
+            if (!"insert".equals(methodName) && !"insertRows".equals(methodName)) {
                 continue;
             }
             KeyGenerator keyGen = ms.getKeyGenerator();
@@ -291,6 +500,7 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
 
     /**
      * 【核心修复】利用 MapperDeclaration 中的元数据，为 SELECT 方法注入包含 JSON Handler 的 ResultMap
+     * BINARY(16) 存储的 UUID 主键同样在此指定类型处理器, 不影响其他 Mapper 中的 UUID 参数和结果
      */
     private void patchResultMapForJsonFieldsReflective(Class<?> mapperInterface, MapperDeclaration declaration) throws Exception {
         // 筛选出 JSON 字段
@@ -298,7 +508,7 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
                 .filter(ColumnDeclaration::isJson)
                 .collect(Collectors.toList());
 
-        if (jsonColumns.isEmpty()) {
+        if (jsonColumns.isEmpty() && !declaration.isBinaryPk()) {
             return;
         }
 
@@ -340,6 +550,10 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
                 ).build();
                 mappings.add(mappingField);
             }
+            if (declaration.isBinaryPk()) {
+                mappings.add(new ResultMapping.Builder(configuration, declaration.getPkName(),
+                        declaration.getPkName(), new UuidBinaryTypeHandler()).build());
+            }
 
             // 创建 ResultMap.Builder
             // autoMapping = true 是关键，保证非 JSON 字段依然能自动映射
@@ -422,7 +636,7 @@ public class DefaultSmartMapperInitializer implements SmartMapperInitializer {
             return new String[] {
                     "record." + prop,
             };
-        }else if ("insertBatch".equals(methodName)){
+        }else if ("insertRows".equals(methodName)){
             return new String[] {
                     "list." + prop,
             };
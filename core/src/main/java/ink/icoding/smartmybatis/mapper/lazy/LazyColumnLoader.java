@@ -0,0 +1,89 @@
+package ink.icoding.smartmybatis.mapper.lazy;
+
+import ink.icoding.smartmybatis.entity.expression.SFunction;
+import ink.icoding.smartmybatis.entity.po.DirtyTracker;
+import ink.icoding.smartmybatis.entity.po.LazyFieldTracker;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.provider.StatementBuckets;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 懒加载列加载器
+ * 按主键分批查询懒加载列, 将查询结果回填到已查询出的记录中, 一批记录只需一次查询
+ * @author gsk
+ */
+public final class LazyColumnLoader {
+
+    private LazyColumnLoader() {
+    }
+
+    /**
+     * 加载记录的懒加载列
+     * @param mapper Mapper 实例
+     * @param records 记录集合, 主键为 null 的记录将被忽略
+     * @param fields 需要加载的字段, 为空时加载全部懒加载列
+     */
+    public static <T extends PO> void load(SmartMapper<T> mapper, Collection<T> records, Collection<SFunction<T, ?>> fields) {
+        if (null == records || records.isEmpty()) {
+            return;
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(SmartBatchExecutor.mapperInterfaceOf(mapper));
+        List<String> fieldNames = new ArrayList<>();
+        if (null == fields || fields.isEmpty()) {
+            for (ColumnDeclaration columnDeclaration : declaration.getColumnDeclarations()) {
+                if (columnDeclaration.isLazy()) {
+                    fieldNames.add(columnDeclaration.getFieldName());
+                }
+            }
+        } else {
+            for (SFunction<T, ?> field : fields) {
+                fieldNames.add(LambdaFieldUtil.getFieldName(field));
+            }
+        }
+        if (fieldNames.isEmpty()) {
+            return;
+        }
+
+        // 同一主键可能对应多条记录实例, 均需回填
+        Map<Object, List<T>> recordsById = new LinkedHashMap<>();
+        for (T record : records) {
+            Object id = MapperUtil.getFieldValue(record, declaration.getPkName());
+            if (null != id) {
+                recordsById.computeIfAbsent(id, k -> new ArrayList<>(1)).add(record);
+            }
+        }
+        List<Serializable> ids = new ArrayList<>(recordsById.size());
+        for (Object id : recordsById.keySet()) {
+            ids.add((Serializable) id);
+        }
+        for (List<Serializable> chunk : SmartBatchExecutor.chunk(ids, SmartBatchExecutor.multiRowChunkSize(1))) {
+            List<Serializable> chunkIds = StatementBuckets.enabled() ? StatementBuckets.pad(chunk) : chunk;
+            for (T row : mapper.selectColumnsByIds(chunkIds, fieldNames)) {
+                List<T> targets = recordsById.get(MapperUtil.getFieldValue(row, declaration.getPkName()));
+                if (null == targets) {
+                    continue;
+                }
+                for (T target : targets) {
+                    for (String fieldName : fieldNames) {
+                        MapperUtil.setFieldValue(target, fieldName, MapperUtil.getFieldValue(row, fieldName));
+                    }
+                    // 加载的值与数据库一致, 不应视为修改
+                    DirtyTracker.markClean(target, declaration, fieldNames);
+                    LazyFieldTracker.markLoaded(target, fieldNames);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package ink.icoding.smartmybatis.mapper.page;
+
+import ink.icoding.smartmybatis.entity.KeysetPageResult;
+import ink.icoding.smartmybatis.entity.expression.*;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler;
+import ink.icoding.smartmybatis.utils.LambdaFieldMeta;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * 游标(Keyset)分页
+ * 按排序列的值定位下一页的起点, 以 (k1 > v1) OR (k1 = v1 AND k2 > v2) ... 的条件代替 LIMIT 偏移量,
+ * 任意深度的分页都只需扫描一页的数据. 排序列最后总会追加唯一键, 保证排序值相同的记录不会被跳过或重复.
+ * @author gsk
+ */
+public final class KeysetPagination {
+
+    private KeysetPagination() {
+    }
+
+    /**
+     * 查询下一页
+     * @param mapper Mapper 实例
+     * @param where 查询条件, 将被追加游标条件、排序和分页, 每次调用需使用新的对象
+     * @param uniqueKey 唯一键, 一般为主键, 未出现在排序中时按正序追加到最后
+     * @param token 上一页返回的游标, 为空时查询第一页
+     * @param size 每页大小
+     * @return 分页结果
+     */
+    public static <T extends PO> KeysetPageResult<T> selectPageAfter(SmartMapper<T> mapper, Where where,
+                                                                     SFunction<T, ?> uniqueKey, String token, int size) {
+        if (size <= 0) {
+            throw new IllegalArgumentException("The page size must be greater than 0.");
+        }
+        if (null == where) {
+            where = Where.where();
+        }
+        Class<? extends PO> poClass = MapperUtil.getMapperDeclaration(SmartBatchExecutor.mapperInterfaceOf(mapper)).getPoClass();
+        LambdaFieldMeta uniqueMeta = LambdaFieldUtil.resolve(uniqueKey);
+        boolean containsUniqueKey = false;
+        if (null != where.getSortExpressions()) {
+            for (SortExpression<?> sortExpression : where.getSortExpressions()) {
+                if (LambdaFieldUtil.resolve(sortExpression.getFunc()).getField().equals(uniqueMeta.getField())) {
+                    containsUniqueKey = true;
+                    break;
+                }
+            }
+        }
+        if (!containsUniqueKey) {
+            where.orderBy(uniqueKey, SortDirection.ASC);
+        }
+
+        List<SortExpression<?>> sortExpressions = new ArrayList<>(where.getSortExpressions());
+        List<LambdaFieldMeta> sortMetas = new ArrayList<>(sortExpressions.size());
+        for (SortExpression<?> sortExpression : sortExpressions) {
+            LambdaFieldMeta sortMeta = LambdaFieldUtil.resolve(sortExpression.getFunc());
+            if (sortMeta.getPoClass() != poClass) {
+                throw new IllegalArgumentException("Keyset pagination only supports sorting by fields of "
+                        + poClass.getName() + ", but got " + sortMeta.getPoClass().getName() + "." + sortMeta.getFieldName());
+            }
+            sortMetas.add(sortMeta);
+            ensureProjected(where, sortExpression.getFunc(), sortMeta);
+        }
+
+        if (null != token && !token.isEmpty()) {
+            appendSeek(where, sortExpressions, decode(token, sortMetas));
+        }
+        // 多查一条用于判断是否还有下一页
+        List<T> records = mapper.select(where.limit(size + 1));
+        String nextToken = null;
+        if (records.size() > size) {
+            records = new ArrayList<>(records.subList(0, size));
+            nextToken = encode(records.get(size - 1), sortMetas);
+        }
+        return new KeysetPageResult<>(records, nextToken, size);
+    }
+
+    private static void appendSeek(Where where, List<SortExpression<?>> sortExpressions, Object[] values) {
+        List<Where> branches = new ArrayList<>(sortExpressions.size());
+        for (int i = 0; i < sortExpressions.size(); i++) {
+            Where branch = Where.where();
+            for (int j = 0; j < i; j++) {
+                branch.and(sortExpressions.get(j).getFunc(), C.EQ, values[j]);
+            }
+            SortExpression<?> sortExpression = sortExpressions.get(i);
+            branch.and(sortExpression.getFunc(),
+                    sortExpression.getDirection() == SortDirection.DESC ? C.LT : C.GT, values[i]);
+            branches.add(branch);
+        }
+        Where seek = branches.size() == 1 ? branches.get(0)
+                : Where.or(branches.get(0), branches.subList(1, branches.size()).toArray(new Where[0]));
+
+        List<Expression<?>> expressions = where.getExpressions();
+        if (null != expressions && hasTopLevelOr(expressions)) {
+            // 原条件包含 OR 时整体加括号, 避免与游标条件的优先级混淆
+            Where original = Where.where();
+            for (Expression<?> expression : expressions) {
+                original.appendExpression(expression);
+            }
+            expressions.clear();
+            where.and(original);
+        }
+        where.and(seek);
+    }
+
+    /**
+     * 游标取自排序字段的值, 排序字段必须被查询
+     */
+    @SuppressWarnings("unchecked")
+    private static void ensureProjected(Where where, SFunction<? extends PO, ?> func, LambdaFieldMeta meta) {
+        if (null != where.getExcludeFields()) {
+            for (SFunction<? extends PO, ?> excludeField : where.getExcludeFields()) {
+                if (LambdaFieldUtil.getField(excludeField).equals(meta.getField())) {
+                    throw new IllegalArgumentException("Keyset pagination sort field "
+                            + meta.getPoClass().getName() + "." + meta.getFieldName() + " cannot be excluded.");
+                }
+            }
+        }
+        if (null != where.getSelectFields()) {
+            for (SFunction<? extends PO, ?> selectField : where.getSelectFields()) {
+                if (LambdaFieldUtil.getField(selectField).equals(meta.getField())) {
+                    return;
+                }
+            }
+            where.select((SFunction<PO, ?>) func);
+        }
+    }
+
+    private static boolean hasTopLevelOr(List<Expression<?>> expressions) {
+        for (int i = 1; i < expressions.size(); i++) {
+            Expression<?> expression = expressions.get(i);
+            Link link = expression instanceof WhereExpression
+                    ? ((WhereExpression) expression).getLink()
+                    : ((ComparisonExpression<?>) expression).getLink();
+            if (link == Link.OR) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String encode(PO record, List<LambdaFieldMeta> sortMetas) {
+        String[] values = new String[sortMetas.size()];
+        for (int i = 0; i < values.length; i++) {
+            LambdaFieldMeta sortMeta = sortMetas.get(i);
+            Object value = MapperUtil.getFieldValue(record, sortMeta.getFieldName());
+            if (null == value) {
+                throw new IllegalStateException("Keyset pagination requires non-null sort values, but "
+                        + sortMeta.getPoClass().getName() + "." + sortMeta.getFieldName() + " is null.");
+            }
+            values[i] = SmartJsonTypeHandler.toJson(value);
+        }
+        String json = SmartJsonTypeHandler.toJson(values);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Object[] decode(String token, List<LambdaFieldMeta> sortMetas) {
+        String[] values;
+        try {
+            String json = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            values = SmartJsonTypeHandler.fromJson(json, String[].class);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid keyset pagination token: " + token, e);
+        }
+        if (null == values || values.length != sortMetas.size()) {
+            throw new IllegalArgumentException("The keyset pagination token does not match the sort fields: " + token);
+        }
+        Object[] result = new Object[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = SmartJsonTypeHandler.fromJson(values[i], sortMetas.get(i).getField().getGenericType());
+        }
+        return result;
+    }
+}
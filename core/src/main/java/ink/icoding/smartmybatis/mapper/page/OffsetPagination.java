@@ -0,0 +1,186 @@
+package ink.icoding.smartmybatis.mapper.page;
+
+import ink.icoding.smartmybatis.conf.Dialect;
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.Page;
+import ink.icoding.smartmybatis.entity.PageResult;
+import ink.icoding.smartmybatis.entity.TotalStrategy;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.batch.SmartBatchExecutor;
+import ink.icoding.smartmybatis.mapper.cache.TableVersions;
+import ink.icoding.smartmybatis.mapper.provider.BaseSqlProvider;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 页码分页
+ * 按 Page 中的统计策略获取总记录数: 精确统计、按条件缓存、优化器估算或不统计.
+ * 缓存的总记录数记录统计时所涉及表的版本, 表被写入后版本变化, 缓存失效
+ * @author gsk
+ */
+public final class OffsetPagination {
+
+    /**
+     * 缓存的总记录数最大条数, 超出时先清理过期条目, 仍超出则全部清空
+     */
+    private static final int MAX_CACHED_TOTALS = 4096;
+
+    private static final Map<String, CachedTotal> CACHED_TOTALS = new ConcurrentHashMap<>();
+
+    private OffsetPagination() {
+    }
+
+    /**
+     * 分页查询
+     * @param mapper Mapper 实例
+     * @param where 查询条件
+     * @param page 分页信息
+     * @return 分页结果
+     */
+    public static <T extends PO> PageResult<T> selectPage(SmartMapper<T> mapper, Where where, Page page) {
+        if (null == where) {
+            where = Where.where();
+        }
+        TotalStrategy strategy = null == page.getTotalStrategy() ? TotalStrategy.EXACT : page.getTotalStrategy();
+        GlobalConfig config = SmartConfigHolder.config();
+        if (strategy == TotalStrategy.ESTIMATED && null != config && config.getDialect() != Dialect.MYSQL) {
+            strategy = TotalStrategy.EXACT;
+        }
+        int offset = (page.getPage() - 1) * page.getPageSize();
+        if (strategy == TotalStrategy.EXACT) {
+            long total = mapper.count(where);
+            List<T> list = mapper.select(where.limit(offset, page.getPageSize()));
+            return new PageResult<>(list, total, page.getPage(), page.getPageSize());
+        }
+
+        long total;
+        switch (strategy) {
+            case CACHED:
+                total = cachedCount(mapper, where, config);
+                break;
+            case ESTIMATED:
+                total = estimatedCount(mapper, where);
+                break;
+            default:
+                total = -1;
+                break;
+        }
+        // 总记录数不精确或未统计, 多查一条判断是否还有下一页
+        List<T> list = mapper.select(where.limit(offset, page.getPageSize() + 1));
+        boolean hasNext = list.size() > page.getPageSize();
+        if (hasNext) {
+            list = new ArrayList<>(list.subList(0, page.getPageSize()));
+        }
+        return new PageResult<>(list, total, page.getPage(), page.getPageSize(), hasNext, strategy);
+    }
+
+    /**
+     * 清空缓存的总记录数
+     */
+    public static void clearCachedTotals() {
+        CACHED_TOTALS.clear();
+    }
+
+    private static <T extends PO> long cachedCount(SmartMapper<T> mapper, Where where, GlobalConfig config) {
+        long ttlMillis = (null == config ? 60 : config.getPageTotalCacheSeconds()) * 1000L;
+        if (ttlMillis <= 0) {
+            return mapper.count(where);
+        }
+        // 首次使用时开始追踪表版本, 此时正在执行的写入可能未递增版本, 由缓存有效期兜底
+        TableVersions.enableTracking();
+        Class<?> mapperInterface = SmartBatchExecutor.mapperInterfaceOf(mapper);
+        String key = BaseSqlProvider.fingerprintWithValues("countByWhere", mapperInterface, where);
+        String[] tables = TableVersions.tablesOf(TableVersions.tablesOf(MapperUtil.getMapperDeclaration(mapperInterface)), where);
+        // 统计前读取版本, 统计期间发生的写入会使该条缓存在下次读取时失效
+        long[] versions = TableVersions.versions(tables);
+        long now = System.currentTimeMillis();
+        CachedTotal cached = CACHED_TOTALS.get(key);
+        if (null != cached && cached.expiresAt > now && Arrays.equals(cached.versions, versions)) {
+            return cached.total;
+        }
+        long total = mapper.count(where);
+        if (CACHED_TOTALS.size() >= MAX_CACHED_TOTALS) {
+            CACHED_TOTALS.values().removeIf(entry -> entry.expiresAt <= now);
+            if (CACHED_TOTALS.size() >= MAX_CACHED_TOTALS) {
+                CACHED_TOTALS.clear();
+            }
+        }
+        CACHED_TOTALS.put(key, new CachedTotal(total, now + ttlMillis, versions));
+        return total;
+    }
+
+    /**
+     * 读取执行计划中驱动表的估算行数与过滤比例.
+     * 无条件的 COUNT(*) 常被优化为 "Select tables optimized away", 执行计划不含行数,
+     * 此时改用 information_schema 中的表行数估算, 仍取不到才精确统计
+     */
+    private static <T extends PO> long estimatedCount(SmartMapper<T> mapper, Where where) {
+        List<Map<String, Object>> plan = mapper.explainCount(where);
+        Object rows = null == plan || plan.isEmpty() ? null : plan.get(0).get("rows");
+        if (!(rows instanceof Number)) {
+            long tableRows = isUnfiltered(where) ? tableRows(mapper) : -1;
+            return tableRows >= 0 ? tableRows : mapper.count(where);
+        }
+        double estimate = ((Number) rows).doubleValue();
+        Object filtered = plan.get(0).get("filtered");
+        if (filtered instanceof Number) {
+            estimate = estimate * ((Number) filtered).doubleValue() / 100;
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 是否没有查询条件与关联, 只有这种情况表行数才能作为总记录数的估算
+     */
+    private static boolean isUnfiltered(Where where) {
+        return (null == where.getExpressions() || where.getExpressions().isEmpty())
+                && (null == where.getAliasMappings() || where.getAliasMappings().isEmpty());
+    }
+
+    /**
+     * 读取 information_schema.TABLES 中的估算行数
+     * @return 估算行数, 取不到时返回 -1
+     */
+    private static <T extends PO> long tableRows(SmartMapper<T> mapper) {
+        Class<?> mapperInterface = SmartBatchExecutor.mapperInterfaceOf(mapper);
+        String tableName = MapperUtil.getMapperDeclaration(mapperInterface).getTableName();
+        List<Map<String, Object>> result = mapper.queryBySql(
+                "SELECT TABLE_ROWS FROM information_schema.TABLES WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ?",
+                tableName);
+        if (null == result || result.isEmpty() || null == result.get(0)) {
+            return -1;
+        }
+        for (Map.Entry<String, Object> entry : result.get(0).entrySet()) {
+            if ("TABLE_ROWS".equalsIgnoreCase(entry.getKey()) && entry.getValue() instanceof Number) {
+                return ((Number) entry.getValue()).longValue();
+            }
+        }
+        return -1;
+    }
+
+    private static final class CachedTotal {
+
+        private final long total;
+
+        private final long expiresAt;
+
+        /**
+         * 统计时各表的版本
+         */
+        private final long[] versions;
+
+        private CachedTotal(long total, long expiresAt, long[] versions) {
+            this.total = total;
+            this.expiresAt = expiresAt;
+            this.versions = versions;
+        }
+    }
+}
@@ -1,11 +1,18 @@
 package ink.icoding.smartmybatis.mapper.provider;
 
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
 import ink.icoding.smartmybatis.entity.expression.*;
+import ink.icoding.smartmybatis.entity.po.LazyFieldTracker;
 import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.ID;
 import ink.icoding.smartmybatis.entity.po.enums.PrimaryGenerateType;
 import ink.icoding.smartmybatis.entity.po.enums.TableField;
+import ink.icoding.smartmybatis.mapper.segment.SegmentIdAllocator;
+import ink.icoding.smartmybatis.utils.LambdaFieldMeta;
 import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
 import ink.icoding.smartmybatis.utils.SnowflakeIdGeneratorUtil;
+import ink.icoding.smartmybatis.utils.UuidV7GeneratorUtil;
 import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
 import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
 import ink.icoding.smartmybatis.utils.entity.MapperUtil;
@@ -15,6 +22,9 @@ import org.springframework.util.StringUtils;
 import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 /**
  * 基础 SQL 提供者
@@ -22,6 +32,50 @@ import java.util.*;
  */
 public class BaseSqlProvider {
 
+    /**
+     * 已编译 SQL 缓存, MyBatis 每次调用都会新建 Provider 实例, 因此缓存为静态共享
+     */
+    private static final CompiledSqlCache SQL_CACHE = new CompiledSqlCache(CompiledSqlCache.DEFAULT_MAX_SIZE);
+
+    /**
+     * 各 Mapper 生成过的 SQL 形状, 以参数占位符替换为 ? 后的 SQL 文本区分, 与驱动预编译的语句一致
+     */
+    private static final Map<String, Set<String>> SQL_SHAPES = new ConcurrentHashMap<>();
+
+    private static final Pattern PARAMETER_PLACEHOLDER = Pattern.compile("#\\{[^}]*}");
+
+    /**
+     * 获取已编译 SQL 缓存, 可用于查看命中、未命中及淘汰次数
+     * @return 已编译 SQL 缓存
+     */
+    public static CompiledSqlCache getCompiledSqlCache() {
+        return SQL_CACHE;
+    }
+
+    /**
+     * 获取各 Mapper 生成过的不同 SQL 语句的数量, 以 SQL 文本区分, 可用于观察 IN 列表与批量写入产生的 SQL 形状
+     * @return Mapper 类名与 SQL 形状数量
+     */
+    public static Map<String, Integer> getSqlShapeCounts() {
+        Map<String, Integer> counts = new TreeMap<>();
+        SQL_SHAPES.forEach((mapperName, shapes) -> counts.put(mapperName, shapes.size()));
+        return counts;
+    }
+
+    /**
+     * 计算包含比较值的条件指纹, 指纹相同的条件查询结果相同, 可用于缓存记录数等查询结果
+     * @param statement
+     *      语句类型
+     * @param mapperType
+     *      Mapper 类型
+     * @param where
+     *      查询条件
+     * @return 指纹
+     */
+    public static String fingerprintWithValues(String statement, Class<?> mapperType, Where where) {
+        return WhereFingerprint.of(statement, mapperType, where, true);
+    }
+
     /**
      * 插入记录 SQL 语句生成
      * @param record
@@ -36,40 +90,9 @@ public class BaseSqlProvider {
         Class<?> mapperType = context.getMapperType();
         MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
 
-        // 构建主键
-        if (mapperDeclaration.getPkGenerateType() != PrimaryGenerateType.AUTO){
-            switch (mapperDeclaration.getPkGenerateType()){
-                case INPUT:
-                    // 如果主键是手动输入, 则插入主键字段
-                    Object pkValue = MapperUtil.getFieldValue(record, mapperDeclaration.getPkName());
-                    if (null == pkValue){
-                        throw new IllegalArgumentException(
-                                "Primary key value must be provided for INPUT generate type, but it is null. at "
-                                        + mapperDeclaration.getPoClass().getName());
-                    }
-                case UUID:
-                    MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                            UUID.randomUUID().toString().replace("-", ""));
-                case SNOWFLAKE:
-                    MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                            String.valueOf(SnowflakeIdGeneratorUtil.getInstance().nextId()));
-                    break;
-                case SNOWFLAKE_HEX:
-                    MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                            Long.toHexString(SnowflakeIdGeneratorUtil.getInstance().nextId()));
-                    break;
-                default:
-                    throw new IllegalArgumentException(
-                            "Unsupported primary key generate type: " + mapperDeclaration.getPkGenerateType()
-                                    + " at " + mapperDeclaration.getPoClass().getName());
-            }
-        }
-        String sql = mapperDeclaration.getBaseInsertSql();
-        if (null == sql){
-            mapperDeclaration.buildBaseSql();
-            sql = mapperDeclaration.getBaseInsertSql();
-        }
-        return sql;
+        // 构建主键, 分表时主键已由分表拦截器在路由前分配
+        assignPrimaryKey(record, mapperDeclaration, mapperDeclaration.isSharded());
+        return mapperDeclaration.getBaseInsertSql();
     }
 
     /**
@@ -99,36 +122,10 @@ public class BaseSqlProvider {
         // 添加主键列名
         sql.append("`").append(mapperDeclaration.getPkColumnName()).append("`) VALUES ");
 
+        // 构建主键, 分表时主键已由分表拦截器在路由前分配
+        assignPrimaryKeys(records, mapperDeclaration, mapperDeclaration.isSharded());
         int recordIndex = 0;
         for (PO record : records) {
-            // 构建主键
-            if (mapperDeclaration.getPkGenerateType() != PrimaryGenerateType.AUTO){
-                switch (mapperDeclaration.getPkGenerateType()){
-                    case INPUT:
-                        // 如果主键是手动输入, 则插入主键字段
-                        Object pkValue = MapperUtil.getFieldValue(record, mapperDeclaration.getPkName());
-                        if (null == pkValue){
-                            throw new IllegalArgumentException(
-                                    "Primary key value must be provided for INPUT generate type, but it is null. at "
-                                            + mapperDeclaration.getPoClass().getName());
-                        }
-                    case UUID:
-                        MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                                UUID.randomUUID().toString().replace("-", ""));
-                    case SNOWFLAKE:
-                        MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                                String.valueOf(SnowflakeIdGeneratorUtil.getInstance().nextId()));
-                        break;
-                    case SNOWFLAKE_HEX:
-                        MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
-                                Long.toHexString(SnowflakeIdGeneratorUtil.getInstance().nextId()));
-                        break;
-                    default:
-                        throw new IllegalArgumentException(
-                                "Unsupported primary key generate type: " + mapperDeclaration.getPkGenerateType()
-                                        + " at " + mapperDeclaration.getPoClass().getName());
-                }
-            }
             sql.append("(");
             // 添加列值
             for (ColumnDeclaration columnDeclaration : columnDeclarations) {
@@ -142,14 +139,87 @@ public class BaseSqlProvider {
                 }
             }
             // 添加主键列值
-            sql.append("#{list[").append(recordIndex).append("].")
-                    .append(mapperDeclaration.getPkName()).append("})");
+            sql.append(mapperDeclaration.pkPlaceholder("list[" + recordIndex + "]." + mapperDeclaration.getPkName()))
+                    .append(")");
             recordIndex++;
             if (recordIndex < records.size()) {
                 sql.append(", ");
             }
         }
-        return sql.toString();
+        return shape(mapperType, sql.toString());
+    }
+
+    /**
+     * 批量插入或更新记录 SQL 语句生成, 主键或唯一键冲突时更新指定列
+     * @param params
+     *      参数, list 为记录, updateColumns 为冲突时需要更新的字段名, 为空时更新全部列
+     * @param context
+     *      上下文
+     * @return SQL 语句
+     */
+    public String upsertBatch(Map<String, Object> params, ProviderContext context) {
+        @SuppressWarnings("unchecked")
+        Collection<PO> records = (Collection<PO>) params.get("list");
+        if (records == null || records.isEmpty()) {
+            throw new IllegalArgumentException("The records collection for upsert cannot be null or empty.");
+        }
+        @SuppressWarnings("unchecked")
+        Collection<String> updateFieldNames = (Collection<String>) params.get("updateColumns");
+        Class<?> mapperType = context.getMapperType();
+        MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
+        List<ColumnDeclaration> columnDeclarations = mapperDeclaration.getColumnDeclarations();
+
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO `").append(mapperDeclaration.getTableName()).append("` (");
+        for (ColumnDeclaration columnDeclaration : columnDeclarations) {
+            sql.append("`").append(columnDeclaration.getColumnName()).append("`, ");
+        }
+        sql.append("`").append(mapperDeclaration.getPkColumnName()).append("`) VALUES ");
+
+        // 已有主键的记录保留主键, 以便按主键匹配已有记录
+        assignPrimaryKeys(records, mapperDeclaration, true);
+        int recordIndex = 0;
+        for (PO record : records) {
+            sql.append("(");
+            for (ColumnDeclaration columnDeclaration : columnDeclarations) {
+                sql.append("#{list[").append(recordIndex).append("].").append(columnDeclaration.getFieldName());
+                if (columnDeclaration.isJson()){
+                    sql.append(", typeHandler=ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler");
+                }
+                sql.append("}, ");
+            }
+            sql.append(mapperDeclaration.pkPlaceholder("list[" + recordIndex + "]." + mapperDeclaration.getPkName()))
+                    .append(")");
+            recordIndex++;
+            if (recordIndex < records.size()) {
+                sql.append(", ");
+            }
+        }
+
+        sql.append(" ON DUPLICATE KEY UPDATE ");
+        boolean restricted = null != updateFieldNames && !updateFieldNames.isEmpty();
+        int updateCount = 0;
+        for (ColumnDeclaration columnDeclaration : columnDeclarations) {
+            if (restricted && !updateFieldNames.contains(columnDeclaration.getFieldName())) {
+                continue;
+            }
+            if (updateCount > 0) {
+                sql.append(", ");
+            }
+            sql.append("`").append(columnDeclaration.getColumnName()).append("` = VALUES(`")
+                    .append(columnDeclaration.getColumnName()).append("`)");
+            updateCount++;
+        }
+        if (restricted && updateCount != updateFieldNames.size()) {
+            throw new IllegalArgumentException("Unknown columns to update on duplicate key: " + updateFieldNames
+                    + " at " + mapperDeclaration.getPoClass().getName());
+        }
+        if (updateCount == 0) {
+            // 除主键外没有其他列, 冲突时保持原记录不变
+            sql.append("`").append(mapperDeclaration.getPkColumnName()).append("` = `")
+                    .append(mapperDeclaration.getPkColumnName()).append("`");
+        }
+        return shape(mapperType, sql.toString());
     }
 
     /**
@@ -160,12 +230,14 @@ public class BaseSqlProvider {
      */
     public String selectByWhere(Where where, ProviderContext context){
         Class<?> mapperType = context.getMapperType();
-        return buildSelectFields(MapperUtil.getMapperDeclaration(mapperType), where) + buildWherePart(where, false);
+        return compile("selectByWhere", mapperType, where, () ->
+                buildSelectFields(MapperUtil.getMapperDeclaration(mapperType), where) + buildWherePart(where, false));
     }
 
     public String selectWithRelationsByWhere(Where where, ProviderContext context){
         Class<?> mapperType = context.getMapperType();
-        return buildSelectFields(MapperUtil.getMapperDeclaration(mapperType), where, true) + buildWherePart(where, false);
+        return compile("selectWithRelationsByWhere", mapperType, where, () ->
+                buildSelectFields(MapperUtil.getMapperDeclaration(mapperType), where, true) + buildWherePart(where, false));
     }
 
     /**
@@ -176,11 +248,147 @@ public class BaseSqlProvider {
      */
     public String countByWhere(Where where, ProviderContext context) {
         Class<?> mapperType = context.getMapperType();
-        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
-        StringBuilder sql = new StringBuilder("SELECT COUNT(").append("_t.").append(declaration.getPkColumnName()).append(") AS ");
-        sql.append("`count` FROM `").append(declaration.getTableName()).append("`").append(" AS _t");
-        sql.append(buildWherePart(where, false));
-        return sql.toString();
+        return compile("countByWhere", mapperType, where, () -> {
+            MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
+            StringBuilder sql = new StringBuilder("SELECT COUNT(*) AS `count` FROM `")
+                    .append(declaration.getTableName()).append("`").append(" AS _t");
+            appendCountJoins(sql, where);
+            // 排序与分页不影响记录数, 不输出
+            sql.append(buildWherePart(where, false, null, false));
+            return sql.toString();
+        });
+    }
+
+    /**
+     * 根据 Where 条件生成统计记录数的执行计划 SQL 语句, 用于获取优化器估算的记录数
+     * @param where
+     *      查询条件
+     * @return SQL 语句
+     */
+    public String explainCountByWhere(Where where, ProviderContext context) {
+        return "EXPLAIN " + countByWhere(where, context);
+    }
+
+    /**
+     * 构建统计记录数所需的关联部分
+     * 条件中未引用, 且按被关联表主键等值关联(最多匹配一条)的 LEFT JOIN 不影响记录数, 直接省略
+     * @param sql
+     *      SQL 语句
+     * @param where
+     *      查询条件
+     */
+    private void appendCountJoins(StringBuilder sql, Where where) {
+        Map<String, AliasMapping<?>> aliasMappings = null == where ? null : where.getAliasMappings();
+        if (null == aliasMappings || aliasMappings.isEmpty()) {
+            return;
+        }
+        Map<String, String> aliasMappingMap = new HashMap<>();
+        for (AliasMapping<?> aliasMapping : aliasMappings.values()) {
+            aliasMappingMap.put(aliasMapping.getEntityClass().getName(), aliasMapping.getAlias());
+        }
+        Set<String> requiredAliases = new HashSet<>();
+        collectReferencedAliases(where, aliasMappingMap, requiredAliases);
+        // 保留的关联, 其 ON 条件引用的其他关联也需要保留
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (AliasMapping<?> aliasMapping : aliasMappings.values()) {
+                if (requiredAliases.contains(aliasMapping.getAlias()) || !isPrunableJoin(aliasMapping)) {
+                    int before = requiredAliases.size();
+                    requiredAliases.add(aliasMapping.getAlias());
+                    collectReferencedAliases(aliasMapping.getOnWhere(), aliasMappingMap, requiredAliases);
+                    changed |= requiredAliases.size() != before;
+                }
+            }
+        }
+        for (AliasMapping<?> aliasMapping : aliasMappings.values()) {
+            if (!requiredAliases.contains(aliasMapping.getAlias())) {
+                continue;
+            }
+            MapperDeclaration declaration = MapperUtil.getMapperDeclarationByPoClass(aliasMapping.getEntityClass());
+            sql.append(" ").append(aliasMapping.getType())
+                    .append(" ").append("`").append(declaration.getTableName()).append("`")
+                    .append(" ").append(aliasMapping.getAlias());
+            Where onWhere = aliasMapping.getOnWhere();
+            if (null != onWhere){
+                onWhere.setAliasMappings(aliasMappings);
+                sql.append(" ").append(buildWherePart(onWhere, true));
+            }
+        }
+    }
+
+    /**
+     * 收集条件中引用到的关联别名
+     */
+    private void collectReferencedAliases(Where where, Map<String, String> aliasMappingMap, Set<String> aliases) {
+        if (null == where || null == where.getExpressions()) {
+            return;
+        }
+        for (Expression<?> expression : where.getExpressions()) {
+            if (expression instanceof WhereExpression) {
+                collectReferencedAliases(((WhereExpression) expression).getWhere(), aliasMappingMap, aliases);
+                continue;
+            }
+            ComparisonExpression<?> comparisonExpression = (ComparisonExpression<?>) expression;
+            collectReferencedAlias(LambdaFieldUtil.resolve(comparisonExpression.getFunc()), aliasMappingMap, aliases);
+            if (comparisonExpression.getValue() instanceof SFunction) {
+                collectReferencedAlias(LambdaFieldUtil.resolve((SFunction<? extends PO, ?>) comparisonExpression.getValue()),
+                        aliasMappingMap, aliases);
+            }
+        }
+    }
+
+    private void collectReferencedAlias(LambdaFieldMeta fieldMeta, Map<String, String> aliasMappingMap, Set<String> aliases) {
+        String alias = aliasMappingMap.get(fieldMeta.getPoClass().getName());
+        if (null == alias) {
+            // 非数据库字段通过 link 指向关联表
+            TableField tableField = fieldMeta.getField().getAnnotation(TableField.class);
+            if (tableField != null && !tableField.exist() && tableField.link() != PO.class) {
+                alias = aliasMappingMap.get(tableField.link().getName());
+            }
+        }
+        if (null != alias) {
+            aliases.add(alias);
+        }
+    }
+
+    /**
+     * 判断关联是否可以在统计记录数时省略: LEFT JOIN, ON 条件全部以 AND 连接, 且包含被关联表主键的等值条件
+     */
+    private boolean isPrunableJoin(AliasMapping<?> aliasMapping) {
+        if (!"LEFT JOIN".equalsIgnoreCase(aliasMapping.getType())) {
+            return false;
+        }
+        Where onWhere = aliasMapping.getOnWhere();
+        if (null == onWhere || null == onWhere.getExpressions()) {
+            return false;
+        }
+        MapperDeclaration declaration = MapperUtil.getMapperDeclarationByPoClass(aliasMapping.getEntityClass());
+        boolean pkEquals = false;
+        for (Expression<?> expression : onWhere.getExpressions()) {
+            if (!(expression instanceof ComparisonExpression)) {
+                return false;
+            }
+            ComparisonExpression<?> comparisonExpression = (ComparisonExpression<?>) expression;
+            if (comparisonExpression.getLink() == Link.OR) {
+                return false;
+            }
+            C comparison = comparisonExpression.getComparison();
+            if ((comparison != C.EQ && comparison != C.equals) || null == comparisonExpression.getValue()) {
+                continue;
+            }
+            pkEquals |= isPrimaryKeyOf(LambdaFieldUtil.resolve(comparisonExpression.getFunc()), declaration);
+            if (comparisonExpression.getValue() instanceof SFunction) {
+                pkEquals |= isPrimaryKeyOf(LambdaFieldUtil.resolve(
+                        (SFunction<? extends PO, ?>) comparisonExpression.getValue()), declaration);
+            }
+        }
+        return pkEquals;
+    }
+
+    private boolean isPrimaryKeyOf(LambdaFieldMeta fieldMeta, MapperDeclaration declaration) {
+        return fieldMeta.getPoClass() == declaration.getPoClass()
+                && fieldMeta.getFieldName().equals(declaration.getPkName());
     }
 
     /**
@@ -192,7 +400,35 @@ public class BaseSqlProvider {
     public String selectByPrimaryKey(Serializable id, ProviderContext context) {
         Class<?> mapperType = context.getMapperType();
         MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
-        return buildSelectFields(declaration, null) + " WHERE _t.`" + declaration.getPkColumnName() + "` = #{id}";
+        return buildSelectFields(declaration, null) + " WHERE _t.`" + declaration.getPkColumnName() + "` = " + declaration.pkPlaceholder("id");
+    }
+
+    /**
+     * 根据主键集合生成查询 SQL 语句, 相同主键个数复用缓存的 SQL
+     * @param params
+     *      参数, ids 为主键集合
+     * @return SQL 语句
+     */
+    public String selectByIds(Map<String, Object> params, ProviderContext context) {
+        Collection<?> ids = idList(params);
+        if (ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("The ids to select cannot be null or empty.");
+        }
+        Class<?> mapperType = context.getMapperType();
+        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
+        int size = ids.size();
+        return compile(mapperType, "selectByIds|" + mapperType.getName() + '|' + size, () -> {
+            StringBuilder sql = new StringBuilder(buildSelectFields(declaration, null))
+                    .append(" WHERE _t.`").append(declaration.getPkColumnName()).append("` IN (");
+            for (int i = 0; i < size; i++) {
+                sql.append(declaration.pkPlaceholder("ids[" + i + "]"));
+                if (i < size - 1) {
+                    sql.append(", ");
+                }
+            }
+            sql.append(")");
+            return sql.toString();
+        });
     }
 
     /**
@@ -226,7 +462,7 @@ public class BaseSqlProvider {
         MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
         return "DELETE FROM `" +
                 declaration.getTableName() + "` AS _t WHERE _t.`" +
-                declaration.getPkColumnName() + "` = #{id}";
+                declaration.getPkColumnName() + "` = " + declaration.pkPlaceholder("id");
     }
 
     /**
@@ -244,13 +480,13 @@ public class BaseSqlProvider {
                 .append(declaration.getPkColumnName())
                 .append("` IN (");
         for (int i = 0; i < ids.size(); i++) {
-            sql.append("#{ids[").append(i).append("]}");
+            sql.append(declaration.pkPlaceholder("ids[" + i + "]"));
             if (i < ids.size() - 1) {
                 sql.append(", ");
             }
         }
         sql.append(")");
-        return sql.toString();
+        return shape(mapperType, sql.toString());
     }
 
     /**
@@ -261,11 +497,13 @@ public class BaseSqlProvider {
      */
     public String deleteByWhere(Where where, ProviderContext context) {
         Class<?> mapperType = context.getMapperType();
-        MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
-        StringBuilder sql = new StringBuilder("DELETE FROM `")
-                .append(declaration.getTableName()).append("`").append(" AS _t");
-        sql.append(buildWherePart(where, false));
-        return sql.toString();
+        return compile("deleteByWhere", mapperType, where, () -> {
+            MapperDeclaration declaration = MapperUtil.getMapperDeclaration(mapperType);
+            StringBuilder sql = new StringBuilder("DELETE FROM `")
+                    .append(declaration.getTableName()).append("`").append(" AS _t");
+            sql.append(buildWherePart(where, false));
+            return sql.toString();
+        });
     }
 
     /**
@@ -275,32 +513,386 @@ public class BaseSqlProvider {
      * @return SQL 语句
      */
     public String updateById(Map<String, Object> params, ProviderContext context) {
+        Class<?> mapperType = context.getMapperType();
+        MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
         PO record = (PO) params.get("record");
+        List<String> skipped = null == record ? Collections.emptyList() : LazyFieldTracker.skippedFields(record);
+        if (!skipped.isEmpty()) {
+            // 查询时未加载的列(懒加载列及投影之外的列)保持原值, 其余列全部更新
+            List<String> fieldNames = new ArrayList<>();
+            for (ColumnDeclaration columnDeclaration : mapperDeclaration.getColumnDeclarations()) {
+                if (!skipped.contains(columnDeclaration.getFieldName())) {
+                    fieldNames.add(columnDeclaration.getFieldName());
+                }
+            }
+            Map<String, Object> columnParams = new HashMap<>(params);
+            columnParams.put("columns", fieldNames);
+            return updateColumnsById(columnParams, context);
+        }
+        return mapperDeclaration.getBaseUpdateByIdSql();
+    }
+
+    /**
+     * 取出参数中的主键集合. #{ids[i]} 按下标取值只支持 List, Set 等其他集合复制为 List 后放回参数, 绑定时使用复制的 List
+     * @param params
+     *      参数, ids 为主键集合
+     * @return 主键列表
+     */
+    private static List<?> idList(Map<String, Object> params) {
+        Object ids = params.get("ids");
+        if (null == ids || ids instanceof List) {
+            return (List<?>) ids;
+        }
+        List<Object> list = new ArrayList<>((Collection<?>) ids);
+        params.put("ids", list);
+        return list;
+    }
+
+    /**
+     * 根据主键生成查询指定字段的 SQL 语句, 用于加载懒加载列, 结果只包含主键与指定字段
+     * @param params
+     *      参数, ids 为主键集合, columns 为需要查询的字段名
+     * @return SQL 语句
+     */
+    public String selectColumnsByIds(Map<String, Object> params, ProviderContext context) {
+        @SuppressWarnings("unchecked")
+        Collection<String> fieldNames = (Collection<String>) params.get("columns");
+        Collection<?> ids = idList(params);
+        if (fieldNames == null || fieldNames.isEmpty() || ids == null || ids.isEmpty()) {
+            throw new IllegalArgumentException("The ids and columns to select cannot be null or empty.");
+        }
+        Class<?> mapperType = context.getMapperType();
+        MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
+        List<ColumnDeclaration> columnDeclarations = new ArrayList<>(fieldNames.size());
+        StringBuilder key = new StringBuilder("selectColumnsByIds|").append(mapperType.getName()).append('|');
+        for (ColumnDeclaration columnDeclaration : mapperDeclaration.getColumnDeclarations()) {
+            if (fieldNames.contains(columnDeclaration.getFieldName())) {
+                columnDeclarations.add(columnDeclaration);
+                key.append(columnDeclaration.getFieldName()).append(',');
+            }
+        }
+        if (columnDeclarations.size() != fieldNames.size()) {
+            throw new IllegalArgumentException("Unknown columns to select: " + fieldNames
+                    + " at " + mapperDeclaration.getPoClass().getName());
+        }
+        key.append('|').append(ids.size());
+        return compile(mapperType, key.toString(), () -> {
+            StringBuilder sql = new StringBuilder("SELECT ");
+            for (ColumnDeclaration columnDeclaration : columnDeclarations) {
+                sql.append("_t.`").append(columnDeclaration.getColumnName()).append("` AS ")
+                        .append(columnDeclaration.getFieldName()).append(", ");
+            }
+            sql.append("_t.`").append(mapperDeclaration.getPkColumnName()).append("` AS ")
+                    .append(mapperDeclaration.getPkName())
+                    .append(" FROM `").append(mapperDeclaration.getTableName()).append("` AS _t WHERE _t.`")
+                    .append(mapperDeclaration.getPkColumnName()).append("` IN (");
+            for (int i = 0; i < ids.size(); i++) {
+                sql.append(mapperDeclaration.pkPlaceholder("ids[" + i + "]"));
+                if (i < ids.size() - 1) {
+                    sql.append(", ");
+                }
+            }
+            sql.append(")");
+            return sql.toString();
+        });
+    }
+
+    /**
+     * 根据主键生成只更新指定字段的 SQL 语句, 字段按列声明顺序输出, 相同字段组合复用缓存的 SQL
+     * @param params
+     *      参数, record 为记录, columns 为需要更新的字段名
+     * @return SQL 语句
+     */
+    public String updateColumnsById(Map<String, Object> params, ProviderContext context) {
+        @SuppressWarnings("unchecked")
+        Collection<String> fieldNames = (Collection<String>) params.get("columns");
+        if (fieldNames == null || fieldNames.isEmpty()) {
+            throw new IllegalArgumentException("The columns to update cannot be null or empty.");
+        }
+        Class<?> mapperType = context.getMapperType();
+        MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
+        List<ColumnDeclaration> columnDeclarations = new ArrayList<>(fieldNames.size());
+        StringBuilder key = new StringBuilder("updateColumnsById|").append(mapperType.getName()).append('|');
+        for (ColumnDeclaration columnDeclaration : mapperDeclaration.getColumnDeclarations()) {
+            if (fieldNames.contains(columnDeclaration.getFieldName())) {
+                columnDeclarations.add(columnDeclaration);
+                key.append(columnDeclaration.getFieldName()).append(',');
+            }
+        }
+        if (columnDeclarations.size() != fieldNames.size()) {
+            throw new IllegalArgumentException("Unknown columns to update: " + fieldNames
+                    + " at " + mapperDeclaration.getPoClass().getName());
+        }
+        return compile(mapperType, key.toString(), () -> {
+            StringBuilder sql = new StringBuilder("UPDATE `")
+                    .append(mapperDeclaration.getTableName())
+                    .append("` SET ");
+            for (int i = 0; i < columnDeclarations.size(); i++) {
+                ColumnDeclaration columnDeclaration = columnDeclarations.get(i);
+                sql.append("`").append(columnDeclaration.getColumnName()).append("` = #{record.")
+                        .append(columnDeclaration.getFieldName());
+                if (columnDeclaration.isJson()){
+                    sql.append(", typeHandler=ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler");
+                }
+                sql.append("}");
+                if (i < columnDeclarations.size() - 1) {
+                    sql.append(", ");
+                }
+            }
+            sql.append(" WHERE `").append(mapperDeclaration.getPkColumnName())
+                    .append("` = ").append(mapperDeclaration.pkPlaceholder("record." + mapperDeclaration.getPkName()));
+            return sql.toString();
+        });
+    }
+
+    /**
+     * 根据主键批量更新记录 SQL 语句生成, 每列生成一个 CASE 主键 WHEN 分支
+     * @param params
+     *      参数
+     * @param context
+     *      上下文
+     * @return SQL 语句
+     */
+    public String updateBatchById(Map<String, Object> params, ProviderContext context) {
+        @SuppressWarnings("unchecked")
+        Collection<PO> records = (Collection<PO>) params.get("list");
+        if (records == null || records.isEmpty()) {
+            throw new IllegalArgumentException("The records collection for batch update cannot be null or empty.");
+        }
         Class<?> mapperType = context.getMapperType();
         MapperDeclaration mapperDeclaration = MapperUtil.getMapperDeclaration(mapperType);
+        String pkColumn = "`" + mapperDeclaration.getPkColumnName() + "`";
+        String pkName = mapperDeclaration.getPkName();
+        int size = records.size();
+        List<List<String>> skipped = new ArrayList<>(size);
+        for (PO record : records) {
+            skipped.add(LazyFieldTracker.skippedFields(record));
+        }
+
         StringBuilder sql = new StringBuilder("UPDATE `")
                 .append(mapperDeclaration.getTableName())
                 .append("` SET ");
         List<ColumnDeclaration> columnDeclarations = mapperDeclaration.getColumnDeclarations();
         for (int i = 0; i < columnDeclarations.size(); i++) {
             ColumnDeclaration columnDeclaration = columnDeclarations.get(i);
-            if (columnDeclaration.isJson()){
-                sql.append("`").append(columnDeclaration.getColumnName()).append("` = #{record.")
-                        .append(columnDeclaration.getFieldName())
-                        .append(", typeHandler=ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler}");
-            }else{
-                sql.append("`").append(columnDeclaration.getColumnName()).append("` = #{record.")
-                        .append(columnDeclaration.getFieldName()).append("}");
+            sql.append("`").append(columnDeclaration.getColumnName()).append("` = CASE ").append(pkColumn);
+            for (int recordIndex = 0; recordIndex < size; recordIndex++) {
+                sql.append(" WHEN ").append(mapperDeclaration.pkPlaceholder("list[" + recordIndex + "]." + pkName))
+                        .append(" THEN ");
+                if (skipped.get(recordIndex).contains(columnDeclaration.getFieldName())) {
+                    // 查询时未加载的列保持原值
+                    sql.append("`").append(columnDeclaration.getColumnName()).append("`");
+                    continue;
+                }
+                sql.append("#{list[").append(recordIndex).append("].").append(columnDeclaration.getFieldName());
+                if (columnDeclaration.isJson()){
+                    sql.append(", typeHandler=ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler");
+                }
+                sql.append("}");
             }
+            sql.append(" END");
             if (i < columnDeclarations.size() - 1) {
                 sql.append(", ");
             }
         }
-        sql.append(" WHERE `").append(mapperDeclaration.getPkColumnName())
-                .append("` = #{record.").append(mapperDeclaration.getPkName()).append("}");
-        return sql.toString();
+        sql.append(" WHERE ").append(pkColumn).append(" IN (");
+        for (int recordIndex = 0; recordIndex < size; recordIndex++) {
+            sql.append(mapperDeclaration.pkPlaceholder("list[" + recordIndex + "]." + pkName));
+            if (recordIndex < size - 1) {
+                sql.append(", ");
+            }
+        }
+        sql.append(")");
+        return shape(mapperType, sql.toString());
+    }
+
+    /**
+     * 按主键生成策略为记录填充主键
+     * @param record
+     *      记录
+     * @param mapperDeclaration
+     *      映射声明
+     */
+    static void assignPrimaryKey(PO record, MapperDeclaration mapperDeclaration) {
+        assignPrimaryKey(record, mapperDeclaration, false);
+    }
+
+    /**
+     * 按主键生成策略为记录填充主键
+     * @param record
+     *      记录
+     * @param mapperDeclaration
+     *      映射声明
+     * @param keepExisting
+     *      记录已有主键时是否保留, 用于插入或更新时按主键匹配已有记录
+     */
+    static void assignPrimaryKey(PO record, MapperDeclaration mapperDeclaration, boolean keepExisting) {
+        if (keepExisting && null != MapperUtil.getFieldValue(record, mapperDeclaration.getPkName())) {
+            return;
+        }
+        switch (mapperDeclaration.getPkGenerateType()){
+            case AUTO:
+                break;
+            case INPUT:
+                // 如果主键是手动输入, 则插入主键字段
+                Object pkValue = MapperUtil.getFieldValue(record, mapperDeclaration.getPkName());
+                if (null == pkValue){
+                    throw new IllegalArgumentException(
+                            "Primary key value must be provided for INPUT generate type, but it is null. at "
+                                    + mapperDeclaration.getPoClass().getName());
+                }
+                break;
+            case UUID:
+                MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
+                        UUID.randomUUID().toString().replace("-", ""));
+                break;
+            case SNOWFLAKE:
+                MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
+                        String.valueOf(SnowflakeIdGeneratorUtil.getInstance().nextId()));
+                break;
+            case SNOWFLAKE_HEX:
+                MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(),
+                        Long.toHexString(SnowflakeIdGeneratorUtil.getInstance().nextId()));
+                break;
+            case UUID_V7:
+                MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(), uuidV7(mapperDeclaration.getPkClass()));
+                break;
+            case SEGMENT:
+                MapperUtil.setFieldValue(record, mapperDeclaration.getPkName(), MapperUtil.normalizeId(
+                        SegmentIdAllocator.of(mapperDeclaration).nextId(), mapperDeclaration.getPkClass()));
+                break;
+            default:
+                throw new IllegalArgumentException(
+                        "Unsupported primary key generate type: " + mapperDeclaration.getPkGenerateType()
+                                + " at " + mapperDeclaration.getPoClass().getName());
+        }
+    }
+
+    /**
+     * 按主键字段类型生成 UUIDv7
+     */
+    private static Object uuidV7(Class<?> pkClass) {
+        if (pkClass == UUID.class) {
+            return UuidV7GeneratorUtil.next();
+        }
+        return UuidV7GeneratorUtil.nextHex();
+    }
+
+    /**
+     * 条件取值占位符的附加参数, BINARY(16) 存储的 UUID 主键需指定类型处理器
+     * @param field 条件字段
+     * @return 占位符附加参数, 无需附加时为空字符串
+     */
+    private static String valueTypeHandler(Field field) {
+        ID id = field.getAnnotation(ID.class);
+        if (null != id && MapperDeclaration.isBinaryPk(id.generateType(), field.getType())) {
+            return ", typeHandler=" + MapperDeclaration.UUID_BINARY_TYPE_HANDLER;
+        }
+        return "";
+    }
+
+    /**
+     * 按主键生成策略为一批记录填充主键, 雪花算法与号段一次预留整批 ID
+     * @param records
+     *      记录
+     * @param mapperDeclaration
+     *      映射声明
+     * @param keepExisting
+     *      记录已有主键时是否保留
+     */
+    public static void assignPrimaryKeys(Collection<? extends PO> records, MapperDeclaration mapperDeclaration, boolean keepExisting) {
+        PrimaryGenerateType generateType = mapperDeclaration.getPkGenerateType();
+        if (generateType != PrimaryGenerateType.SNOWFLAKE && generateType != PrimaryGenerateType.SNOWFLAKE_HEX
+                && generateType != PrimaryGenerateType.SEGMENT) {
+            for (PO record : records) {
+                assignPrimaryKey(record, mapperDeclaration, keepExisting);
+            }
+            return;
+        }
+        List<PO> pending = new ArrayList<>(records.size());
+        for (PO record : records) {
+            if (!keepExisting || null == MapperUtil.getFieldValue(record, mapperDeclaration.getPkName())) {
+                pending.add(record);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (generateType == PrimaryGenerateType.SEGMENT) {
+            long[] ids = SegmentIdAllocator.of(mapperDeclaration).nextIds(pending.size());
+            for (int i = 0; i < ids.length; i++) {
+                MapperUtil.setFieldValue(pending.get(i), mapperDeclaration.getPkName(),
+                        MapperUtil.normalizeId(ids[i], mapperDeclaration.getPkClass()));
+            }
+            return;
+        }
+        long[] ids = SnowflakeIdGeneratorUtil.getInstance().nextIds(pending.size());
+        for (int i = 0; i < ids.length; i++) {
+            MapperUtil.setFieldValue(pending.get(i), mapperDeclaration.getPkName(),
+                    generateType == PrimaryGenerateType.SNOWFLAKE ? String.valueOf(ids[i]) : Long.toHexString(ids[i]));
+        }
+    }
+
+    /**
+     * 从已编译 SQL 缓存中获取 SQL, 未命中时构建并缓存
+     * @param statement
+     *      语句类型
+     * @param mapperType
+     *      Mapper 类型
+     * @param where
+     *      查询条件
+     * @param builder
+     *      SQL 构建器
+     * @return SQL 语句
+     */
+    private static String compile(String statement, Class<?> mapperType, Where where, Supplier<String> builder) {
+        Supplier<String> shapedBuilder = () -> shape(mapperType, builder.get());
+        if (!sqlCacheEnabled()) {
+            return shapedBuilder.get();
+        }
+        return SQL_CACHE.get(WhereFingerprint.of(statement, mapperType, where), shapedBuilder);
+    }
+
+    /**
+     * 以指定的键从已编译 SQL 缓存中获取 SQL, 未命中时构建并缓存
+     * @param mapperType
+     *      Mapper 类型
+     * @param key
+     *      缓存键, 需完整描述 SQL 结构
+     * @param builder
+     *      SQL 构建器
+     * @return SQL 语句
+     */
+    private static String compile(Class<?> mapperType, String key, Supplier<String> builder) {
+        Supplier<String> shapedBuilder = () -> shape(mapperType, builder.get());
+        if (!sqlCacheEnabled()) {
+            return shapedBuilder.get();
+        }
+        return SQL_CACHE.get(key, shapedBuilder);
     }
 
+    /**
+     * 记录 Mapper 生成的 SQL 形状
+     * @param mapperType
+     *      Mapper 类型
+     * @param sql
+     *      SQL 语句
+     * @return SQL 语句
+     */
+    private static String shape(Class<?> mapperType, String sql) {
+        SQL_SHAPES.computeIfAbsent(mapperType.getName(), k -> ConcurrentHashMap.newKeySet())
+                .add(PARAMETER_PLACEHOLDER.matcher(sql).replaceAll("?"));
+        return sql;
+    }
+
+    private static boolean sqlCacheEnabled() {
+        GlobalConfig config = SmartConfigHolder.config();
+        int maxSize = null == config ? CompiledSqlCache.DEFAULT_MAX_SIZE : config.getSqlCacheSize();
+        if (maxSize != SQL_CACHE.getMaxSize()) {
+            SQL_CACHE.setMaxSize(maxSize);
+        }
+        return maxSize > 0;
+    }
 
     /**
      * 构建 Where 部分 SQL 语句
@@ -319,6 +911,18 @@ public class BaseSqlProvider {
      * @return Where 部分 SQL 语句
      */
     private String buildWherePart(Where where, boolean inOn, String parentParamPrefix) {
+        return buildWherePart(where, inOn, parentParamPrefix, true);
+    }
+
+    /**
+     * 构建 Where 部分 SQL 语句
+     * @param where
+     *      查询条件表达式列表
+     * @param withOrderAndLimit
+     *      是否输出排序与分页, 统计记录数时不需要
+     * @return Where 部分 SQL 语句
+     */
+    private String buildWherePart(Where where, boolean inOn, String parentParamPrefix, boolean withOrderAndLimit) {
         if (null == where){
             return "";
         }
@@ -326,7 +930,7 @@ public class BaseSqlProvider {
             parentParamPrefix = "";
         }
         List<Expression<?>> expressions = where.getExpressions();
-        int limitSize = where.getLimitSize();
+        int limitSize = withOrderAndLimit ? where.getLimitSize() : 0;
         if ((null == expressions || expressions.isEmpty()) && limitSize == 0){
             return "";
         }
@@ -346,7 +950,8 @@ public class BaseSqlProvider {
                     WhereExpression whereExpression = (WhereExpression) expression;
                     Where subWhere = whereExpression.getWhere();
                     subWhere.setAliasMappings(aliasMappings);
-                    String subWhereSql = buildWherePart(subWhere, false, parentParamPrefix + "expressions[" + i + "].where.");
+                    String subWhereSql = buildWherePart(subWhere, false, parentParamPrefix + "expressions[" + i + "].where.",
+                            withOrderAndLimit);
                     if (subWhereSql.isEmpty()){
                         continue;
                     }
@@ -365,18 +970,18 @@ public class BaseSqlProvider {
                 if (null != link && i > 0) {
                     wherePart.append(" ").append(link.name()).append(" ");
                 }
-                SFunction<? extends PO, ?> func = comparisonExpression.getFunc();
-                Field field = LambdaFieldUtil.getField(func);
-                Class<? extends PO> poClass = LambdaFieldUtil.getPoClass(func);
+                LambdaFieldMeta fieldMeta = LambdaFieldUtil.resolve(comparisonExpression.getFunc());
+                Field field = fieldMeta.getField();
+                Class<? extends PO> poClass = fieldMeta.getPoClass();
                 C comparison = comparisonExpression.getComparison();
                 String alias = aliasMappingMap.getOrDefault(poClass.getName(), "_t");
 
-                String fieldSqlRef = resolveFieldSqlRef(where, field, poClass, aliasMappingMap);
+                String fieldSqlRef = resolveFieldSqlRef(where, fieldMeta, aliasMappingMap);
                 if (StringUtils.hasText(fieldSqlRef)) {
                     wherePart.append(" ").append(fieldSqlRef).append(" ");
                 } else {
                     wherePart.append(" ").append(alias).append(".").append("`")
-                            .append(MapperUtil.getColumnDeclaration(field).getColumnName()).append("` ");
+                            .append(fieldMeta.getColumnDeclaration().getColumnName()).append("` ");
                 }
                 Object value = comparisonExpression.getValue();
                 if (null == value){
@@ -395,13 +1000,11 @@ public class BaseSqlProvider {
                 wherePart.append(comparison.value()).append(" ");
 
                 if (value instanceof SFunction){
-                    SFunction<? extends PO, ?> valueFunc = (SFunction<? extends PO, ?>) value;
-                    Field valueField = LambdaFieldUtil.getField(valueFunc);
-                    Class<? extends PO> valuePoClass = LambdaFieldUtil.getPoClass(valueFunc);
-                    String valueRef = resolveFieldSqlRef(where, valueField, valuePoClass, aliasMappingMap);
+                    LambdaFieldMeta valueMeta = LambdaFieldUtil.resolve((SFunction<? extends PO, ?>) value);
+                    String valueRef = resolveFieldSqlRef(where, valueMeta, aliasMappingMap);
                     if (!StringUtils.hasText(valueRef)) {
-                        ColumnDeclaration valueColumnDeclaration = MapperUtil.getColumnDeclaration(valueField);
-                        String valueAlias = aliasMappingMap.getOrDefault(valuePoClass.getName(), "_t");
+                        ColumnDeclaration valueColumnDeclaration = valueMeta.getColumnDeclaration();
+                        String valueAlias = aliasMappingMap.getOrDefault(valueMeta.getPoClass().getName(), "_t");
                         valueRef = valueAlias + ".`" + valueColumnDeclaration.getColumnName() + "`";
                     }
                     wherePart.append(valueRef).append(" ");
@@ -438,22 +1041,27 @@ public class BaseSqlProvider {
                             comparisonExpression.setValue(value);
                         }
                     }
-                    Collection<?> valueList = (Collection<?>) value;
-                    for (int cl = 0; cl < valueList.size(); cl++) {
+                    int valueSize = ((Collection<?>) value).size();
+                    // 开启分桶时重复绑定最后一个值补齐到分桶大小, 不修改调用方的取值列表
+                    int placeholderSize = StatementBuckets.enabled() ? StatementBuckets.bucketSize(valueSize) : valueSize;
+                    for (int cl = 0; cl < placeholderSize; cl++) {
                         wherePart.append("#{").append(parentParamPrefix).append("expressions[").append(i)
-                                .append("].value[").append(cl).append("]}");
-                        if (cl < valueList.size() - 1) {
+                                .append("].value[").append(Math.min(cl, valueSize - 1)).append("]")
+                                .append(valueTypeHandler(field)).append("}");
+                        if (cl < placeholderSize - 1) {
                             wherePart.append(", ");
                         }
                     }
-                    if (!valueList.isEmpty()){
+                    if (valueSize > 0){
                         wherePart.append(") ");
                     }
                 } else {
                     if (inOn){
-                        wherePart.append("#{aliasMappings.").append(alias).append(".onWhere.expressions[").append(i).append("].value} ");
+                        wherePart.append("#{aliasMappings.").append(alias).append(".onWhere.expressions[").append(i)
+                                .append("].value").append(valueTypeHandler(field)).append("} ");
                     }else{
-                        wherePart.append("#{").append(parentParamPrefix).append("expressions[").append(i).append("].value} ");
+                        wherePart.append("#{").append(parentParamPrefix).append("expressions[").append(i)
+                                .append("].value").append(valueTypeHandler(field)).append("} ");
                     }
                     if (comparison == C.LIKE || comparison == C.NOT_LIKE ||
                             comparison == C.like || comparison == C.notLike) {
@@ -469,18 +1077,16 @@ public class BaseSqlProvider {
         }
 
         StringBuilder orderByPart = new StringBuilder();
-        if (null != where.getSortExpressions() && !where.getSortExpressions().isEmpty()){
+        if (withOrderAndLimit && null != where.getSortExpressions() && !where.getSortExpressions().isEmpty()){
             orderByPart.append(" ORDER BY ");
             List<SortExpression<?>> sortExpressions = where.getSortExpressions();
             for (int i = 0; i < sortExpressions.size(); i++) {
                 SortExpression<?> sortExpression = sortExpressions.get(i);
-                SFunction<? extends PO, ?> func = sortExpression.getFunc();
-                Field field = LambdaFieldUtil.getField(func);
-                Class<? extends PO> poClass = LambdaFieldUtil.getPoClass(func);
-                String orderRef = resolveFieldSqlRef(where, field, poClass, aliasMappingMap);
+                LambdaFieldMeta fieldMeta = LambdaFieldUtil.resolve(sortExpression.getFunc());
+                String orderRef = resolveFieldSqlRef(where, fieldMeta, aliasMappingMap);
                 if (!StringUtils.hasText(orderRef)) {
-                    ColumnDeclaration columnDeclaration = MapperUtil.getColumnDeclaration(field);
-                    String orderAlias = aliasMappingMap.getOrDefault(poClass.getName(), "_t");
+                    ColumnDeclaration columnDeclaration = fieldMeta.getColumnDeclaration();
+                    String orderAlias = aliasMappingMap.getOrDefault(fieldMeta.getPoClass().getName(), "_t");
                     orderRef = orderAlias + ".`" + columnDeclaration.getColumnName() + "`";
                 }
                 orderByPart.append(orderRef).append(" ")
@@ -494,7 +1100,13 @@ public class BaseSqlProvider {
 
         StringBuilder limitPart = new StringBuilder();
         if (limitSize > 0){
-            limitPart.append(" LIMIT ").append(where.getLimitStart()).append(", ").append(where.getLimitSize());
+            if (inOn){
+                limitPart.append(" LIMIT ").append(where.getLimitStart()).append(", ").append(where.getLimitSize());
+            }else{
+                // 分页参数使用占位符, 使不同页码共用同一条 SQL
+                limitPart.append(" LIMIT #{").append(parentParamPrefix).append("limitStart}, #{")
+                        .append(parentParamPrefix).append("limitSize}");
+            }
         }
 
 
@@ -512,6 +1124,51 @@ public class BaseSqlProvider {
         return buildSelectFields(mapperDeclaration, where, false);
     }
 
+    /**
+     * 获取查询不会返回的字段: 未显式查询的懒加载列, 以及 select / exclude 投影之外的列, 与 SELECT 字段的投影规则一致
+     * @param mapperDeclaration
+     *      映射声明
+     * @param where
+     *      查询条件, 按主键查询时为 null
+     * @return 未加载的字段名
+     */
+    public static List<String> unloadedFields(MapperDeclaration mapperDeclaration, Where where) {
+        Set<Field> selectFields = projectionFields(where == null ? null : where.getSelectFields());
+        Set<Field> excludeFields = projectionFields(where == null ? null : where.getExcludeFields());
+        List<String> fieldNames = new ArrayList<>();
+        for (ColumnDeclaration columnDeclaration : mapperDeclaration.getColumnDeclarations()) {
+            if (!projected(columnDeclaration, selectFields, excludeFields)) {
+                fieldNames.add(columnDeclaration.getFieldName());
+            }
+        }
+        return fieldNames;
+    }
+
+    /**
+     * 列是否被查询, 未指定投影时懒加载列不查询
+     */
+    private static boolean projected(ColumnDeclaration columnDeclaration, Set<Field> selectFields, Set<Field> excludeFields) {
+        return (null == selectFields
+                ? !columnDeclaration.isLazy() : selectFields.contains(columnDeclaration.getField()))
+                && (null == excludeFields || !excludeFields.contains(columnDeclaration.getField()));
+    }
+
+    /**
+     * 解析投影字段
+     * @param fields 属性函数列表
+     * @return 字段集合, 未指定时返回 null
+     */
+    private static Set<Field> projectionFields(List<SFunction<? extends PO, ?>> fields) {
+        if (null == fields || fields.isEmpty()) {
+            return null;
+        }
+        Set<Field> result = new HashSet<>();
+        for (SFunction<? extends PO, ?> field : fields) {
+            result.add(LambdaFieldUtil.getField(field));
+        }
+        return result;
+    }
+
     /**
      * 构建 SELECT 字段部分 SQL 语句
      * @param mapperDeclaration
@@ -522,7 +1179,11 @@ public class BaseSqlProvider {
         StringBuilder sql = new StringBuilder("SELECT ");
         int inRelationIndex = 0;
         Map<Class<? extends PO>, String> relationAliasMap = new LinkedHashMap<>();
+        Set<Field> selectFields = projectionFields(where == null ? null : where.getSelectFields());
+        Set<Field> excludeFields = projectionFields(where == null ? null : where.getExcludeFields());
         for (ColumnDeclaration columnDeclaration : mapperDeclaration.getColumnDeclarations(inRelation)) {
+            // 未被投影的列不查询, 关联列仍然登记别名, 以便条件与关联表连接照常生成; 懒加载列只在显式指定时查询
+            boolean projected = projected(columnDeclaration, selectFields, excludeFields);
             if (columnDeclaration.isLink()){
                 TableField tableField = columnDeclaration.getAnnotation();
                 Class<? extends PO> linkClass = tableField == null ? PO.class : tableField.link();
@@ -536,14 +1197,17 @@ public class BaseSqlProvider {
                 if (linkClass != PO.class && !relationAliasMap.containsKey(linkClass)) {
                     relationAliasMap.put(linkClass, alias);
                 }
-                sql.append(alias).append(".`").append(columnDeclaration.getColumnName()).append("` AS ");
                 if (where != null && columnDeclaration.getField() != null) {
                     where.putGlobalWhere(columnDeclaration.getField(), alias + ".`" + columnDeclaration.getColumnName() + "`");
                 }
-            }else{
-                sql.append("_t.`").append(columnDeclaration.getColumnName()).append("` AS ");
+                if (projected) {
+                    sql.append(alias).append(".`").append(columnDeclaration.getColumnName()).append("` AS ")
+                            .append(columnDeclaration.getFieldName()).append(", ");
+                }
+            }else if (projected){
+                sql.append("_t.`").append(columnDeclaration.getColumnName()).append("` AS ")
+                        .append(columnDeclaration.getFieldName()).append(", ");
             }
-            sql.append(columnDeclaration.getFieldName()).append(", ");
         }
         // ID
         sql.append("_t.`").append(mapperDeclaration.getPkColumnName()).append("` AS ").append(mapperDeclaration.getPkName());
@@ -668,9 +1332,9 @@ public class BaseSqlProvider {
     }
 
     private String resolveFieldSqlRef(Where where,
-                                      Field field,
-                                      Class<? extends PO> poClass,
+                                      LambdaFieldMeta fieldMeta,
                                       Map<String, String> aliasMappingMap) {
+        Field field = fieldMeta.getField();
         String cached = where.getGlobalWhereAliasValue(field);
         if (StringUtils.hasText(cached)) {
             return cached;
@@ -697,8 +1361,8 @@ public class BaseSqlProvider {
                         + tableField.link().getName() + " for field " + field.getName(), e);
             }
         }
-        ColumnDeclaration declaration = MapperUtil.getColumnDeclaration(field);
-        String alias = aliasMappingMap.getOrDefault(poClass.getName(), "_t");
+        ColumnDeclaration declaration = fieldMeta.getColumnDeclaration();
+        String alias = aliasMappingMap.getOrDefault(fieldMeta.getPoClass().getName(), "_t");
         return alias + ".`" + declaration.getColumnName() + "`";
     }
 }
@@ -0,0 +1,138 @@
+package ink.icoding.smartmybatis.mapper.provider;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 已编译 SQL 缓存
+ * 以 SQL 结构指纹为键缓存 Provider 生成的 SQL 语句, 容量有上限, 超出时按写入顺序淘汰
+ * @author gsk
+ */
+public class CompiledSqlCache {
+
+    /**
+     * 默认最大缓存条数
+     */
+    public static final int DEFAULT_MAX_SIZE = 2048;
+
+    private final Map<String, String> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 写入顺序, 用于淘汰最早写入的条目
+     */
+    private final Queue<String> insertionOrder = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private volatile int maxSize;
+
+    public CompiledSqlCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * 获取缓存的 SQL, 不存在时使用 builder 构建并写入缓存
+     * @param key
+     *      SQL 结构指纹
+     * @param builder
+     *      SQL 构建器
+     * @return SQL 语句
+     */
+    public String get(String key, Supplier<String> builder) {
+        String sql = cache.get(key);
+        if (null != sql) {
+            hits.increment();
+            return sql;
+        }
+        misses.increment();
+        sql = builder.get();
+        if (maxSize <= 0) {
+            return sql;
+        }
+        if (null == cache.putIfAbsent(key, sql)) {
+            insertionOrder.offer(key);
+            evictIfNecessary();
+        }
+        return sql;
+    }
+
+    private void evictIfNecessary() {
+        while (cache.size() > maxSize) {
+            String eldest = insertionOrder.poll();
+            if (null == eldest) {
+                return;
+            }
+            if (null != cache.remove(eldest)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * 清空缓存, 统计数据保留
+     */
+    public void clear() {
+        cache.clear();
+        insertionOrder.clear();
+    }
+
+    /**
+     * 设置最大缓存条数, 小于等于 0 时不再缓存
+     * @param maxSize 最大缓存条数
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evictIfNecessary();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * 当前缓存条数
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * 命中次数
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * 未命中次数
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * 淘汰次数
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledSqlCache{" +
+                "size=" + size() +
+                ", maxSize=" + maxSize +
+                ", hits=" + getHitCount() +
+                ", misses=" + getMissCount() +
+                ", evictions=" + getEvictionCount() +
+                '}';
+    }
+}
@@ -0,0 +1,90 @@
+package ink.icoding.smartmybatis.mapper.provider;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 语句形状分桶
+ * IN 列表长度与批量写入的行数不同时生成的 SQL 文本不同, 驱动与数据库的预编译语句缓存难以命中.
+ * 开启分桶后 IN 列表重复最后一个值补齐到 2 的幂, 批量写入按 2 的幂拆分, 每个 Mapper 的 SQL 形状数量保持有限.
+ * @author gsk
+ */
+public final class StatementBuckets {
+
+    private StatementBuckets() {
+    }
+
+    /**
+     * 是否开启分桶
+     * @return 是否开启
+     */
+    public static boolean enabled() {
+        GlobalConfig config = SmartConfigHolder.config();
+        return null != config && config.isStatementBucketing();
+    }
+
+    /**
+     * 计算不小于 size 的最小的 2 的幂
+     * @param size 个数
+     * @return 分桶后的个数
+     */
+    public static int bucketSize(int size) {
+        if (size <= 1) {
+            return size;
+        }
+        int highest = Integer.highestOneBit(size);
+        return highest == size ? size : highest << 1;
+    }
+
+    /**
+     * 重复最后一个值, 将 IN 列表补齐到分桶大小; 重复的值不改变 IN 与 NOT IN 的结果
+     * @param values 集合或数组
+     * @return 补齐后的列表
+     */
+    public static List<Object> pad(Object values) {
+        List<Object> list = values instanceof Collection
+                ? new ArrayList<>((Collection<?>) values)
+                : new ArrayList<>(Arrays.asList((Object[]) values));
+        return pad(list);
+    }
+
+    /**
+     * 重复最后一个值, 将列表补齐到分桶大小
+     * @param values 值列表
+     * @return 补齐后的列表, 已是分桶大小时返回原列表
+     */
+    public static <T> List<T> pad(List<T> values) {
+        int bucketSize = bucketSize(values.size());
+        if (bucketSize == values.size()) {
+            return values;
+        }
+        List<T> list = new ArrayList<>(bucketSize);
+        list.addAll(values);
+        T last = values.get(values.size() - 1);
+        while (list.size() < bucketSize) {
+            list.add(last);
+        }
+        return list;
+    }
+
+    /**
+     * 按 2 的幂拆分一批记录, 如 13 条拆分为 8、4、1 条, 每批的行数只有有限的几种
+     * @param records 一批记录
+     * @return 拆分后的记录
+     */
+    public static <T> List<List<T>> split(List<T> records) {
+        List<List<T>> pieces = new ArrayList<>();
+        int from = 0;
+        while (from < records.size()) {
+            int size = Integer.highestOneBit(records.size() - from);
+            pieces.add(records.subList(from, from + size));
+            from += size;
+        }
+        return pieces;
+    }
+}
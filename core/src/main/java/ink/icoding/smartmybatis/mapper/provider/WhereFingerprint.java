@@ -0,0 +1,202 @@
+package ink.icoding.smartmybatis.mapper.provider;
+
+import ink.icoding.smartmybatis.entity.expression.*;
+import ink.icoding.smartmybatis.entity.po.PO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Where 结构指纹
+ * 指纹只描述会影响 SQL 文本的结构(表达式树、比较符、IN 列表长度、排序、分页、关联), 不包含比较值本身,
+ * 结构相同的 Where 生成的 SQL 完全一致, 可直接复用缓存的 SQL.
+ * 构建 SQL 时登记到 Where 的字段别名由 Mapper 与关联映射决定, 不计入指纹, 同一 Where 构建前后的指纹保持一致.
+ * 计算指纹的同时会完成比较值的规范化(LIKE 补全 %, Set 转 List), 保证命中缓存时参数与构建 SQL 时一致.
+ * @author gsk
+ */
+final class WhereFingerprint {
+
+    /**
+     * 顶层条件
+     */
+    private static final int ROOT = 0;
+
+    /**
+     * 嵌套条件
+     */
+    private static final int NESTED = 1;
+
+    /**
+     * 关联 ON 条件
+     */
+    private static final int ON = 2;
+
+    private WhereFingerprint() {
+    }
+
+    /**
+     * 计算指纹
+     * @param statement
+     *      语句类型
+     * @param mapperType
+     *      Mapper 类型
+     * @param where
+     *      查询条件
+     * @return 指纹
+     */
+    static String of(String statement, Class<?> mapperType, Where where) {
+        return of(statement, mapperType, where, false);
+    }
+
+    /**
+     * 计算指纹
+     * @param statement
+     *      语句类型
+     * @param mapperType
+     *      Mapper 类型
+     * @param where
+     *      查询条件
+     * @param withValues
+     *      是否包含比较值, 包含时指纹可以区分查询结果, 用于缓存记录数等查询结果; 分页的具体数值不计入
+     * @return 指纹
+     */
+    static String of(String statement, Class<?> mapperType, Where where, boolean withValues) {
+        StringBuilder key = new StringBuilder(128);
+        key.append(statement).append('|').append(mapperType.getName()).append('|');
+        appendWhere(key, where, ROOT, withValues);
+        return key.toString();
+    }
+
+    private static void appendWhere(StringBuilder key, Where where, int scope, boolean withValues) {
+        if (null == where) {
+            key.append('-');
+            return;
+        }
+        key.append('{');
+        List<Expression<?>> expressions = where.getExpressions();
+        if (null != expressions) {
+            for (Expression<?> expression : expressions) {
+                if (expression instanceof WhereExpression) {
+                    WhereExpression whereExpression = (WhereExpression) expression;
+                    key.append('W').append(whereExpression.getLink());
+                    appendWhere(key, whereExpression.getWhere(), NESTED, withValues);
+                    continue;
+                }
+                appendComparison(key, (ComparisonExpression<?>) expression, withValues);
+            }
+        }
+        List<SortExpression<?>> sortExpressions = where.getSortExpressions();
+        if (null != sortExpressions && !sortExpressions.isEmpty()) {
+            key.append("|O");
+            for (SortExpression<?> sortExpression : sortExpressions) {
+                key.append(sortExpression.getFunc().getClass().getName())
+                        .append(':').append(sortExpression.getDirection()).append(',');
+            }
+        }
+        if (where.getLimitSize() > 0) {
+            // ON 条件中的分页直接拼接在 SQL 中, 需要把具体数值计入指纹
+            key.append("|L");
+            if (scope == ON) {
+                key.append(where.getLimitStart()).append(',').append(where.getLimitSize());
+            }
+        }
+        if (scope != ROOT) {
+            // 嵌套条件与 ON 条件的关联映射和字段别名均来自顶层条件
+            key.append('}');
+            return;
+        }
+        appendFields(key, "|S", where.getSelectFields());
+        appendFields(key, "|E", where.getExcludeFields());
+        Map<String, AliasMapping<?>> aliasMappings = where.getAliasMappings();
+        if (null != aliasMappings && !aliasMappings.isEmpty()) {
+            key.append("|J");
+            for (AliasMapping<?> aliasMapping : aliasMappings.values()) {
+                key.append(aliasMapping.getType()).append(' ')
+                        .append(aliasMapping.getEntityClass().getName()).append(' ')
+                        .append(aliasMapping.getAlias()).append('[');
+                for (SFunction<? extends PO, ?> selectField : aliasMapping.getSelectFields()) {
+                    key.append(selectField.getClass().getName()).append(',');
+                }
+                key.append(']');
+                appendWhere(key, aliasMapping.getOnWhere(), ON, withValues);
+            }
+        }
+        key.append('}');
+    }
+
+    private static void appendFields(StringBuilder key, String tag, List<SFunction<? extends PO, ?>> fields) {
+        if (null == fields || fields.isEmpty()) {
+            return;
+        }
+        key.append(tag);
+        for (SFunction<? extends PO, ?> field : fields) {
+            key.append(field.getClass().getName()).append(',');
+        }
+    }
+
+    private static void appendComparison(StringBuilder key, ComparisonExpression<?> expression, boolean withValues) {
+        C comparison = expression.getComparison();
+        key.append('C').append(expression.getLink()).append(':')
+                .append(expression.getFunc().getClass().getName()).append(':')
+                .append(comparison.name()).append(':');
+        Object value = expression.getValue();
+        if (null == value) {
+            key.append('N');
+        } else if (value instanceof SFunction) {
+            key.append('F').append(value.getClass().getName());
+        } else if (comparison == C.IN || comparison == C.NOT_IN || comparison == C.in || comparison == C.notIn) {
+            if (value instanceof Set) {
+                // Set 没有 get(int index) 方法, 与构建 SQL 时一样转换成 List
+                value = new ArrayList<>((Set<?>) value);
+                expression.setValue(value);
+            }
+            // 取值个数决定占位符, 分桶补齐在构建 SQL 时重复绑定最后一个值, 不修改取值列表
+            if (value instanceof Collection) {
+                key.append('I').append(((Collection<?>) value).size());
+                if (withValues) {
+                    for (Object item : (Collection<?>) value) {
+                        appendValue(key, item);
+                    }
+                }
+            } else if (value instanceof Object[]) {
+                key.append('I').append(((Object[]) value).length);
+                if (withValues) {
+                    for (Object item : (Object[]) value) {
+                        appendValue(key, item);
+                    }
+                }
+            } else {
+                key.append('X').append(value.getClass().getName());
+            }
+        } else {
+            if (comparison == C.LIKE || comparison == C.NOT_LIKE || comparison == C.like || comparison == C.notLike) {
+                // 如果是模糊查询, 则在值前后添加 %
+                String strValue = value.toString();
+                if (!strValue.contains("%")) {
+                    expression.setValue("%" + strValue + "%");
+                }
+            }
+            key.append('V');
+            if (withValues) {
+                appendValue(key, expression.getValue());
+            }
+        }
+        key.append(';');
+    }
+
+    /**
+     * 追加比较值, 以类型和长度作前缀, 避免不同的值拼接后相同
+     */
+    private static void appendValue(StringBuilder key, Object value) {
+        if (null == value) {
+            key.append("(N)");
+            return;
+        }
+        String text = value.toString();
+        key.append('(').append(value.getClass().getName()).append(':')
+                .append(text.length()).append(':').append(text).append(')');
+    }
+}
@@ -0,0 +1,108 @@
+package ink.icoding.smartmybatis.mapper.routing;
+
+import java.util.function.Supplier;
+
+/**
+ * 读写路由
+ * 记录当前线程正在执行的语句应使用主库还是从库, ReadWriteRoutingDataSource 获取连接时据此选择数据源.
+ * 未指定时使用主库; 在 onPrimary 中执行的查询始终使用主库, 用于需要读到自己刚写入数据的场景.
+ * @author gsk
+ */
+public final class ReadRouting {
+
+    public enum Route {
+        /**
+         * 未指定, 使用主库
+         */
+        DEFAULT,
+        /**
+         * 使用从库
+         */
+        REPLICA,
+        /**
+         * 强制使用主库, 期间不会切换到从库
+         */
+        PRIMARY
+    }
+
+    private static final ThreadLocal<Route> ROUTE = ThreadLocal.withInitial(() -> Route.DEFAULT);
+
+    private ReadRouting() {
+    }
+
+    /**
+     * 在主库上执行, 期间的查询不会路由到从库
+     * @param action 操作
+     * @return 操作结果
+     */
+    public static <T> T onPrimary(Supplier<T> action) {
+        Route previous = switchTo(Route.PRIMARY);
+        try {
+            return action.get();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 在主库上执行, 期间的查询不会路由到从库
+     * @param action 操作
+     */
+    public static void runOnPrimary(Runnable action) {
+        Route previous = switchTo(Route.PRIMARY);
+        try {
+            action.run();
+        } finally {
+            restore(previous);
+        }
+    }
+
+    /**
+     * 当前是否强制使用主库
+     * @return 是否强制使用主库
+     */
+    public static boolean isPrimaryForced() {
+        return ROUTE.get() == Route.PRIMARY;
+    }
+
+    /**
+     * 当前语句是否路由到从库
+     * @return 是否使用从库
+     */
+    public static boolean isReplicaRead() {
+        return ROUTE.get() == Route.REPLICA;
+    }
+
+    /**
+     * 当前线程的路由, 将查询交给其他线程执行时用于传递路由
+     * @return 路由
+     */
+    public static Route current() {
+        return ROUTE.get();
+    }
+
+    /**
+     * 切换当前线程的路由, 已强制使用主库时不会切换到从库. 需在 finally 中调用 restore 恢复
+     * @param route 路由
+     * @return 切换前的路由
+     */
+    public static Route switchTo(Route route) {
+        Route previous = ROUTE.get();
+        if (previous != Route.PRIMARY) {
+            ROUTE.set(route);
+        }
+        return previous;
+    }
+
+    /**
+     * 恢复切换前的路由
+     * @param previous 切换前的路由
+     */
+    public static void restore(Route previous) {
+        if (previous == Route.DEFAULT) {
+            ROUTE.remove();
+        } else {
+            ROUTE.set(previous);
+        }
+    }
+}
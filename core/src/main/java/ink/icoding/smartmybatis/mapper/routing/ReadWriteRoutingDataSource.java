@@ -0,0 +1,208 @@
+package ink.icoding.smartmybatis.mapper.routing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 读写分离数据源
+ * 默认从主库获取连接; ReadRoutingInterceptor 将 SmartMapper 的查询标记为读从库后, 按策略从从库获取连接.
+ * 从库连接设置为只读, 误用于写入时由驱动直接报错; 从库均无法获取连接时回退到主库.
+ * 事务在开始时即从主库获取连接并绑定, 事务中的读写都在主库执行.
+ * @author gsk
+ */
+public class ReadWriteRoutingDataSource implements DataSource {
+
+    private static final Logger log = LoggerFactory.getLogger(ReadWriteRoutingDataSource.class);
+
+    private final DataSource primary;
+
+    private final List<Replica> replicas;
+
+    private final ReplicaSelection selection;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    /**
+     * @param primary 主库
+     * @param replicas 从库, 为空时全部使用主库
+     * @param selection 从库选择策略
+     */
+    public ReadWriteRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, ReplicaSelection selection) {
+        if (null == primary) {
+            throw new IllegalArgumentException("Primary data source is required.");
+        }
+        this.primary = primary;
+        List<Replica> list = new ArrayList<>();
+        if (null != replicas) {
+            for (DataSource replica : replicas) {
+                list.add(new Replica(replica));
+            }
+        }
+        this.replicas = Collections.unmodifiableList(list);
+        this.selection = null == selection ? ReplicaSelection.ROUND_ROBIN : selection;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return getConnection(null, null, false);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection(username, password, true);
+    }
+
+    private Connection getConnection(String username, String password, boolean withCredentials) throws SQLException {
+        if (!ReadRouting.isReplicaRead() || replicas.isEmpty()) {
+            return withCredentials ? primary.getConnection(username, password) : primary.getConnection();
+        }
+        int size = replicas.size();
+        int start = selectReplica();
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            try {
+                return replica.borrow(withCredentials ? replica.dataSource.getConnection(username, password)
+                        : replica.dataSource.getConnection());
+            } catch (SQLException e) {
+                log.warn("Failed to get connection from replica {}, trying next: {}", (start + i) % size, e.getMessage());
+            }
+        }
+        log.warn("No replica available, falling back to primary.");
+        return withCredentials ? primary.getConnection(username, password) : primary.getConnection();
+    }
+
+    /**
+     * 按策略选择首先尝试的从库
+     */
+    private int selectReplica() {
+        int size = replicas.size();
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        if (selection == ReplicaSelection.ROUND_ROBIN) {
+            return start;
+        }
+        int selected = start;
+        int minActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            int index = (start + i) % size;
+            int active = replicas.get(index).active.get();
+            if (active < minActive) {
+                minActive = active;
+                selected = index;
+            }
+        }
+        return selected;
+    }
+
+    public DataSource getPrimary() {
+        return primary;
+    }
+
+    public ReplicaSelection getSelection() {
+        return selection;
+    }
+
+    /**
+     * 从库个数
+     */
+    public int getReplicaCount() {
+        return replicas.size();
+    }
+
+    /**
+     * 从库当前借出的连接数
+     * @param index 从库下标
+     * @return 借出的连接数
+     */
+    public int getActiveConnections(int index) {
+        return replicas.get(index).active.get();
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws java.sql.SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        return primary.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || primary.isWrapperFor(iface);
+    }
+
+    private static final class Replica {
+
+        private final DataSource dataSource;
+
+        /**
+         * 借出且尚未关闭的连接数
+         */
+        private final AtomicInteger active = new AtomicInteger();
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * 包装从库连接: 设置为只读, 关闭时归还计数
+         */
+        private Connection borrow(Connection connection) throws SQLException {
+            try {
+                connection.setReadOnly(true);
+            } catch (SQLException e) {
+                connection.close();
+                throw e;
+            }
+            active.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if ("close".equals(method.getName()) && closed.compareAndSet(false, true)) {
+                            active.decrementAndGet();
+                        }
+                        try {
+                            return method.invoke(connection, args);
+                        } catch (InvocationTargetException e) {
+                            throw e.getTargetException();
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package ink.icoding.smartmybatis.mapper.routing;
+
+/**
+ * 从库选择策略
+ * @author gsk
+ */
+public enum ReplicaSelection {
+    /**
+     * 轮询
+     */
+    ROUND_ROBIN,
+    /**
+     * 选择当前借出连接最少的从库, 连接数相同时轮询
+     */
+    LEAST_LOADED
+}
@@ -0,0 +1,311 @@
+package ink.icoding.smartmybatis.mapper.segment;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 号段主键分配器
+ * 每张表在号段表中有一条记录, 分配时将 max_id 增加 step, 得到 (max_id - step, max_id] 的号段, 一次数据库往返覆盖 step 次插入.
+ * 号段双缓冲: 当前号段消耗 segmentPrefetchPercent 后异步预取下一号段, 当前号段用完时直接切换.
+ * 号段内通过 AtomicLong 发放, 热路径不加锁; 同一进程内主键连续递增, 进程重启时未用完的号段被丢弃.
+ * 号段表的读写在独立的线程中直接使用数据源的连接执行并立即提交, 不受调用方事务回滚影响,
+ * 也不经过 Mapper 的拦截器, 不会使实体缓存与查询缓存失效.
+ * @author gsk
+ */
+public final class SegmentIdAllocator {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentIdAllocator.class);
+
+    private static final Map<Class<? extends PO>, SegmentIdAllocator> ALLOCATORS = new ConcurrentHashMap<>();
+
+    /**
+     * 号段加载线程
+     */
+    private static final ExecutorService LOADER = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "smart-id-segment-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final DataSource dataSource;
+
+    private final GlobalConfig config;
+
+    private final MapperDeclaration declaration;
+
+    /**
+     * 切换号段与创建预取任务时使用, 不在发放路径上
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile Segment current;
+
+    /**
+     * 预取中的下一号段
+     */
+    private CompletableFuture<Segment> pending;
+
+    private SegmentIdAllocator(DataSource dataSource, GlobalConfig config, MapperDeclaration declaration) {
+        this.dataSource = dataSource;
+        this.config = config;
+        this.declaration = declaration;
+    }
+
+    /**
+     * 登记使用号段主键的 Mapper, 开启自动同步时创建号段表
+     * @param smartMapper Mapper 实例
+     * @param declaration Mapper 声明
+     * @param sqlSessionFactory Mapper 使用的 SqlSessionFactory, 号段表通过其数据源读写
+     */
+    public static void register(SmartMapper<?> smartMapper, MapperDeclaration declaration,
+                                SqlSessionFactory sqlSessionFactory) {
+        GlobalConfig config = SmartConfigHolder.config();
+        if (null == config) {
+            throw new IllegalStateException("GlobalConfig is not initialized, SEGMENT generate type of "
+                    + declaration.getPoClass().getName() + " requires SmartConfigHolder to be configured first.");
+        }
+        if (config.isAutoSyncDb()) {
+            smartMapper.executeSql("CREATE TABLE IF NOT EXISTS `" + config.getSegmentTable() + "` (\n"
+                    + "`biz_tag` VARCHAR(128) NOT NULL PRIMARY KEY COMMENT '表名', \n"
+                    + "`max_id` BIGINT NOT NULL COMMENT '已分配的最大主键', \n"
+                    + "`step` INT NOT NULL COMMENT '号段长度', \n"
+                    + "`update_time` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP\n"
+                    + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;");
+        }
+        DataSource dataSource = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource();
+        ALLOCATORS.put(declaration.getPoClass(), new SegmentIdAllocator(dataSource, config, declaration));
+    }
+
+    /**
+     * 获取实体的号段分配器
+     * @param declaration Mapper 声明
+     * @return 号段分配器
+     */
+    public static SegmentIdAllocator of(MapperDeclaration declaration) {
+        SegmentIdAllocator allocator = ALLOCATORS.get(declaration.getPoClass());
+        if (null == allocator) {
+            throw new IllegalStateException("No segment allocator registered for "
+                    + declaration.getPoClass().getName() + ", SEGMENT generate type requires an initialized SmartMapper.");
+        }
+        return allocator;
+    }
+
+    /**
+     * 分配一个主键
+     * @return 主键
+     */
+    public long nextId() {
+        return nextIds(1)[0];
+    }
+
+    /**
+     * 分配多个主键, 用于批量插入
+     * @param n 个数
+     * @return 递增的主键
+     */
+    public long[] nextIds(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The count of ids must be greater than 0.");
+        }
+        long[] ids = new long[n];
+        int filled = 0;
+        while (true) {
+            Segment segment = current;
+            if (null != segment) {
+                int wanted = n - filled;
+                long start = segment.cursor.getAndAdd(wanted);
+                if (start <= segment.max) {
+                    long end = Math.min(segment.max, start + wanted - 1);
+                    if (start <= segment.prefetchAt && segment.prefetchAt <= end) {
+                        prefetch(segment);
+                    }
+                    for (long id = start; id <= end; id++) {
+                        ids[filled++] = id;
+                    }
+                    if (filled == n) {
+                        return ids;
+                    }
+                }
+            }
+            switchFrom(segment);
+        }
+    }
+
+    /**
+     * 当前号段消耗到预取位置时异步加载下一号段
+     */
+    private void prefetch(Segment segment) {
+        lock.lock();
+        try {
+            // 号段已被切换时不再预取, 保证预取的号段总是大于当前号段
+            if (current == segment && null == pending) {
+                pending = CompletableFuture.supplyAsync(this::load, LOADER);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 当前号段用完时切换到下一号段, 没有预取成功的号段时同步加载
+     */
+    private void switchFrom(Segment exhausted) {
+        lock.lock();
+        try {
+            if (current != exhausted) {
+                return;
+            }
+            CompletableFuture<Segment> next = pending;
+            pending = null;
+            Segment segment = null;
+            if (null != next) {
+                try {
+                    segment = next.join();
+                } catch (CompletionException | CancellationException e) {
+                    log.warn("Prefetch id segment for table {} failed, retry synchronously.",
+                            declaration.getTableName(), e);
+                }
+            }
+            if (null == segment) {
+                try {
+                    // 在加载线程中执行, 不加入调用方线程的事务
+                    segment = CompletableFuture.supplyAsync(this::load, LOADER).join();
+                } catch (CompletionException e) {
+                    throw new IllegalStateException("Failed to allocate id segment for table "
+                            + declaration.getTableName() + ": " + e.getCause().getMessage(), e.getCause());
+                }
+            }
+            current = segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 已有最大主键的表达式. 字符串主键按文本比较时 "999" 大于 "1000", 需转为数值后取最大值
+     */
+    private String maxIdExpression() {
+        String column = "`" + declaration.getPkColumnName() + "`";
+        if (declaration.getPkClass() == String.class) {
+            return "MAX(CAST(" + column + " AS UNSIGNED))";
+        }
+        return "MAX(" + column + ")";
+    }
+
+    /**
+     * 字符串主键只从纯数字的主键中取最大值, 非数字主键不会与号段分配的主键冲突
+     */
+    private String maxIdCondition() {
+        if (declaration.getPkClass() == String.class) {
+            return " WHERE `" + declaration.getPkColumnName() + "` REGEXP '^[0-9]{1,19}$'";
+        }
+        return "";
+    }
+
+    /**
+     * 从号段表分配一个号段, 在主库的同一个事务中递增并读取
+     */
+    private Segment load() {
+        String table = config.getSegmentTable();
+        String bizTag = declaration.getTableName();
+        String update = "UPDATE `" + table + "` SET `max_id` = `max_id` + `step` WHERE `biz_tag` = ?";
+        ReadRouting.Route route = ReadRouting.switchTo(ReadRouting.Route.PRIMARY);
+        try (Connection connection = dataSource.getConnection()) {
+            boolean autoCommit = connection.getAutoCommit();
+            connection.setAutoCommit(false);
+            try {
+                if (executeUpdate(connection, update, bizTag) == 0) {
+                    // 首次使用, 从表中已有的最大主键开始分配; 分表时逻辑表不存在, 从 0 开始
+                    if (declaration.isSharded()) {
+                        executeUpdate(connection, "INSERT IGNORE INTO `" + table
+                                + "` (`biz_tag`, `max_id`, `step`) VALUES (?, 0, ?)", bizTag, config.getSegmentStep());
+                    } else {
+                        executeUpdate(connection, "INSERT IGNORE INTO `" + table + "` (`biz_tag`, `max_id`, `step`) "
+                                + "SELECT ?, COALESCE(" + maxIdExpression() + ", 0), ? FROM `" + bizTag + "`"
+                                + maxIdCondition(), bizTag, config.getSegmentStep());
+                    }
+                    executeUpdate(connection, update, bizTag);
+                }
+                long maxId;
+                long step;
+                try (PreparedStatement statement = connection.prepareStatement(
+                        "SELECT `max_id`, `step` FROM `" + table + "` WHERE `biz_tag` = ?")) {
+                    statement.setString(1, bizTag);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            throw new IllegalStateException("No segment row for table " + bizTag + " in " + table);
+                        }
+                        maxId = resultSet.getLong(1);
+                        step = resultSet.getLong(2);
+                    }
+                }
+                connection.commit();
+                log.debug("Allocated id segment ({}, {}] for table {}", maxId - step, maxId, bizTag);
+                return new Segment(maxId - step + 1, maxId, config.getSegmentPrefetchPercent());
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            } finally {
+                connection.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to allocate id segment for table " + bizTag + ": " + e.getMessage(), e);
+        } finally {
+            ReadRouting.restore(route);
+        }
+    }
+
+    private static int executeUpdate(Connection connection, String sql, Object... params) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            for (int i = 0; i < params.length; i++) {
+                statement.setObject(i + 1, params[i]);
+            }
+            return statement.executeUpdate();
+        }
+    }
+
+    /**
+     * 号段 [cursor, max]
+     */
+    private static final class Segment {
+
+        private final AtomicLong cursor;
+
+        private final long max;
+
+        /**
+         * 发放到该主键时预取下一号段
+         */
+        private final long prefetchAt;
+
+        private Segment(long start, long max, int prefetchPercent) {
+            this.cursor = new AtomicLong(start);
+            this.max = max;
+            long offset = (max - start + 1) * Math.max(0, Math.min(100, prefetchPercent)) / 100;
+            this.prefetchAt = Math.min(max, start + offset);
+        }
+    }
+}
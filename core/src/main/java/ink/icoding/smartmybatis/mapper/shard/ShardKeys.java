@@ -0,0 +1,85 @@
+package ink.icoding.smartmybatis.mapper.shard;
+
+import ink.icoding.smartmybatis.entity.expression.*;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.LambdaFieldMeta;
+import ink.icoding.smartmybatis.utils.LambdaFieldUtil;
+
+import java.util.*;
+
+/**
+ * 分片字段条件读取工具, 供 ShardResolver 从 Where 中取出分片字段的取值或范围
+ * @author gsk
+ */
+public final class ShardKeys {
+
+    private ShardKeys() {
+    }
+
+    /**
+     * 取出顶层以 AND 连接的、作用于指定字段的比较条件
+     * @param where 查询条件
+     * @param field 分片字段
+     * @return 比较条件, 顶层条件包含 OR 时无法据此定位分片, 返回 null
+     */
+    public static <T extends PO> List<ComparisonExpression<?>> comparisons(Where where, SFunction<T, ?> field) {
+        if (null == where || null == where.getExpressions()) {
+            return Collections.emptyList();
+        }
+        LambdaFieldMeta target = LambdaFieldUtil.resolve(field);
+        List<ComparisonExpression<?>> result = new ArrayList<>();
+        List<Expression<?>> expressions = where.getExpressions();
+        for (int i = 0; i < expressions.size(); i++) {
+            Expression<?> expression = expressions.get(i);
+            Link link = expression instanceof WhereExpression
+                    ? ((WhereExpression) expression).getLink()
+                    : ((ComparisonExpression<?>) expression).getLink();
+            if (i > 0 && link == Link.OR) {
+                return null;
+            }
+            if (!(expression instanceof ComparisonExpression)) {
+                continue;
+            }
+            ComparisonExpression<?> comparison = (ComparisonExpression<?>) expression;
+            LambdaFieldMeta meta = LambdaFieldUtil.resolve(comparison.getFunc());
+            if (meta.getPoClass() == target.getPoClass() && meta.getFieldName().equals(target.getFieldName())) {
+                result.add(comparison);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 取出分片字段的等值条件与 IN 条件的取值
+     * @param where 查询条件
+     * @param field 分片字段
+     * @return 取值, 有多个条件时取交集; 字段没有等值或 IN 条件、或顶层条件包含 OR 时返回 null
+     */
+    public static <T extends PO> Set<Object> values(Where where, SFunction<T, ?> field) {
+        List<ComparisonExpression<?>> comparisons = comparisons(where, field);
+        if (null == comparisons) {
+            return null;
+        }
+        Set<Object> values = null;
+        for (ComparisonExpression<?> comparison : comparisons) {
+            C c = comparison.getComparison();
+            Object value = comparison.getValue();
+            Set<Object> current = new LinkedHashSet<>();
+            if ((c == C.EQ || c == C.equals) && !(value instanceof SFunction)) {
+                current.add(value);
+            } else if ((c == C.IN || c == C.in) && value instanceof Collection) {
+                current.addAll((Collection<?>) value);
+            } else if ((c == C.IN || c == C.in) && value instanceof Object[]) {
+                current.addAll(Arrays.asList((Object[]) value));
+            } else {
+                continue;
+            }
+            if (null == values) {
+                values = current;
+            } else {
+                values.retainAll(current);
+            }
+        }
+        return values;
+    }
+}
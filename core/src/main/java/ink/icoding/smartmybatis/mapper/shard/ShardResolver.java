@@ -0,0 +1,43 @@
+package ink.icoding.smartmybatis.mapper.shard;
+
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分表解析器
+ * 将实体的逻辑表映射到物理表, 通过 @TableName(shardResolver = ...) 指定.
+ * 生成的 SQL 仍使用逻辑表名, 执行时替换为解析出的物理表; 无法定位到单张物理表的查询在全部物理表上并行执行后合并结果.
+ * 物理表需预先创建, 自动同步表结构只处理逻辑表.
+ * 跨分片的带排序查询在内存中按 Java 的 compareTo 归并各分片的结果, 升序时 null 在前, 字符串的大小写与排序规则可能与数据库不一致,
+ * 需要与数据库一致的顺序时应按数值、时间等两边顺序相同的字段排序. selectCursor 必须定位到单张物理表, 否则抛出 UnsupportedOperationException.
+ * @author gsk
+ */
+public interface ShardResolver {
+
+    /**
+     * 全部物理表, 无法定位分片的语句在这些表上执行
+     * @param declaration 映射声明
+     * @return 物理表名
+     */
+    List<String> allTables(MapperDeclaration declaration);
+
+    /**
+     * 记录所在的物理表, 用于新增与按主键更新
+     * @param declaration 映射声明
+     * @param record 记录
+     * @return 物理表名, 无法确定(如缺少分片字段的值)时返回 null
+     */
+    String tableOf(MapperDeclaration declaration, PO record);
+
+    /**
+     * 条件命中的物理表, 可以借助 ShardKeys 读取分片字段的条件
+     * @param declaration 映射声明
+     * @param where 查询条件
+     * @return 物理表名, 无法定位时返回 null, 在全部物理表上执行
+     */
+    Collection<String> tablesOf(MapperDeclaration declaration, Where where);
+}
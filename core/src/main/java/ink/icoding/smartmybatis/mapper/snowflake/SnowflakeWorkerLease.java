@@ -0,0 +1,296 @@
+package ink.icoding.smartmybatis.mapper.snowflake;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.mapper.base.SmartMapper;
+import ink.icoding.smartmybatis.mapper.routing.ReadRouting;
+import ink.icoding.smartmybatis.utils.SnowflakeIdGeneratorUtil;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * 雪花算法工作节点 ID 租约
+ * 启动时从租约表中占用一个未被使用或租约已过期的工作节点 ID, 定期续约, 关闭时释放.
+ * 租约表记录每个工作节点 ID 发放过的最大时间戳, 新的持有者从该时间之后发放, 避免与上一个持有者的 ID 重复.
+ * 租约的有效期按数据库时间计算, 不受节点之间时钟偏差影响; 本地按发出语句前的时间记录到期时间, 续约失败到期后或释放后
+ * 停止发放 ID, 避免与之后占用该工作节点 ID 的节点重复. 无法租用时使用 SnowflakeWorkerIdProvider 提供的工作节点 ID.
+ * @author gsk
+ */
+public final class SnowflakeWorkerLease {
+
+    private static final Logger log = LoggerFactory.getLogger(SnowflakeWorkerLease.class);
+
+    private static volatile SnowflakeWorkerLease current;
+
+    /**
+     * 租约读写线程, 直接使用数据源的连接执行并立即提交, 不加入调用方线程的事务,
+     * 也不经过 Mapper 的拦截器, 不会使实体缓存与查询缓存失效
+     */
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "smart-worker-lease");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final DataSource dataSource;
+
+    private final String table;
+
+    private final int leaseSeconds;
+
+    /**
+     * 租约持有者标识: 进程名(pid@host) 加随机后缀
+     */
+    private final String owner;
+
+    /**
+     * 持有的工作节点 ID, 未持有时为 -1
+     */
+    private volatile int workerId = -1;
+
+    private SnowflakeWorkerLease(DataSource dataSource, GlobalConfig config) {
+        this.dataSource = dataSource;
+        this.table = config.getSnowflakeWorkerTable();
+        this.leaseSeconds = Math.max(3, config.getSnowflakeWorkerLeaseSeconds());
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        this.owner = (name.length() > 100 ? name.substring(0, 100) : name) + "-"
+                + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * 启动租约, 每个进程只启动一次; 开启自动同步时创建租约表
+     * @param smartMapper 用于创建租约表的 Mapper
+     * @param sqlSessionFactory Mapper 使用的 SqlSessionFactory, 租约表通过其数据源读写
+     * @return 租约, 已启动时返回已有的租约
+     */
+    public static SnowflakeWorkerLease start(SmartMapper<?> smartMapper, SqlSessionFactory sqlSessionFactory) {
+        synchronized (SnowflakeWorkerLease.class) {
+            if (null != current) {
+                return current;
+            }
+            GlobalConfig config = SmartConfigHolder.config();
+            if (config.isAutoSyncDb()) {
+                smartMapper.executeSql("CREATE TABLE IF NOT EXISTS `" + config.getSnowflakeWorkerTable() + "` (\n"
+                        + "`worker_id` INT NOT NULL PRIMARY KEY COMMENT '工作节点 ID', \n"
+                        + "`owner` VARCHAR(128) DEFAULT NULL COMMENT '租约持有者', \n"
+                        + "`lease_until` DATETIME(3) NOT NULL COMMENT '租约到期时间', \n"
+                        + "`last_timestamp` BIGINT NOT NULL DEFAULT 0 COMMENT '发放过的最大时间戳'\n"
+                        + ") ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;");
+            }
+            SnowflakeWorkerLease lease = new SnowflakeWorkerLease(
+                    sqlSessionFactory.getConfiguration().getEnvironment().getDataSource(), config);
+            try {
+                lease.scheduler.submit(lease::claim).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("Failed to lease a snowflake worker id, fall back to {}.",
+                        SnowflakeIdGeneratorUtil.getWorkerIdProvider().getClass().getName(), e.getCause());
+            }
+            long period = Math.max(1, lease.leaseSeconds / 3);
+            lease.scheduler.scheduleWithFixedDelay(lease::renew, period, period, TimeUnit.SECONDS);
+            current = lease;
+            return lease;
+        }
+    }
+
+    /**
+     * 当前进程的租约
+     * @return 租约, 未启动时为 null
+     */
+    public static SnowflakeWorkerLease current() {
+        return current;
+    }
+
+    /**
+     * 持有的工作节点 ID
+     * @return 工作节点 ID, 未持有时为 -1
+     */
+    public int getWorkerId() {
+        return workerId;
+    }
+
+    /**
+     * 释放租约并停止续约, 释放后其他节点可以立即占用该工作节点 ID, 本进程不再使用该工作节点 ID 发放 ID
+     */
+    public void release() {
+        scheduler.shutdown();
+        int held = workerId;
+        if (held < 0) {
+            return;
+        }
+        workerId = -1;
+        // 先停止发放, 释放后其他节点可能立即占用该工作节点 ID
+        SnowflakeIdGeneratorUtil.revokeLease(held);
+        try {
+            update("UPDATE `" + table + "` SET `owner` = NULL, `lease_until` = NOW(3), "
+                            + "`last_timestamp` = GREATEST(`last_timestamp`, ?) WHERE `worker_id` = ? AND `owner` = ?",
+                    SnowflakeIdGeneratorUtil.getInstance().lastTimestamp(), held, owner);
+            log.info("Released snowflake worker id {}.", held);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release snowflake worker id {}, it will expire in {} seconds.", held, leaseSeconds, e);
+        }
+    }
+
+    /**
+     * 占用一个工作节点 ID, 从 SnowflakeWorkerIdProvider 提供的工作节点 ID 开始查找, 优先使用从未被占用的
+     */
+    private void claim() {
+        List<Map<String, Object>> rows = query(
+                "SELECT `worker_id`, `last_timestamp`, `lease_until` < NOW(3) AS `expired` FROM `" + table + "`");
+        Map<Integer, Map<String, Object>> leases = new HashMap<>();
+        for (Map<String, Object> row : rows) {
+            leases.put((int) numberOf(row, "worker_id"), row);
+        }
+        int size = SnowflakeIdGeneratorUtil.MAX_WORKER_ID + 1;
+        int preferred = Math.floorMod(SnowflakeIdGeneratorUtil.getWorkerIdProvider().workerId(), size);
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < size; i++) {
+                int candidate = (preferred + i) % size;
+                Map<String, Object> row = leases.get(candidate);
+                // 租约按发出语句前的本地时间计算到期, 不晚于数据库中的到期时间
+                long started = System.currentTimeMillis();
+                boolean claimed;
+                if (pass == 0 && null == row) {
+                    claimed = update("INSERT IGNORE INTO `" + table
+                                    + "` (`worker_id`, `owner`, `lease_until`, `last_timestamp`) "
+                                    + "VALUES (?, ?, DATE_ADD(NOW(3), INTERVAL ? SECOND), 0)",
+                            candidate, owner, leaseSeconds) == 1;
+                } else if (pass == 1 && null != row && numberOf(row, "expired") != 0) {
+                    claimed = update("UPDATE `" + table + "` SET `owner` = ?, "
+                                    + "`lease_until` = DATE_ADD(NOW(3), INTERVAL ? SECOND) "
+                                    + "WHERE `worker_id` = ? AND `lease_until` < NOW(3)",
+                            owner, leaseSeconds, candidate) == 1;
+                } else {
+                    continue;
+                }
+                if (claimed) {
+                    long lastTimestamp = null == row ? 0L : numberOf(row, "last_timestamp");
+                    SnowflakeIdGeneratorUtil.useWorkerId(candidate, lastTimestamp, started + leaseSeconds * 1000L);
+                    workerId = candidate;
+                    log.info("Leased snowflake worker id {} (datacenter {}, machine {}) as {}.",
+                            candidate, candidate >> 5, candidate & 31, owner);
+                    return;
+                }
+            }
+        }
+        throw new IllegalStateException("All " + size + " snowflake worker ids in " + table + " are leased.");
+    }
+
+    /**
+     * 续约并记录已发放的最大时间戳; 租约已被其他节点占用时重新占用
+     */
+    private void renew() {
+        int held = workerId;
+        try {
+            if (held < 0) {
+                claim();
+                return;
+            }
+            long started = System.currentTimeMillis();
+            int updated = update("UPDATE `" + table + "` SET "
+                            + "`lease_until` = DATE_ADD(NOW(3), INTERVAL ? SECOND), `last_timestamp` = GREATEST(`last_timestamp`, ?) "
+                            + "WHERE `worker_id` = ? AND `owner` = ?",
+                    leaseSeconds, SnowflakeIdGeneratorUtil.getInstance().lastTimestamp(), held, owner);
+            if (updated == 0) {
+                log.error("Snowflake worker id {} lease was lost, leasing a new one.", held);
+                workerId = -1;
+                SnowflakeIdGeneratorUtil.revokeLease(held);
+                claim();
+                return;
+            }
+            SnowflakeIdGeneratorUtil.extendLease(held, started + leaseSeconds * 1000L);
+        } catch (RuntimeException e) {
+            // 续约失败时租约照常到期, 到期后停止发放 ID, 直到续约成功
+            log.warn("Failed to renew snowflake worker id {}, id generation stops when the lease expires.", held, e);
+        }
+    }
+
+    private int update(String sql, Object... params) {
+        return execute(connection -> {
+            try (PreparedStatement statement = prepare(connection, sql, params)) {
+                return statement.executeUpdate();
+            }
+        });
+    }
+
+    private List<Map<String, Object>> query(String sql) {
+        return execute(connection -> {
+            List<Map<String, Object>> rows = new ArrayList<>();
+            try (PreparedStatement statement = prepare(connection, sql);
+                 ResultSet resultSet = statement.executeQuery()) {
+                ResultSetMetaData metaData = resultSet.getMetaData();
+                while (resultSet.next()) {
+                    Map<String, Object> row = new HashMap<>();
+                    for (int i = 1; i <= metaData.getColumnCount(); i++) {
+                        row.put(metaData.getColumnLabel(i), resultSet.getObject(i));
+                    }
+                    rows.add(row);
+                }
+            }
+            return rows;
+        });
+    }
+
+    /**
+     * 在主库的连接上执行, 连接未开启自动提交时执行后提交
+     */
+    private <R> R execute(ConnectionCallback<R> action) {
+        ReadRouting.Route route = ReadRouting.switchTo(ReadRouting.Route.PRIMARY);
+        try (Connection connection = dataSource.getConnection()) {
+            R result = action.apply(connection);
+            if (!connection.getAutoCommit()) {
+                connection.commit();
+            }
+            return result;
+        } catch (SQLException e) {
+            throw new IllegalStateException("Failed to access snowflake worker table " + table + ": " + e.getMessage(), e);
+        } finally {
+            ReadRouting.restore(route);
+        }
+    }
+
+    private static PreparedStatement prepare(Connection connection, String sql, Object... params) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql);
+        for (int i = 0; i < params.length; i++) {
+            statement.setObject(i + 1, params[i]);
+        }
+        return statement;
+    }
+
+    private static long numberOf(Map<String, Object> row, String column) {
+        for (Map.Entry<String, Object> entry : row.entrySet()) {
+            if (column.equalsIgnoreCase(entry.getKey())) {
+                Object value = entry.getValue();
+                if (value instanceof Number) {
+                    return ((Number) value).longValue();
+                }
+                if (value instanceof Boolean) {
+                    return (Boolean) value ? 1 : 0;
+                }
+                return 0;
+            }
+        }
+        throw new IllegalStateException("Column " + column + " not found in worker lease row: " + row);
+    }
+
+    @FunctionalInterface
+    private interface ConnectionCallback<R> {
+
+        R apply(Connection connection) throws SQLException;
+    }
+}
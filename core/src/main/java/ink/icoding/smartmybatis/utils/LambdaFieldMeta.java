@@ -0,0 +1,72 @@
+package ink.icoding.smartmybatis.utils;
+
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.utils.entity.ColumnDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+
+import java.lang.reflect.Field;
+
+/**
+ * Lambda 属性函数解析结果
+ * 由 LambdaFieldUtil 按 Lambda 类缓存, 同一个方法引用只解析一次
+ * @author gsk
+ */
+public final class LambdaFieldMeta {
+
+    private final String fieldName;
+
+    private final Class<? extends PO> poClass;
+
+    /**
+     * 属性对应的字段, 方法引用不是字段访问器时为 null
+     */
+    private final Field field;
+
+    private volatile ColumnDeclaration columnDeclaration;
+
+    LambdaFieldMeta(String fieldName, Class<? extends PO> poClass, Field field) {
+        this.fieldName = fieldName;
+        this.poClass = poClass;
+        this.field = field;
+    }
+
+    /**
+     * 获取字段名
+     * @return 字段名
+     */
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    /**
+     * 获取方法引用所属的 PO 类
+     * @return PO 类
+     */
+    public Class<? extends PO> getPoClass() {
+        return poClass;
+    }
+
+    /**
+     * 获取字段
+     * @return 字段
+     */
+    public Field getField() {
+        if (null == field) {
+            throw new RuntimeException(new NoSuchFieldException(poClass.getName() + "." + fieldName));
+        }
+        return field;
+    }
+
+    /**
+     * 获取字段对应的列声明, 首次访问时解析
+     * @return 列声明
+     */
+    public ColumnDeclaration getColumnDeclaration() {
+        ColumnDeclaration declaration = columnDeclaration;
+        if (null == declaration) {
+            declaration = MapperUtil.getColumnDeclaration(getField());
+            columnDeclaration = declaration;
+        }
+        return declaration;
+    }
+}
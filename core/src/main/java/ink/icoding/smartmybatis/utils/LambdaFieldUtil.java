@@ -14,38 +14,78 @@ import java.lang.reflect.*;
 public class LambdaFieldUtil {
 
     /**
-     * 获取Lambda表达式对应的字段名
+     * 解析结果缓存, 以 Lambda 类为键, 不会阻止 Lambda 所在类被卸载
      */
-    public static String getFieldName(SFunction<? extends PO, ?> getter) {
+    private static final ClassValue<LambdaFieldMeta[]> META_CACHE = new ClassValue<LambdaFieldMeta[]>() {
+        @Override
+        protected LambdaFieldMeta[] computeValue(Class<?> type) {
+            return new LambdaFieldMeta[1];
+        }
+    };
+
+    /**
+     * 解析 Lambda 表达式对应的字段、所属 PO 类及列声明, 结果按 Lambda 类缓存
+     * @param func 属性函数
+     * @return 解析结果
+     */
+    public static LambdaFieldMeta resolve(SFunction<? extends PO, ?> func) {
+        LambdaFieldMeta[] holder = META_CACHE.get(func.getClass());
+        LambdaFieldMeta meta = holder[0];
+        if (null == meta) {
+            // 并发下可能重复解析, 结果相同, 无需加锁
+            meta = parse(func);
+            holder[0] = meta;
+        }
+        return meta;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static LambdaFieldMeta parse(SFunction<? extends PO, ?> func) {
         try {
             // 1. 获取SerializedLambda
-            Method writeReplace = getter.getClass().getDeclaredMethod("writeReplace");
+            Method writeReplace = func.getClass().getDeclaredMethod("writeReplace");
             writeReplace.setAccessible(true);
-            Object serializedForm = writeReplace.invoke(getter);
+            Object serializedForm = writeReplace.invoke(func);
 
             if (!(serializedForm instanceof SerializedLambda)) {
                 throw new RuntimeException("Not a lambda");
             }
             SerializedLambda lambda = (SerializedLambda) serializedForm;
 
-            // 2. 获取方法名
-            String methodName = lambda.getImplMethodName();
+            // 2. 通过 Lambda 自身的类加载器加载实现类, 兼容 fat jar 等多类加载器环境
+            String implClass = lambda.getImplClass().replace('/', '.');
+            Class<?> clazz = Class.forName(implClass, false, func.getClass().getClassLoader());
 
             // 3. 推断字段名
-            String fieldName = null;
-            if (methodName.startsWith("get")) {
-                fieldName = methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
-            } else if (methodName.startsWith("is")) {
-                fieldName = methodName.substring(2, 3).toLowerCase() + methodName.substring(3);
-            } else {
-                fieldName = methodName;
+            String fieldName = toFieldName(lambda.getImplMethodName());
+            Field field = null;
+            try {
+                field = clazz.getDeclaredField(fieldName);
+            } catch (NoSuchFieldException ignore) {
+                // 非字段访问器, 仅可获取字段名
             }
-            return fieldName;
-        } catch (Exception e) {
+            return new LambdaFieldMeta(fieldName, (Class<? extends PO>) clazz, field);
+        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | ClassNotFoundException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private static String toFieldName(String methodName) {
+        if (methodName.startsWith("get")) {
+            return methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
+        } else if (methodName.startsWith("is")) {
+            return methodName.substring(2, 3).toLowerCase() + methodName.substring(3);
+        }
+        return methodName;
+    }
+
+    /**
+     * 获取Lambda表达式对应的字段名
+     */
+    public static String getFieldName(SFunction<? extends PO, ?> getter) {
+        return resolve(getter).getFieldName();
+    }
+
     public static Field getField(SFunction<? extends PO, ?> getter, Class<? extends PO> clazz) {
         String fieldName = getFieldName(getter);
         try {
@@ -61,52 +101,10 @@ public class LambdaFieldUtil {
     }
 
     public static Field getField(SFunction<? extends PO, ?> func) {
-        try {
-            Method writeReplace = func.getClass().getDeclaredMethod("writeReplace");
-            writeReplace.setAccessible(true);
-            Object serializedForm = writeReplace.invoke(func);
-
-            if (!(serializedForm instanceof SerializedLambda)) {
-                throw new RuntimeException("Not a lambda");
-            }
-            SerializedLambda lambda = (SerializedLambda) serializedForm;
-
-            // 2. 获取方法名
-            String methodName = lambda.getImplMethodName();
-            String implClass = lambda.getImplClass();
-            Class<?> clazz = Class.forName(implClass.replace('/', '.'));
-            // 3. 推断字段名
-            String fieldName = null;
-            if (methodName.startsWith("get")) {
-                fieldName = methodName.substring(3, 4).toLowerCase() + methodName.substring(4);
-            } else if (methodName.startsWith("is")) {
-                fieldName = methodName.substring(2, 3).toLowerCase() + methodName.substring(3);
-            } else {
-                fieldName = methodName;
-            }
-            return clazz.getDeclaredField(fieldName);
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | ClassNotFoundException |
-                 NoSuchFieldException e) {
-            throw new RuntimeException(e);
-        }
-
+        return resolve(func).getField();
     }
 
     public static Class<? extends PO> getPoClass(SFunction<? extends PO, ?> func) {
-        try {
-            Method writeReplace = func.getClass().getDeclaredMethod("writeReplace");
-            writeReplace.setAccessible(true);
-            Object serializedForm = writeReplace.invoke(func);
-
-            if (!(serializedForm instanceof SerializedLambda)) {
-                throw new RuntimeException("Not a lambda");
-            }
-            SerializedLambda lambda = (SerializedLambda) serializedForm;
-
-            String implClass = lambda.getImplClass();
-            return (Class<? extends PO>) Class.forName(implClass.replace('/', '.'));
-        } catch (NoSuchMethodException | InvocationTargetException | IllegalAccessException | ClassNotFoundException e) {
-            throw new RuntimeException(e);
-        }
+        return resolve(func).getPoClass();
     }
 }
@@ -3,9 +3,16 @@ package ink.icoding.smartmybatis.utils;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
 import java.util.Enumeration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
 
 /**
  * 雪花算法 ID 生成器
+ * 最近一次发放的时间戳与序列号打包在一个 AtomicLong 中, 通过 CAS 发放, 不加锁, 不会钉住虚拟线程.
+ * 同一毫秒内序列号用完或时钟小幅回拨时, 借用后续毫秒的序列号继续发放, 领先系统时钟过多时短暂等待时钟追上.
+ * 使用租用的工作节点 ID 时, 租约到期未续约或已释放后拒绝生成, 避免与之后占用该工作节点 ID 的节点重复.
  * @author gsk
  */
 public class SnowflakeIdGeneratorUtil {
@@ -19,6 +26,9 @@ public class SnowflakeIdGeneratorUtil {
     // 数据中心占用位数
     private final static long DATACENTER_BIT = 5;
 
+    // 工作节点 ID 的最大值, 高位为数据中心, 低位为机器标识
+    public final static int MAX_WORKER_ID = (int) ~(-1L << (DATACENTER_BIT + MACHINE_BIT));
+
     private final static long MAX_DATACENTER_NUM = ~(-1L << DATACENTER_BIT);
     private final static long MAX_MACHINE_NUM = ~(-1L << MACHINE_BIT);
     private final static long MAX_SEQUENCE = ~(-1L << SEQUENCE_BIT);
@@ -27,26 +37,49 @@ public class SnowflakeIdGeneratorUtil {
     private final static long DATACENTER_LEFT = SEQUENCE_BIT + MACHINE_BIT;
     private final static long TIMESTAMP_LEFT = DATACENTER_LEFT + DATACENTER_BIT;
 
-    // 数据中心
-    private final long datacenterId;
-    // 机器标识
-    private final long machineId;
-    // 序列号
-    private long sequence = 0L;
-    // 上一次时间戳
-    private long lastStamp = -1L;
+    // 借用后续毫秒的上限, 超过后等待时钟追上
+    private final static long MAX_BORROW_MILLIS = 5L;
+    // 可容忍的时钟回拨, 超过后拒绝生成
+    private final static long MAX_BACKWARD_MILLIS = 1000L;
+
+    // 数据中心与机器标识
+    private final long workerBits;
+    // 最近一次发放的 (时间戳 - 起始时间戳) << 序列号位数 | 序列号
+    private final AtomicLong state;
+    // 毫秒时钟
+    private final LongSupplier clock;
+    // 工作节点 ID 租约的本地到期时间(毫秒时间戳), 到期或释放后拒绝生成; 不使用租约时为 Long.MAX_VALUE
+    private volatile long leaseDeadline = Long.MAX_VALUE;
+
+    private static volatile SnowflakeIdGeneratorUtil instance;
 
-    private static SnowflakeIdGeneratorUtil instance;
+    private static volatile SnowflakeWorkerIdProvider workerIdProvider = SnowflakeIdGeneratorUtil::localWorkerId;
 
     public SnowflakeIdGeneratorUtil(long datacenterId, long machineId) {
+        this(datacenterId, machineId, -1L);
+    }
+
+    private SnowflakeIdGeneratorUtil(long datacenterId, long machineId, long initialState) {
+        this(datacenterId, machineId, initialState, System::currentTimeMillis);
+    }
+
+    /**
+     * 使用指定的毫秒时钟, 用于测试时钟回拨
+     */
+    SnowflakeIdGeneratorUtil(long datacenterId, long machineId, LongSupplier clock) {
+        this(datacenterId, machineId, -1L, clock);
+    }
+
+    private SnowflakeIdGeneratorUtil(long datacenterId, long machineId, long initialState, LongSupplier clock) {
         if (datacenterId > MAX_DATACENTER_NUM || datacenterId < 0) {
             throw new IllegalArgumentException("datacenterId can't be greater than " + MAX_DATACENTER_NUM + " or less than 0");
         }
         if (machineId > MAX_MACHINE_NUM || machineId < 0) {
             throw new IllegalArgumentException("machineId can't be greater than " + MAX_MACHINE_NUM + " or less than 0");
         }
-        this.datacenterId = datacenterId;
-        this.machineId = machineId;
+        this.workerBits = (datacenterId << DATACENTER_LEFT) | (machineId << MACHINE_LEFT);
+        this.state = new AtomicLong(initialState);
+        this.clock = clock;
     }
 
     /**
@@ -60,18 +93,128 @@ public class SnowflakeIdGeneratorUtil {
     }
 
     /**
-     * 获取实例（自动生成数据中心ID和机器ID）
+     * 获取实例（由工作节点 ID 提供者生成数据中心ID和机器ID）
      * @return 实例
      */
     public static SnowflakeIdGeneratorUtil getInstance() {
+        SnowflakeIdGeneratorUtil current = instance;
+        if (current == null) {
+            synchronized (SnowflakeIdGeneratorUtil.class) {
+                current = instance;
+                if (current == null) {
+                    current = ofWorkerId(workerIdProvider.workerId(), -1L);
+                    instance = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 设置工作节点 ID 提供者, 已创建的实例按新的工作节点 ID 重建
+     * @param provider 工作节点 ID 提供者
+     */
+    public static void setWorkerIdProvider(SnowflakeWorkerIdProvider provider) {
+        synchronized (SnowflakeIdGeneratorUtil.class) {
+            workerIdProvider = provider;
+            if (instance != null) {
+                useWorkerId(provider.workerId(), 0L);
+            }
+        }
+    }
+
+    /**
+     * 获取工作节点 ID 提供者
+     * @return 工作节点 ID 提供者
+     */
+    public static SnowflakeWorkerIdProvider getWorkerIdProvider() {
+        return workerIdProvider;
+    }
+
+    /**
+     * 切换默认实例的工作节点 ID, 新实例从旧实例与 minTimestamp 中较晚的时间之后继续发放,
+     * 避免与旧实例或该工作节点 ID 的上一个持有者发放过的 ID 重复
+     * @param workerId 工作节点 ID, 高 5 位为数据中心 ID, 低 5 位为机器 ID
+     * @param minTimestamp 该工作节点 ID 上一个持有者发放过的最大时间戳, 小于等于 0 时不限制
+     */
+    public static void useWorkerId(int workerId, long minTimestamp) {
+        useWorkerId(workerId, minTimestamp, Long.MAX_VALUE);
+    }
+
+    /**
+     * 切换默认实例到租用的工作节点 ID, 超过租约到期时间后拒绝生成, 直到续约
+     * @param workerId 工作节点 ID
+     * @param minTimestamp 该工作节点 ID 上一个持有者发放过的最大时间戳, 小于等于 0 时不限制
+     * @param leaseDeadline 租约的本地到期时间(毫秒时间戳)
+     */
+    public static void useWorkerId(int workerId, long minTimestamp, long leaseDeadline) {
         synchronized (SnowflakeIdGeneratorUtil.class) {
-            if (instance == null) {
-                long datacenterId = getDatacenterId();
-                long machineId = getMachineId(datacenterId);
-                instance = new SnowflakeIdGeneratorUtil(datacenterId, machineId);
+            long floor = minTimestamp > START_STAMP ? ((minTimestamp - START_STAMP) << SEQUENCE_BIT) | MAX_SEQUENCE : -1L;
+            SnowflakeIdGeneratorUtil previous = instance;
+            if (previous != null) {
+                floor = Math.max(floor, previous.state.get());
             }
+            SnowflakeIdGeneratorUtil current = ofWorkerId(workerId, floor);
+            current.leaseDeadline = leaseDeadline;
+            instance = current;
         }
-        return instance;
+    }
+
+    /**
+     * 续约成功后延长默认实例的租约到期时间, 默认实例已切换到其他工作节点 ID 时不做处理
+     * @param workerId 租用的工作节点 ID
+     * @param leaseDeadline 租约的本地到期时间(毫秒时间戳)
+     */
+    public static void extendLease(int workerId, long leaseDeadline) {
+        synchronized (SnowflakeIdGeneratorUtil.class) {
+            SnowflakeIdGeneratorUtil current = instance;
+            if (current != null && current.workerId() == workerId) {
+                current.leaseDeadline = leaseDeadline;
+            }
+        }
+    }
+
+    /**
+     * 租约释放或丢失后停用默认实例, 之后生成 ID 时抛出异常, 直到重新租用工作节点 ID
+     * @param workerId 释放的工作节点 ID
+     */
+    public static void revokeLease(int workerId) {
+        synchronized (SnowflakeIdGeneratorUtil.class) {
+            SnowflakeIdGeneratorUtil current = instance;
+            if (current != null && current.workerId() == workerId) {
+                current.leaseDeadline = Long.MIN_VALUE;
+            }
+        }
+    }
+
+    private int workerId() {
+        return (int) (workerBits >> MACHINE_LEFT);
+    }
+
+    private static SnowflakeIdGeneratorUtil ofWorkerId(int workerId, long initialState) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId can't be greater than " + MAX_WORKER_ID + " or less than 0");
+        }
+        return new SnowflakeIdGeneratorUtil(workerId >> MACHINE_BIT, workerId & MAX_MACHINE_NUM, initialState);
+    }
+
+    /**
+     * 按 MAC 地址与 IP 推导工作节点 ID, 多个节点之间可能重复
+     * @return 工作节点 ID
+     */
+    public static int localWorkerId() {
+        long datacenterId = getDatacenterId();
+        long machineId = getMachineId(datacenterId);
+        return (int) ((datacenterId << MACHINE_BIT) | machineId);
+    }
+
+    /**
+     * 最近一次发放的 ID 的时间戳
+     * @return 毫秒时间戳, 尚未发放时为 0
+     */
+    public long lastTimestamp() {
+        long current = state.get();
+        return current < 0 ? 0L : (current >> SEQUENCE_BIT) + START_STAMP;
     }
 
     // 根据MAC地址生成数据中心ID
@@ -103,41 +246,71 @@ public class SnowflakeIdGeneratorUtil {
         return (sb.toString().hashCode() & 0xfffffff) % (SnowflakeIdGeneratorUtil.MAX_MACHINE_NUM + 1);
     }
 
-    public synchronized long nextId() {
-        long currStamp = getNewStamp();
-        if (currStamp < lastStamp) {
-            throw new RuntimeException("Clock moved backwards. Refusing to generate id");
+    public long nextId() {
+        return toId(reserve(1));
+    }
+
+    /**
+     * 一次预留多个连续的 ID, 用于批量插入
+     * @param n 个数
+     * @return 递增的 ID
+     */
+    public long[] nextIds(int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("The count of ids must be greater than 0.");
         }
+        long last = reserve(n);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = toId(last - n + 1 + i);
+        }
+        return ids;
+    }
 
-        if (currStamp == lastStamp) {
-            // 同一毫秒内，序列号自增
-            sequence = (sequence + 1) & MAX_SEQUENCE;
-            if (sequence == 0L) {
-                // 序列号用完，等待下一毫秒
-                currStamp = getNextMill();
+    /**
+     * 预留 n 个连续的时间戳与序列号组合, 序列号溢出时进位到下一毫秒
+     * @return 预留的最后一个组合
+     */
+    private long reserve(int n) {
+        // 批量预留本身需要占用的毫秒数不计入借用
+        long allowance = MAX_BORROW_MILLIS + ((n - 1) >>> SEQUENCE_BIT);
+        while (true) {
+            long current = state.get();
+            long now = getNewStamp() - START_STAMP;
+            if (now + START_STAMP >= leaseDeadline) {
+                throw new IllegalStateException("Snowflake worker id " + workerId()
+                        + " lease has expired or been released. Refusing to generate id");
+            }
+            long lastStamp = current >> SEQUENCE_BIT;
+            long next;
+            if (now > lastStamp) {
+                // 新的一毫秒，序列号从 0 开始
+                next = (now << SEQUENCE_BIT) + n - 1;
+            } else {
+                if (lastStamp - now > MAX_BACKWARD_MILLIS) {
+                    throw new RuntimeException("Clock moved backwards " + (lastStamp - now)
+                            + " ms. Refusing to generate id");
+                }
+                next = current + n;
+            }
+            long ahead = (next >> SEQUENCE_BIT) - now;
+            if (ahead > allowance) {
+                // 借用过多, 让出 CPU 等待时钟追上
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ahead - allowance));
+                continue;
+            }
+            if (state.compareAndSet(current, next)) {
+                return next;
             }
-        } else {
-            sequence = 0L; // 新的一毫秒，序列号重置
         }
-
-        lastStamp = currStamp;
-
-        return ((currStamp - START_STAMP) << TIMESTAMP_LEFT)
-                | (datacenterId << DATACENTER_LEFT)
-                | (machineId << MACHINE_LEFT)
-                | sequence;
     }
 
-    private long getNextMill() {
-        long mill = getNewStamp();
-        while (mill <= lastStamp) {
-            mill = getNewStamp();
-        }
-        return mill;
+    private long toId(long slot) {
+        return ((slot >> SEQUENCE_BIT) << TIMESTAMP_LEFT) | workerBits | (slot & MAX_SEQUENCE);
     }
 
     private long getNewStamp() {
-        return System.currentTimeMillis();
+        return clock.getAsLong();
     }
 
     // 测试
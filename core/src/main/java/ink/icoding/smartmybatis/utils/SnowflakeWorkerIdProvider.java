@@ -0,0 +1,16 @@
+package ink.icoding.smartmybatis.utils;
+
+/**
+ * 雪花算法工作节点 ID 提供者
+ * 未开启工作节点 ID 租约或租约失败时使用, 默认按 MAC 地址与 IP 推导; 注册为 Spring Bean 后替换默认实现.
+ * @author gsk
+ */
+@FunctionalInterface
+public interface SnowflakeWorkerIdProvider {
+
+    /**
+     * 获取工作节点 ID
+     * @return 工作节点 ID, 高 5 位为数据中心 ID, 低 5 位为机器 ID, 取值 0 ~ 1023
+     */
+    int workerId();
+}
@@ -0,0 +1,118 @@
+package ink.icoding.smartmybatis.utils;
+
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * UUIDv7 生成器(RFC 9562)
+ * 高 48 位为毫秒时间戳, 随后 12 位为毫秒内计数器, 其余 62 位随机, 按生成顺序递增, 插入时集中在索引末尾.
+ * 随机数取自 ThreadLocalRandom, 不经过 SecureRandom 的全局锁; 每毫秒计数器从随机位置开始, 用完时借用下一毫秒.
+ * @author gsk
+ */
+public final class UuidV7GeneratorUtil {
+
+    private static final int COUNTER_BIT = 12;
+
+    private static final long MAX_COUNTER = ~(-1L << COUNTER_BIT);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /**
+     * 最近一次发放的 毫秒时间戳 << 计数器位数 | 计数器
+     */
+    private static final AtomicLong STATE = new AtomicLong();
+
+    private UuidV7GeneratorUtil() {
+    }
+
+    /**
+     * 生成 UUIDv7
+     * @return UUID
+     */
+    public static UUID next() {
+        long slot = nextSlot();
+        long mostSigBits = ((slot >>> COUNTER_BIT) << 16) | 0x7000L | (slot & MAX_COUNTER);
+        long leastSigBits = (ThreadLocalRandom.current().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+        return new UUID(mostSigBits, leastSigBits);
+    }
+
+    /**
+     * 生成 32 位小写十六进制的 UUIDv7
+     * @return 十六进制字符串
+     */
+    public static String nextHex() {
+        UUID uuid = next();
+        char[] chars = new char[32];
+        writeHex(chars, 0, uuid.getMostSignificantBits());
+        writeHex(chars, 16, uuid.getLeastSignificantBits());
+        return new String(chars);
+    }
+
+    /**
+     * 生成 16 字节的 UUIDv7, 用于 BINARY(16) 列
+     * @return 字节数组
+     */
+    public static byte[] nextBytes() {
+        return toBytes(next());
+    }
+
+    /**
+     * UUID 转为 16 字节的大端字节数组
+     * @param uuid UUID
+     * @return 字节数组
+     */
+    public static byte[] toBytes(UUID uuid) {
+        byte[] bytes = new byte[16];
+        long most = uuid.getMostSignificantBits();
+        long least = uuid.getLeastSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (most >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (least >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    /**
+     * 16 字节的大端字节数组转为 UUID
+     * @param bytes 字节数组
+     * @return UUID
+     */
+    public static UUID fromBytes(byte[] bytes) {
+        if (bytes.length != 16) {
+            throw new IllegalArgumentException("UUID bytes must be 16 bytes long, but got " + bytes.length);
+        }
+        long most = 0;
+        long least = 0;
+        for (int i = 0; i < 8; i++) {
+            most = (most << 8) | (bytes[i] & 0xFF);
+            least = (least << 8) | (bytes[8 + i] & 0xFF);
+        }
+        return new UUID(most, least);
+    }
+
+    private static long nextSlot() {
+        while (true) {
+            long current = STATE.get();
+            long now = System.currentTimeMillis();
+            long next;
+            if (now > current >>> COUNTER_BIT) {
+                // 新的一毫秒, 计数器从随机位置开始, 保留一半空间用于递增
+                next = (now << COUNTER_BIT) | ThreadLocalRandom.current().nextInt(1 << (COUNTER_BIT - 1));
+            } else {
+                // 同一毫秒或时钟回拨, 计数器递增, 溢出时进位到下一毫秒
+                next = current + 1;
+            }
+            if (STATE.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    private static void writeHex(char[] chars, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            chars[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+}
@@ -7,6 +7,7 @@ import java.lang.reflect.Field;
 
 /**
  * 列声明信息
+ * 解析实体时逐项填充, 发布到 MapperDeclaration 或字段缓存后为只读副本, 此时调用 setter 抛出 UnsupportedOperationException
  * @author gsk
  */
 public class ColumnDeclaration {
@@ -21,6 +22,8 @@ public class ColumnDeclaration {
 
     private boolean json;
 
+    private boolean lazy;
+
     private String description;
 
     private TableField annotation;
@@ -29,11 +32,17 @@ public class ColumnDeclaration {
 
     private String alias;
 
+    /**
+     * 是否只读
+     */
+    private boolean readOnly;
+
     public Field getField() {
         return field;
     }
 
     public void setField(Field field) {
+        checkWritable();
         this.field = field;
     }
 
@@ -42,6 +51,7 @@ public class ColumnDeclaration {
     }
 
     public void setFieldName(String fieldName) {
+        checkWritable();
         this.fieldName = fieldName;
     }
 
@@ -50,6 +60,7 @@ public class ColumnDeclaration {
     }
 
     public void setColumnName(String columnName) {
+        checkWritable();
         this.columnName = columnName;
     }
 
@@ -58,6 +69,7 @@ public class ColumnDeclaration {
     }
 
     public void setColumnType(String columnType) {
+        checkWritable();
         this.columnType = columnType;
     }
 
@@ -66,14 +78,25 @@ public class ColumnDeclaration {
     }
 
     public void setJson(boolean json) {
+        checkWritable();
         this.json = json;
     }
 
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    public void setLazy(boolean lazy) {
+        checkWritable();
+        this.lazy = lazy;
+    }
+
     public String getDescription() {
         return description;
     }
 
     public void setDescription(String description) {
+        checkWritable();
         this.description = description;
     }
 
@@ -82,6 +105,7 @@ public class ColumnDeclaration {
     }
 
     public void setAnnotation(TableField annotation) {
+        checkWritable();
         this.annotation = annotation;
     }
 
@@ -90,6 +114,7 @@ public class ColumnDeclaration {
     }
 
     public void setLink(boolean link) {
+        checkWritable();
         this.link = link;
     }
 
@@ -98,6 +123,44 @@ public class ColumnDeclaration {
     }
 
     public void setAlias(String alias) {
+        checkWritable();
         this.alias = alias;
     }
+
+    /**
+     * 是否只读
+     */
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * 获取只读副本, 已经只读时返回自身
+     * @return 只读的列声明
+     */
+    public ColumnDeclaration readOnlyCopy() {
+        if (readOnly) {
+            return this;
+        }
+        ColumnDeclaration copy = new ColumnDeclaration();
+        copy.field = field;
+        copy.fieldName = fieldName;
+        copy.columnName = columnName;
+        copy.columnType = columnType;
+        copy.json = json;
+        copy.lazy = lazy;
+        copy.description = description;
+        copy.annotation = annotation;
+        copy.link = link;
+        copy.alias = alias;
+        copy.readOnly = true;
+        return copy;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new UnsupportedOperationException("Column declaration " + fieldName
+                    + " is read-only, use a new ColumnDeclaration instead.");
+        }
+    }
 }
@@ -3,113 +3,186 @@ package ink.icoding.smartmybatis.utils.entity;
 import ink.icoding.smartmybatis.entity.po.PO;
 import ink.icoding.smartmybatis.entity.po.enums.PrimaryGenerateType;
 import ink.icoding.smartmybatis.entity.po.enums.TableField;
+import ink.icoding.smartmybatis.entity.po.enums.TableName;
+import ink.icoding.smartmybatis.mapper.shard.ShardResolver;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.UUID;
 import java.util.stream.Collectors;
 
 /**
  * Mapper 声明信息
+ * 由 MapperUtil 解析实体后一次性构建, 也可通过 {@link #builder()} 构建; 构建后不可修改, 列声明保存为只读副本, 可在多线程间直接共享
  * @author gsk
  */
 public class MapperDeclaration {
 
-    private Class<? extends PO> poClass;
+    /**
+     * 以 BINARY(16) 存储的 UUID 主键使用的类型处理器, 只在生成的主键占位符和结果映射上指定
+     */
+    public static final String UUID_BINARY_TYPE_HANDLER = "ink.icoding.smartmybatis.mapper.handlers.UuidBinaryTypeHandler";
 
-    private String tableName;
+    private final Class<? extends PO> poClass;
 
-    private Class<? extends Serializable> pkClass;
+    private final String tableName;
 
-    private String pkName;
+    private final Class<? extends Serializable> pkClass;
 
-    private String pkColumnName;
+    private final String pkName;
 
-    private PrimaryGenerateType pkGenerateType;
+    private final String pkColumnName;
 
-    private List<ColumnDeclaration> columnDeclarations;
+    private final PrimaryGenerateType pkGenerateType;
 
-    private TableField pkAnnotation;
+    private final List<ColumnDeclaration> columnDeclarations;
 
-    private String initScriptResourcePath;
+    /**
+     * 非关联列声明
+     */
+    private final List<ColumnDeclaration> tableColumnDeclarations;
 
-    private String baseInsertSql;
+    private final TableField pkAnnotation;
 
-    public Class<? extends PO> getPoClass() {
-        return poClass;
+    /**
+     * 主键是否以 BINARY(16) 存储
+     */
+    private final boolean binaryPk;
+
+    private final String initScriptResourcePath;
+
+    private final String baseInsertSql;
+
+    private final String baseUpdateByIdSql;
+
+    /**
+     * 分表解析器, 未分表时为 null
+     */
+    private final ShardResolver shardResolver;
+
+    protected MapperDeclaration(Builder builder) {
+        this.poClass = builder.poClass;
+        this.tableName = builder.tableName;
+        this.pkClass = builder.pkClass;
+        this.pkName = builder.pkName;
+        this.pkColumnName = builder.pkColumnName;
+        this.pkGenerateType = builder.pkGenerateType;
+        this.pkAnnotation = builder.pkAnnotation;
+        this.binaryPk = isBinaryPk(pkGenerateType, pkClass);
+        // 保存列声明的只读副本, 并预先筛选出非关联列
+        List<ColumnDeclaration> readOnlyColumns = new ArrayList<>(builder.columnDeclarations.size());
+        for (ColumnDeclaration columnDeclaration : builder.columnDeclarations) {
+            readOnlyColumns.add(columnDeclaration.readOnlyCopy());
+        }
+        this.columnDeclarations = Collections.unmodifiableList(readOnlyColumns);
+        this.tableColumnDeclarations = Collections.unmodifiableList(readOnlyColumns.stream()
+                .filter(cd -> !cd.isLink()).collect(Collectors.toList()));
+        this.initScriptResourcePath = builder.initScriptResourcePath;
+        this.baseInsertSql = buildBaseInsertSql();
+        this.baseUpdateByIdSql = buildBaseUpdateByIdSql();
+        this.shardResolver = createShardResolver();
     }
 
-    public void setPoClass(Class<? extends PO> poClass) {
-        this.poClass = poClass;
+    /**
+     * 创建 Mapper 声明构建器
+     * @return 构建器
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
-    public String getTableName() {
-        return tableName;
+    public Class<? extends PO> getPoClass() {
+        return poClass;
     }
 
-    public void setTableName(String tableName) {
-        this.tableName = tableName;
+    public String getTableName() {
+        return tableName;
     }
 
     public Class<? extends Serializable> getPkClass() {
         return pkClass;
     }
 
-    public void setPkClass(Class<? extends Serializable> pkClass) {
-        this.pkClass = pkClass;
-    }
-
     public String getPkName() {
         return pkName;
     }
 
-    public void setPkName(String pkName) {
-        this.pkName = pkName;
-    }
-
     public String getPkColumnName() {
         return pkColumnName;
     }
 
-    public void setPkColumnName(String pkColumnName) {
-        this.pkColumnName = pkColumnName;
-    }
-
     public List<ColumnDeclaration> getColumnDeclarations() {
         return getColumnDeclarations(false);
     }
 
+    /**
+     * 获取列声明
+     * @param includeLinked 是否包含关联列
+     * @return 只读的列声明
+     */
     public List<ColumnDeclaration> getColumnDeclarations(boolean includeLinked) {
         if (includeLinked) {
             return columnDeclarations;
         }
-        return columnDeclarations.stream().filter(cd -> !cd.isLink()).collect(Collectors.toList());
-    }
-
-    public void setColumnDeclarations(List<ColumnDeclaration> columnDeclarations) {
-        this.columnDeclarations = columnDeclarations;
+        return tableColumnDeclarations;
     }
 
     public PrimaryGenerateType getPkGenerateType() {
         return pkGenerateType;
     }
 
-    public void setPkGenerateType(PrimaryGenerateType pkGenerateType) {
-        this.pkGenerateType = pkGenerateType;
-    }
-
     public TableField getPkAnnotation() {
         return pkAnnotation;
     }
 
-    public void setPkAnnotation(TableField pkAnnotation) {
-        this.pkAnnotation = pkAnnotation;
+    /**
+     * 主键是否以 BINARY(16) 存储, 即 UUID_V7 生成的 UUID 类型主键
+     */
+    public boolean isBinaryPk() {
+        return binaryPk;
+    }
+
+    /**
+     * 判断主键是否以 BINARY(16) 存储
+     * @param generateType 主键生成策略
+     * @param pkClass 主键类型
+     * @return UUID_V7 生成的 UUID 类型主键返回 true
+     */
+    public static boolean isBinaryPk(PrimaryGenerateType generateType, Class<?> pkClass) {
+        return generateType == PrimaryGenerateType.UUID_V7 && pkClass == UUID.class;
+    }
+
+    /**
+     * 生成主键参数占位符, BINARY(16) 主键附带 UUID 类型处理器
+     * @param expression 参数表达式, 如 record.id
+     * @return 主键参数占位符
+     */
+    public String pkPlaceholder(String expression) {
+        if (binaryPk) {
+            return "#{" + expression + ", typeHandler=" + UUID_BINARY_TYPE_HANDLER + "}";
+        }
+        return "#{" + expression + "}";
     }
 
     public String getBaseInsertSql() {
         return baseInsertSql;
     }
 
-    public void buildBaseSql(){
+    public String getBaseUpdateByIdSql() {
+        return baseUpdateByIdSql;
+    }
+
+    /**
+     * 基础 SQL 已在构建时生成, 保留此方法只为兼容旧的调用方式
+     * @deprecated 构建后即可直接获取 {@link #getBaseInsertSql()} 与 {@link #getBaseUpdateByIdSql()}
+     */
+    @Deprecated
+    public void buildBaseSql() {
+    }
+
+    private String buildBaseInsertSql() {
         StringBuilder sql = new StringBuilder("INSERT INTO ");
         sql.append("`").append(getTableName()).append("`");
         sql.append(" (");
@@ -138,12 +211,32 @@ public class MapperDeclaration {
                 valuesPart.append(", ");
             }
             sql.append("`").append(getPkColumnName()).append("`");
-            valuesPart.append("#{record.").append(getPkName()).append("}");
+            valuesPart.append(pkPlaceholder("record." + getPkName()));
         }
         sql.append(")");
         valuesPart.append(")");
         sql.append(valuesPart);
-        baseInsertSql = sql.toString();
+        return sql.toString();
+    }
+
+    private String buildBaseUpdateByIdSql() {
+        List<ColumnDeclaration> columnDeclarations = getColumnDeclarations();
+        StringBuilder updateSql = new StringBuilder("UPDATE `").append(getTableName()).append("` SET ");
+        for (int i = 0; i < columnDeclarations.size(); i++) {
+            ColumnDeclaration columnDeclaration = columnDeclarations.get(i);
+            updateSql.append("`").append(columnDeclaration.getColumnName()).append("` = ");
+            updateSql.append("#{record.").append(columnDeclaration.getFieldName());
+            if (columnDeclaration.isJson()){
+                updateSql.append(", typeHandler=ink.icoding.smartmybatis.mapper.handlers.SmartJsonTypeHandler");
+            }
+            updateSql.append("}");
+            if (i < columnDeclarations.size() - 1) {
+                updateSql.append(", ");
+            }
+        }
+        updateSql.append(" WHERE `").append(getPkColumnName())
+                .append("` = ").append(pkPlaceholder("record." + getPkName()));
+        return updateSql.toString();
     }
 
     @Override
@@ -167,10 +260,109 @@ public class MapperDeclaration {
     }
 
     /**
-     * 设置初始化脚本路径
-     * @param initScriptResourcePath 初始化脚本路径
+     * 获取分表解析器, 按 @TableName(shardResolver = ...) 创建
+     * @return 分表解析器, 未分表时返回 null
+     */
+    public ShardResolver getShardResolver() {
+        return shardResolver;
+    }
+
+    /**
+     * 是否分表
+     */
+    public boolean isSharded() {
+        return null != shardResolver;
+    }
+
+    private ShardResolver createShardResolver() {
+        TableName tableName = null == poClass ? null : poClass.getAnnotation(TableName.class);
+        if (null == tableName || tableName.shardResolver() == ShardResolver.class) {
+            return null;
+        }
+        try {
+            return tableName.shardResolver().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create shard resolver " + tableName.shardResolver().getName()
+                    + " for " + poClass.getName() + ", a no-arg constructor is required.", e);
+        }
+    }
+
+    /**
+     * Mapper 声明构建器
      */
-    public void setInitScriptResourcePath(String initScriptResourcePath) {
-        this.initScriptResourcePath = initScriptResourcePath;
+    public static class Builder {
+
+        private Class<? extends PO> poClass;
+
+        private String tableName;
+
+        private Class<? extends Serializable> pkClass;
+
+        private String pkName;
+
+        private String pkColumnName;
+
+        private PrimaryGenerateType pkGenerateType;
+
+        private TableField pkAnnotation;
+
+        private List<ColumnDeclaration> columnDeclarations = Collections.emptyList();
+
+        private String initScriptResourcePath;
+
+        protected Builder() {
+        }
+
+        public Builder poClass(Class<? extends PO> poClass) {
+            this.poClass = poClass;
+            return this;
+        }
+
+        public Builder tableName(String tableName) {
+            this.tableName = tableName;
+            return this;
+        }
+
+        public Builder pkClass(Class<? extends Serializable> pkClass) {
+            this.pkClass = pkClass;
+            return this;
+        }
+
+        public Builder pkName(String pkName) {
+            this.pkName = pkName;
+            return this;
+        }
+
+        public Builder pkColumnName(String pkColumnName) {
+            this.pkColumnName = pkColumnName;
+            return this;
+        }
+
+        public Builder pkGenerateType(PrimaryGenerateType pkGenerateType) {
+            this.pkGenerateType = pkGenerateType;
+            return this;
+        }
+
+        public Builder pkAnnotation(TableField pkAnnotation) {
+            this.pkAnnotation = pkAnnotation;
+            return this;
+        }
+
+        /**
+         * 设置列声明, 构建时保存为只读副本, 之后修改传入的列声明不影响已构建的 Mapper 声明
+         */
+        public Builder columnDeclarations(List<ColumnDeclaration> columnDeclarations) {
+            this.columnDeclarations = null == columnDeclarations ? Collections.emptyList() : columnDeclarations;
+            return this;
+        }
+
+        public Builder initScriptResourcePath(String initScriptResourcePath) {
+            this.initScriptResourcePath = initScriptResourcePath;
+            return this;
+        }
+
+        public MapperDeclaration build() {
+            return new MapperDeclaration(this);
+        }
     }
 }
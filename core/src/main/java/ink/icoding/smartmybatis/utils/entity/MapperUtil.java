@@ -11,10 +11,13 @@ import ink.icoding.smartmybatis.mapper.base.SmartMapper;
 import ink.icoding.smartmybatis.utils.NamingUtil;
 import org.springframework.util.StringUtils;
 
+import java.io.Serializable;
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.stream.Collectors;
 
 /**
@@ -24,18 +27,39 @@ import java.util.stream.Collectors;
 public class MapperUtil {
 
     /**
-     * Mapper 声明缓存
+     * Mapper 声明缓存, 以 Mapper 接口为键, 读取无锁且不会阻止 Mapper 类被卸载
      */
-    private static final Map<Class<?>, MapperDeclaration> MAPPER_DECLARATION_MAP = new HashMap<>();
+    private static final ClassValue<MapperDeclaration> MAPPER_DECLARATIONS = new ClassValue<MapperDeclaration>() {
+        @Override
+        protected MapperDeclaration computeValue(Class<?> mapperType) {
+            return getMapperDeclarationByPoClass(resolvePoClass(mapperType));
+        }
+    };
 
     /**
      * PO 类对应的 Mapper 声明缓存
      */
-    private static final Map<Class<?>, MapperDeclaration> PO_MAPPER_DECLARATION_MAP = new HashMap<>();
+    private static final ConcurrentMap<Class<?>, MapperDeclaration> PO_MAPPER_DECLARATION_MAP = new ConcurrentHashMap<>();
+
     /**
-     * 字段列声明缓存
+     * 字段列声明缓存, 以字段本身为键, 不同实体的同名字段互不影响
      */
-    private static final Map<String, ColumnDeclaration> FIELD_COLUMN_DECLARATION_MAP = new HashMap<>();
+    private static final ConcurrentMap<Field, ColumnDeclaration> FIELD_COLUMN_DECLARATION_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 实体类的字段缓存(已设置可访问), 用于读写字段值
+     */
+    private static final ClassValue<Map<String, Field>> ACCESSIBLE_FIELDS = new ClassValue<Map<String, Field>>() {
+        @Override
+        protected Map<String, Field> computeValue(Class<?> type) {
+            Map<String, Field> fields = new HashMap<>();
+            for (Field field : type.getDeclaredFields()) {
+                field.setAccessible(true);
+                fields.put(field.getName(), field);
+            }
+            return Collections.unmodifiableMap(fields);
+        }
+    };
 
     private static final String GENERATED_META_SUBPACKAGE = ".M.";
     private static final String GENERATED_META_PREFIX = "$";
@@ -46,10 +70,16 @@ public class MapperUtil {
      * @return Mapper 声明信息
      */
     public static MapperDeclaration getMapperDeclaration(Class<?> mapperType) {
-        if (MAPPER_DECLARATION_MAP.containsKey(mapperType)) {
-            return MAPPER_DECLARATION_MAP.get(mapperType);
-        }
-        Class<? extends PO> classType = null;
+        return MAPPER_DECLARATIONS.get(mapperType);
+    }
+
+    /**
+     * 解析 Mapper 泛型中声明的 PO 类
+     * @param mapperType mapper 类
+     * @return PO 类
+     */
+    @SuppressWarnings("unchecked")
+    private static Class<? extends PO> resolvePoClass(Class<?> mapperType) {
         Type[] genericInterfaces = mapperType.getGenericInterfaces();
         for (Type type : genericInterfaces) {
             if (type instanceof ParameterizedType) {
@@ -61,33 +91,22 @@ public class MapperUtil {
                     if (arg instanceof Class) {
                         Class<?> argClass = (Class<?>) arg;
                         if (PO.class.isAssignableFrom(argClass)) {
-                            classType = (Class<? extends PO>) argClass;
-                            break;
+                            return (Class<? extends PO>) argClass;
                         }
                     }
                 }
             }
         }
-
-        if (classType == null) {
-            throw new IllegalArgumentException("Failed to determine PO class for mapper, " +
-                    "not found generic type extends PO at:" + mapperType.getName());
-        }
-        // 字段
-        MapperDeclaration declaration = getMapperDeclarationByPoClass(classType);
-        MAPPER_DECLARATION_MAP.put(mapperType, declaration);
-        return declaration;
+        throw new IllegalArgumentException("Failed to determine PO class for mapper, " +
+                "not found generic type extends PO at:" + mapperType.getName());
     }
 
-
-
-
     /**
-     * 应用表名到 Mapper 声明
-     * @param declaration Mapper 声明
+     * 解析实体的表名
+     * @param poClass PO 类
+     * @return 表名
      */
-    private static void applyTableName(MapperDeclaration declaration){
-        Class<? extends PO> poClass = declaration.getPoClass();
+    private static String resolveTableName(Class<? extends PO> poClass){
         if (null == poClass){
             throw new IllegalArgumentException("PO class is null");
         }
@@ -118,16 +137,21 @@ public class MapperUtil {
                 name = prefix + name;
             }
         }
-        declaration.setTableName(name);
+        return name;
     }
 
     public static ColumnDeclaration getColumnDeclaration(Field field){
-        ColumnDeclaration columnDeclaration = FIELD_COLUMN_DECLARATION_MAP.get(field.getName());
+        ColumnDeclaration columnDeclaration = FIELD_COLUMN_DECLARATION_MAP.get(field);
         if (null == columnDeclaration){
             columnDeclaration = new ColumnDeclaration();
             columnDeclaration.setField(field);
             applyFieldColumnName(columnDeclaration);
-            FIELD_COLUMN_DECLARATION_MAP.put(field.getName(), columnDeclaration);
+            // 缓存的列声明在多个 Mapper 声明与 Lambda 解析结果间共享, 发布前转为只读
+            columnDeclaration = columnDeclaration.readOnlyCopy();
+            ColumnDeclaration existing = FIELD_COLUMN_DECLARATION_MAP.putIfAbsent(field, columnDeclaration);
+            if (null != existing){
+                columnDeclaration = existing;
+            }
         }
         return columnDeclaration;
     }
@@ -142,6 +166,7 @@ public class MapperUtil {
         declaration.setColumnName(getFieldColumnName(tableField, field));
         declaration.setFieldName(field.getName());
         declaration.setJson(tableField != null && tableField.json());
+        declaration.setLazy(tableField != null && tableField.lazy());
         declaration.setColumnType(NamingUtil.javaTypeToSqlType(field.getType(), tableField));
         declaration.setAnnotation(tableField);
         if (null != tableField){
@@ -184,7 +209,7 @@ public class MapperUtil {
         StringBuilder sb = new StringBuilder("CREATE TABLE `").append(declaration.getTableName()).append("` (\n");
         // 主键字段
         sb.append("`").append(declaration.getPkColumnName()).append("` ")
-                .append(NamingUtil.javaTypeToSqlType(declaration.getPkClass(), declaration.getPkAnnotation()))
+                .append(pkColumnType(declaration))
                 .append(" NOT NULL ");
         if (declaration.getPkGenerateType() == PrimaryGenerateType.AUTO){
             sb.append("AUTO_INCREMENT ");
@@ -239,7 +264,7 @@ public class MapperUtil {
         // 2.1 若数据库缺失主键列（保守补齐）
         boolean pkExists = existMap.containsKey(pkName.toLowerCase());
         if (!pkExists) {
-            String pkType = NamingUtil.javaTypeToSqlType(declaration.getPkClass(), declaration.getPkAnnotation());
+            String pkType = pkColumnType(declaration);
             StringBuilder pkDef = new StringBuilder();
             pkDef.append("ADD COLUMN `").append(pkName).append("` ")
                     .append(pkType).append(" NOT NULL ");
@@ -295,6 +320,18 @@ public class MapperUtil {
         smartMapper.executeSql(sql);
     }
 
+    /**
+     * 主键列类型: UUID_V7 的 String 主键使用 CHAR(32), UUID 主键使用 BINARY(16), 其他按 Java 类型推导; 注解指定的列类型优先
+     */
+    private static String pkColumnType(MapperDeclaration declaration) {
+        TableField pkAnnotation = declaration.getPkAnnotation();
+        boolean customType = null != pkAnnotation && null != pkAnnotation.columnType() && !pkAnnotation.columnType().isEmpty();
+        if (!customType && declaration.getPkGenerateType() == PrimaryGenerateType.UUID_V7) {
+            return declaration.isBinaryPk() ? "BINARY(16)" : "CHAR(32)";
+        }
+        return NamingUtil.javaTypeToSqlType(declaration.getPkClass(), pkAnnotation);
+    }
+
     /**
      * 构造列定义（与 generateTable 风格一致：默认 DEFAULT NULL + 可选 COMMENT）
      * 示例返回：`name` VARCHAR(64) COMMENT '说明' DEFAULT NULL
@@ -340,9 +377,7 @@ public class MapperUtil {
 
     public static <T extends PO> Object getFieldValue(T record, String fieldName) {
         try {
-            Field field = record.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            return field.get(record);
+            return getAccessibleField(record.getClass(), fieldName).get(record);
         } catch (NoSuchFieldException | IllegalAccessException e) {
             throw new RuntimeException("Failed to get field value: " + fieldName, e);
         }
@@ -350,59 +385,85 @@ public class MapperUtil {
 
     public static <T extends PO> void setFieldValue(T record, String fieldName, Object replace) {
         try {
-            Field field = record.getClass().getDeclaredField(fieldName);
-            field.setAccessible(true);
-            field.set(record, replace);
+            getAccessibleField(record.getClass(), fieldName).set(record, replace);
         } catch (NoSuchFieldException | IllegalAccessException e) {
             throw new RuntimeException("Failed to set field value: " + fieldName, e);
         }
     }
 
-    public static MapperDeclaration getMapperDeclarationByPoClass(Class<? extends PO> poClass) {
-        if (PO_MAPPER_DECLARATION_MAP.containsKey(poClass)) {
-            return PO_MAPPER_DECLARATION_MAP.get(poClass);
+    private static Field getAccessibleField(Class<?> type, String fieldName) throws NoSuchFieldException {
+        Field field = ACCESSIBLE_FIELDS.get(type).get(fieldName);
+        if (null == field) {
+            throw new NoSuchFieldException(fieldName);
         }
+        return field;
+    }
 
-        MapperDeclaration generatedDeclaration = resolveGeneratedMapperDeclaration(poClass);
-        if (generatedDeclaration != null) {
-            PO_MAPPER_DECLARATION_MAP.put(poClass, generatedDeclaration);
-            return generatedDeclaration;
+    /**
+     * 将主键转换为实体主键字段的类型, 使调用方传入的主键可以与查询结果中的主键直接比较
+     * @param id 主键
+     * @param pkClass 主键字段类型
+     * @return 转换后的主键
+     */
+    public static Serializable normalizeId(Serializable id, Class<?> pkClass) {
+        if (id instanceof Number && (pkClass == Long.class || pkClass == long.class)) {
+            return ((Number) id).longValue();
+        }
+        if (id instanceof Number && (pkClass == Integer.class || pkClass == int.class)) {
+            return ((Number) id).intValue();
+        }
+        if (null != id && pkClass == String.class && !(id instanceof String)) {
+            return id.toString();
         }
+        return id;
+    }
 
-        for (MapperDeclaration declaration : MAPPER_DECLARATION_MAP.values()) {
-            if (declaration.getPoClass().equals(poClass)) {
-                PO_MAPPER_DECLARATION_MAP.put(poClass, declaration);
-                return declaration;
-            }
+    public static MapperDeclaration getMapperDeclarationByPoClass(Class<? extends PO> poClass) {
+        MapperDeclaration declaration = PO_MAPPER_DECLARATION_MAP.get(poClass);
+        if (null != declaration) {
+            return declaration;
         }
 
-        MapperDeclaration declaration = buildMapperDeclarationByPoClass(poClass);
-        PO_MAPPER_DECLARATION_MAP.put(poClass, declaration);
-        return declaration;
+        declaration = resolveGeneratedMapperDeclaration(poClass);
+        if (declaration == null) {
+            declaration = buildMapperDeclarationByPoClass(poClass);
+        }
+        // 并发首次访问时只发布先完成的声明, 保证所有线程拿到同一个实例
+        MapperDeclaration existing = PO_MAPPER_DECLARATION_MAP.putIfAbsent(poClass, declaration);
+        return null == existing ? declaration : existing;
     }
 
     public static MapperDeclaration buildMapperDeclarationByPoClass(Class<? extends PO> poClass) {
-        MapperDeclaration declaration = new MapperDeclaration();
-        declaration.setPoClass(poClass);
-        Field[] declaredFields = declaration.getPoClass().getDeclaredFields();
+        Field[] declaredFields = poClass.getDeclaredFields();
+        Field pkField = null;
+        ID pkId = null;
         List<ColumnDeclaration> columnDeclarations = new ArrayList<>();
         for (Field field : declaredFields) {
             ID id = field.getAnnotation(ID.class);
             if (null != id){
-                if (declaration.getPkName() != null){
+                if (pkField != null){
                     throw new IllegalArgumentException("Multiple primary key fields found in mapper:" +
-                            declaration.getPoClass().getName() + ", fields:" + declaration.getPkName() + " and " + field.getName());
+                            poClass.getName() + ", fields:" + pkField.getName() + " and " + field.getName());
                 }
-                declaration.setPkName(field.getName());
-                declaration.setPkClass((Class<? extends java.io.Serializable>) field.getType());
-                declaration.setPkColumnName(getFieldColumnName(field.getAnnotation(TableField.class), field));
-                declaration.setPkGenerateType(id.generateType());
-                declaration.setPkAnnotation(field.getAnnotation(TableField.class));
-                if (id.generateType() != PrimaryGenerateType.AUTO && id.generateType() != PrimaryGenerateType.INPUT){
-                    if (declaration.getPkClass() != String.class){
+                pkField = field;
+                pkId = id;
+                if (id.generateType() == PrimaryGenerateType.UUID_V7){
+                    if (field.getType() != String.class && field.getType() != java.util.UUID.class){
+                        throw new IllegalArgumentException("Primary key field with generate type "
+                                + id.generateType() + " must be String or UUID type, but found "
+                                + field.getType().getName() + ", in mapper:" + poClass.getName());
+                    }
+                }else if (id.generateType() == PrimaryGenerateType.SEGMENT){
+                    if (field.getType() != String.class && field.getType() != Long.class && field.getType() != Integer.class){
+                        throw new IllegalArgumentException("Primary key field with generate type "
+                                + id.generateType() + " must be Long, Integer or String type, but found "
+                                + field.getType().getName() + ", in mapper:" + poClass.getName());
+                    }
+                }else if (id.generateType() != PrimaryGenerateType.AUTO && id.generateType() != PrimaryGenerateType.INPUT){
+                    if (field.getType() != String.class){
                         throw new IllegalArgumentException("Primary key field with generate type "
                                 + id.generateType() + " must be String type, but found "
-                                + declaration.getPkClass().getName() + ", in mapper:" + poClass.getName());
+                                + field.getType().getName() + ", in mapper:" + poClass.getName());
                     }
                 }
             }else{
@@ -420,16 +481,26 @@ public class MapperUtil {
                 columnDeclarations.add(columnDeclaration);
             }
         }
-        if (null == declaration.getPkName()){
+        if (null == pkField){
             throw new IllegalArgumentException("Primary key field not found in mapper:" + poClass.getName());
         }
-        applyTableName(declaration);
-        declaration.setColumnDeclarations(columnDeclarations);
         TableName annotation = poClass.getAnnotation(TableName.class);
+        String initScriptResourcePath = null;
         if (null != annotation && annotation.init() != null && !annotation.init().isEmpty()){
-            declaration.setInitScriptResourcePath(annotation.init());
+            initScriptResourcePath = annotation.init();
         }
-        return declaration;
+        TableField pkAnnotation = pkField.getAnnotation(TableField.class);
+        return MapperDeclaration.builder()
+                .poClass(poClass)
+                .tableName(resolveTableName(poClass))
+                .pkClass((Class<? extends java.io.Serializable>) pkField.getType())
+                .pkName(pkField.getName())
+                .pkColumnName(getFieldColumnName(pkAnnotation, pkField))
+                .pkGenerateType(pkId.generateType())
+                .pkAnnotation(pkAnnotation)
+                .columnDeclarations(columnDeclarations)
+                .initScriptResourcePath(initScriptResourcePath)
+                .build();
     }
 
     private static ColumnDeclaration buildLinkColumnDeclaration(Field field, TableField tableField) {
@@ -466,6 +537,7 @@ public class MapperUtil {
                 declaration.setColumnName(getFieldColumnName(tableField, field));
                 declaration.setColumnType(NamingUtil.javaTypeToSqlType(field.getType(), tableField));
                 declaration.setJson(tableField != null && tableField.json());
+                declaration.setLazy(tableField != null && tableField.lazy());
                 declaration.setAnnotation(tableField);
                 if (tableField != null) {
                     declaration.setDescription(tableField.description());
@@ -0,0 +1,54 @@
+package ink.icoding.smartmybatis.entity.expression;
+
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.ID;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+/**
+ * 条件对象测试
+ * @author gsk
+ */
+public class WhereTest extends TestCase {
+
+    public void testCopyDoesNotChangeOriginal() {
+        Where where = Where.where(UserPO::getId, C.IN, Arrays.asList(1L, 2L, 3L))
+                .and(UserPO::getName, C.EQ, "smart")
+                .limit(10, 20);
+
+        Where copy = where.copy();
+        copy.getExpressions().set(0, new ComparisonExpression<>(UserPO::getId, C.IN, Arrays.asList(1L), Link.AND));
+        copy.getExpressions().remove(1);
+        copy.limit(0, 30);
+        copy.orderBy(UserPO::getName, SortDirection.ASC);
+
+        assertEquals(2, where.getExpressions().size());
+        assertEquals(Arrays.asList(1L, 2L, 3L), ((ComparisonExpression<?>) where.getExpressions().get(0)).getValue());
+        assertEquals(10, where.getLimitStart());
+        assertEquals(20, where.getLimitSize());
+        assertNull(where.getSortExpressions());
+    }
+
+    public void testCopySharesUnchangedExpressions() {
+        Where where = Where.where(UserPO::getName, C.EQ, "smart");
+
+        Where copy = where.copy();
+
+        assertSame(where.getExpressions().get(0), copy.getExpressions().get(0));
+    }
+
+    public static class UserPO extends PO {
+        @ID
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package ink.icoding.smartmybatis.mapper.provider;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.expression.Where;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.ID;
+import ink.icoding.smartmybatis.entity.po.enums.TableField;
+import ink.icoding.smartmybatis.utils.entity.MapperDeclaration;
+import ink.icoding.smartmybatis.utils.entity.MapperUtil;
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * SQL 生成测试
+ * @author gsk
+ */
+public class BaseSqlProviderTest extends TestCase {
+
+    private MapperDeclaration declaration;
+
+    @Override
+    protected void setUp() {
+        SmartConfigHolder.init(new GlobalConfig());
+        declaration = MapperUtil.buildMapperDeclarationByPoClass(ArticlePO.class);
+    }
+
+    public void testLazyColumnIsUnloadedByDefault() {
+        assertEquals(Collections.singletonList("content"), BaseSqlProvider.unloadedFields(declaration, null));
+        assertEquals(Collections.singletonList("content"), BaseSqlProvider.unloadedFields(declaration, Where.where()));
+    }
+
+    public void testSelectedProjectionMarksOtherColumnsUnloaded() {
+        Where where = Where.where().select(ArticlePO::getTitle);
+
+        assertEquals(Arrays.asList("author", "content"), BaseSqlProvider.unloadedFields(declaration, where));
+    }
+
+    public void testExcludedColumnIsUnloaded() {
+        Where where = Where.where().exclude(ArticlePO::getAuthor);
+
+        assertEquals(Arrays.asList("author", "content"), BaseSqlProvider.unloadedFields(declaration, where));
+    }
+
+    public void testSelectedLazyColumnIsLoaded() {
+        Where where = Where.where().select(ArticlePO::getTitle, ArticlePO::getAuthor, ArticlePO::getContent);
+
+        assertTrue(BaseSqlProvider.unloadedFields(declaration, where).isEmpty());
+    }
+
+    public static class ArticlePO extends PO {
+        @ID
+        private Long id;
+        private String title;
+        private String author;
+        @TableField(lazy = true)
+        private String content;
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public String getContent() {
+            return content;
+        }
+    }
+}
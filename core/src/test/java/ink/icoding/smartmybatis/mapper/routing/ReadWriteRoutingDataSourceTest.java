@@ -0,0 +1,141 @@
+package ink.icoding.smartmybatis.mapper.routing;
+
+import ink.icoding.smartmybatis.mapper.interceptor.ReadRoutingInterceptor;
+import junit.framework.TestCase;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.h2.jdbcx.JdbcDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+
+/**
+ * 读写分离测试
+ * 主库与从库为两个内存数据库, 同一主键在两库中的 name 不同, 由查询结果判断语句实际使用的数据源
+ * @author gsk
+ */
+public class ReadWriteRoutingDataSourceTest extends TestCase {
+
+    private DataSource primary;
+
+    private DataSource replica;
+
+    private ReadWriteRoutingDataSource routingDataSource;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Override
+    protected void setUp() throws Exception {
+        String suffix = getName() + System.nanoTime();
+        primary = database("primary_" + suffix, "primary");
+        replica = database("replica_" + suffix, "replica");
+        routingDataSource = new ReadWriteRoutingDataSource(primary, Collections.singletonList(replica),
+                ReplicaSelection.ROUND_ROBIN);
+
+        ReadRoutingInterceptor interceptor = new ReadRoutingInterceptor();
+        interceptor.register(RoutingMapper.class);
+        Configuration configuration = new Configuration(
+                new Environment("routing", new JdbcTransactionFactory(), routingDataSource));
+        configuration.addInterceptor(interceptor);
+        configuration.addMapper(RoutingMapper.class);
+        sqlSessionFactory = new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    public void testReadGoesToReplica() {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            assertEquals("replica", session.getMapper(RoutingMapper.class).selectById(1L));
+            assertEquals(1L, session.getMapper(RoutingMapper.class).count());
+        }
+        // 从库连接随会话关闭归还
+        assertEquals(0, routingDataSource.getActiveConnections(0));
+    }
+
+    public void testWriteGoesToPrimary() throws SQLException {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            assertEquals(1, session.getMapper(RoutingMapper.class).insert(2L, "written"));
+        }
+        assertEquals(2L, countRows(primary));
+        assertEquals(1L, countRows(replica));
+    }
+
+    public void testTransactionPinnedToPrimary() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try (SqlSession session = sqlSessionFactory.openSession(false)) {
+            RoutingMapper mapper = session.getMapper(RoutingMapper.class);
+            assertEquals("primary", mapper.selectById(1L));
+            mapper.insert(2L, "written");
+            // 事务中读到自己刚写入的数据
+            assertEquals("written", mapper.selectById(2L));
+            session.rollback();
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(0, routingDataSource.getActiveConnections(0));
+    }
+
+    public void testOnPrimaryForcesPrimary() {
+        try (SqlSession session = sqlSessionFactory.openSession(true)) {
+            RoutingMapper mapper = session.getMapper(RoutingMapper.class);
+            assertEquals("primary", ReadRouting.onPrimary(() -> mapper.selectById(1L)));
+        }
+        assertEquals(ReadRouting.Route.DEFAULT, ReadRouting.current());
+    }
+
+    public void testReplicaConnectionIsReadOnly() throws SQLException {
+        ReadRouting.Route previous = ReadRouting.switchTo(ReadRouting.Route.REPLICA);
+        try (Connection connection = routingDataSource.getConnection()) {
+            assertTrue(connection.isReadOnly());
+            assertEquals(1, routingDataSource.getActiveConnections(0));
+        } finally {
+            ReadRouting.restore(previous);
+        }
+        assertEquals(0, routingDataSource.getActiveConnections(0));
+    }
+
+    private static DataSource database(String name, String value) throws SQLException {
+        JdbcDataSource dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1");
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE t_route (id BIGINT PRIMARY KEY, name VARCHAR(32) NOT NULL)");
+            statement.execute("INSERT INTO t_route (id, name) VALUES (1, '" + value + "')");
+        }
+        return dataSource;
+    }
+
+    private static long countRows(DataSource dataSource) throws SQLException {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM t_route")) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    /**
+     * 方法名与 SmartMapper 一致, 由 ReadRoutingInterceptor 按方法名判断读写
+     */
+    public interface RoutingMapper {
+
+        @Select("SELECT name FROM t_route WHERE id = #{id}")
+        String selectById(long id);
+
+        @Select("SELECT COUNT(*) FROM t_route")
+        long count();
+
+        @Insert("INSERT INTO t_route (id, name) VALUES (#{id}, #{name})")
+        int insert(@Param("id") long id, @Param("name") String name);
+    }
+}
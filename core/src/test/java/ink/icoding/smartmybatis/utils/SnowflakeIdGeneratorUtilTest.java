@@ -0,0 +1,154 @@
+package ink.icoding.smartmybatis.utils;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 雪花算法 ID 生成器测试
+ * @author gsk
+ */
+public class SnowflakeIdGeneratorUtilTest extends TestCase {
+
+    private static final long START_STAMP = 1609459200000L;
+
+    private static final int TIMESTAMP_LEFT = 22;
+
+    private static final long MAX_SEQUENCE = 4095L;
+
+    public void testIdsAreUniqueAndMonotonicUnderConcurrency() throws Exception {
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(1, 1, System::currentTimeMillis);
+        int threads = 8;
+        int perThread = 20000;
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        AtomicReference<String> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    long previous = Long.MIN_VALUE;
+                    for (int i = 0; i < perThread; i++) {
+                        long id = generator.nextId();
+                        if (id <= previous) {
+                            failure.compareAndSet(null, "id " + id + " is not greater than " + previous);
+                        }
+                        previous = id;
+                        ids.add(id);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(threads * perThread, ids.size());
+    }
+
+    public void testBatchReservationCarriesIntoNextMillisecond() {
+        long now = System.currentTimeMillis();
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(0, 0, () -> now);
+        for (int i = 0; i < 4000; i++) {
+            generator.nextId();
+        }
+
+        long[] ids = generator.nextIds(200);
+
+        assertEquals(now, timestampOf(ids[0]));
+        assertEquals(4000L, sequenceOf(ids[0]));
+        assertEquals(MAX_SEQUENCE, sequenceOf(ids[95]));
+        assertEquals(now + 1, timestampOf(ids[96]));
+        assertEquals(0L, sequenceOf(ids[96]));
+        assertEquals(now + 1, timestampOf(ids[199]));
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i] > ids[i - 1]);
+        }
+        // 下一次发放从批量预留之后继续
+        long next = generator.nextId();
+        assertEquals(now + 1, timestampOf(next));
+        assertEquals(104L, sequenceOf(next));
+    }
+
+    public void testLargeBatchSpanningSeveralMillisecondsIsNotParked() {
+        long now = System.currentTimeMillis();
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(0, 0, () -> now);
+
+        long[] ids = generator.nextIds(4096 * 10);
+
+        assertEquals(now, timestampOf(ids[0]));
+        assertEquals(now + 9, timestampOf(ids[ids.length - 1]));
+        assertEquals(MAX_SEQUENCE, sequenceOf(ids[ids.length - 1]));
+    }
+
+    public void testClockRollbackWithinBorrowWindowKeepsIssuing() {
+        AtomicLong offset = new AtomicLong();
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(0, 0,
+                () -> System.currentTimeMillis() - offset.get());
+        long before = generator.nextId();
+        offset.set(3);
+
+        long start = System.nanoTime();
+        long after = generator.nextId();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(after > before);
+        assertTrue(timestampOf(after) >= timestampOf(before));
+        assertTrue("borrowing should not park, took " + elapsedMillis + " ms", elapsedMillis < 50);
+    }
+
+    public void testClockRollbackBeyondBorrowWindowParksUntilClockCatchesUp() {
+        AtomicLong offset = new AtomicLong();
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(0, 0,
+                () -> System.currentTimeMillis() - offset.get());
+        long before = generator.nextId();
+        offset.set(100);
+
+        long start = System.nanoTime();
+        long after = generator.nextId();
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(after > before);
+        assertTrue("should park until the clock is within the borrow window, took " + elapsedMillis + " ms",
+                elapsedMillis >= 80);
+        // 唤醒后领先时钟不超过借用上限
+        long clock = System.currentTimeMillis() - offset.get();
+        assertTrue(timestampOf(after) - clock <= 5);
+    }
+
+    public void testClockRollbackBeyondToleranceIsRejected() {
+        AtomicLong offset = new AtomicLong();
+        SnowflakeIdGeneratorUtil generator = new SnowflakeIdGeneratorUtil(0, 0,
+                () -> System.currentTimeMillis() - offset.get());
+        generator.nextId();
+        offset.set(2000);
+
+        try {
+            generator.nextId();
+            fail("clock moved backwards beyond tolerance should be rejected");
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().startsWith("Clock moved backwards"));
+        }
+    }
+
+    private static long timestampOf(long id) {
+        return (id >> TIMESTAMP_LEFT) + START_STAMP;
+    }
+
+    private static long sequenceOf(long id) {
+        return id & MAX_SEQUENCE;
+    }
+}
@@ -0,0 +1,134 @@
+package ink.icoding.smartmybatis.utils.entity;
+
+import ink.icoding.smartmybatis.conf.GlobalConfig;
+import ink.icoding.smartmybatis.conf.SmartConfigHolder;
+import ink.icoding.smartmybatis.entity.po.PO;
+import ink.icoding.smartmybatis.entity.po.enums.ID;
+import ink.icoding.smartmybatis.entity.po.enums.PrimaryGenerateType;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Mapper 声明解析测试
+ * @author gsk
+ */
+public class MapperDeclarationTest extends TestCase {
+
+    @Override
+    protected void setUp() {
+        SmartConfigHolder.init(new GlobalConfig());
+    }
+
+    public void testUuidPrimaryKeyIsStoredAsBinary() {
+        MapperDeclaration declaration = MapperUtil.buildMapperDeclarationByPoClass(UuidKeyPO.class);
+
+        assertEquals(UUID.class, declaration.getPkClass());
+        assertEquals(PrimaryGenerateType.UUID_V7, declaration.getPkGenerateType());
+        assertTrue(declaration.isBinaryPk());
+        String placeholder = "#{record.id, typeHandler=" + MapperDeclaration.UUID_BINARY_TYPE_HANDLER + "}";
+        assertTrue(declaration.getBaseInsertSql().endsWith(placeholder + ")"));
+        assertTrue(declaration.getBaseUpdateByIdSql().endsWith("= " + placeholder));
+    }
+
+    public void testUuidColumnKeepsStringType() {
+        MapperDeclaration declaration = MapperUtil.buildMapperDeclarationByPoClass(UuidKeyPO.class);
+
+        ColumnDeclaration traceId = declaration.getColumnDeclarations().get(1);
+        assertEquals("traceId", traceId.getFieldName());
+        assertEquals("VARCHAR(255)", traceId.getColumnType());
+        assertFalse(declaration.getBaseInsertSql().contains("#{record.traceId, typeHandler"));
+    }
+
+    public void testStringUuidPrimaryKeyHasNoTypeHandler() {
+        MapperDeclaration declaration = MapperUtil.buildMapperDeclarationByPoClass(HexKeyPO.class);
+
+        assertFalse(declaration.isBinaryPk());
+        assertEquals("#{id}", declaration.pkPlaceholder("id"));
+        assertFalse(declaration.getBaseInsertSql().contains("typeHandler"));
+    }
+
+    public void testUnsupportedUuidPrimaryKeyType() {
+        try {
+            MapperUtil.buildMapperDeclarationByPoClass(LongUuidKeyPO.class);
+            fail("UUID_V7 primary key typed as Long should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("must be String or UUID type"));
+        }
+    }
+
+    public void testNumericSegmentPrimaryKey() {
+        MapperDeclaration declaration = MapperUtil.buildMapperDeclarationByPoClass(SegmentKeyPO.class);
+
+        assertEquals(Long.class, declaration.getPkClass());
+        assertEquals(PrimaryGenerateType.SEGMENT, declaration.getPkGenerateType());
+        assertEquals(7L, MapperUtil.normalizeId(7, declaration.getPkClass()));
+    }
+
+    public void testPublishedColumnsAreReadOnly() {
+        MapperDeclaration declaration = MapperUtil.buildMapperDeclarationByPoClass(HexKeyPO.class);
+        ColumnDeclaration name = declaration.getColumnDeclarations().get(0);
+
+        assertTrue(name.isReadOnly());
+        try {
+            name.setLazy(true);
+            fail("Published column declaration should reject changes");
+        } catch (UnsupportedOperationException e) {
+            assertFalse(name.isLazy());
+        }
+    }
+
+    public void testBuilderKeepsReadOnlyCopyOfColumns() {
+        ColumnDeclaration column = new ColumnDeclaration();
+        column.setFieldName("name");
+        column.setColumnName("NAME");
+        column.setColumnType("VARCHAR(255)");
+        List<ColumnDeclaration> columns = new ArrayList<>();
+        columns.add(column);
+
+        MapperDeclaration declaration = MapperDeclaration.builder()
+                .poClass(HexKeyPO.class)
+                .tableName("HEX_KEY")
+                .pkClass(String.class)
+                .pkName("id")
+                .pkColumnName("ID")
+                .pkGenerateType(PrimaryGenerateType.UUID_V7)
+                .columnDeclarations(columns)
+                .build();
+        column.setColumnName("RENAMED");
+        columns.clear();
+
+        assertEquals(1, declaration.getColumnDeclarations().size());
+        assertEquals("NAME", declaration.getColumnDeclarations().get(0).getColumnName());
+        assertEquals("INSERT INTO `HEX_KEY` (`NAME`, `ID`) VALUES (#{record.name}, #{record.id})",
+                declaration.getBaseInsertSql());
+    }
+
+    public static class UuidKeyPO extends PO {
+        @ID(generateType = PrimaryGenerateType.UUID_V7)
+        private UUID id;
+        private String name;
+        private UUID traceId;
+    }
+
+    public static class HexKeyPO extends PO {
+        @ID(generateType = PrimaryGenerateType.UUID_V7)
+        private String id;
+        private String name;
+    }
+
+    public static class SegmentKeyPO extends PO {
+        @ID(generateType = PrimaryGenerateType.SEGMENT)
+        private Long id;
+        private String name;
+    }
+
+    public static class LongUuidKeyPO extends PO {
+        @ID(generateType = PrimaryGenerateType.UUID_V7)
+        private Long id;
+        private String name;
+    }
+}